@@ -0,0 +1,201 @@
+package org.ubimix.commons.search.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.ubimix.commons.search.DocumentProvider;
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+import org.ubimix.commons.search.MapBasedDocument;
+import org.ubimix.commons.search.SearchException;
+import org.ubimix.commons.search.lucene.DocumentIndexer;
+
+/**
+ * A synthetic corpus. Words are random letter sequences drawn from a
+ * vocabulary with the Zipf distribution of frequencies (like words of natural
+ * languages), so there are a few very frequent terms and a long tail of rare
+ * ones. The corpus is deterministic: the same seed always produces the same
+ * documents.
+ *
+ * @author kotelnikov
+ */
+public class Corpus {
+
+    /**
+     * Field descriptions used to index documents of the corpus.
+     */
+    public static final Map<String, FieldDescription> FIELDS;
+
+    static {
+        FIELDS = new HashMap<String, FieldDescription>();
+        FIELDS.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+    }
+
+    /**
+     * @return a new analyzer used to index and search documents
+     */
+    public static Analyzer newAnalyzer() {
+        return new SimpleAnalyzer(Version.LUCENE_33);
+    }
+
+    /**
+     * Cumulative probabilities of vocabulary words.
+     */
+    private final double[] fDistribution;
+
+    private final Random fRandom;
+
+    private final String[] fWords;
+
+    /**
+     * @param vocabularySize the number of distinct words
+     * @param seed the seed of the random generator
+     */
+    public Corpus(int vocabularySize, long seed) {
+        fRandom = new Random(seed);
+        fWords = new String[vocabularySize];
+        fDistribution = new double[vocabularySize];
+        double sum = 0;
+        for (int i = 0; i < vocabularySize; i++) {
+            fWords[i] = newWord();
+            sum += 1.0 / (i + 1);
+            fDistribution[i] = sum;
+        }
+        for (int i = 0; i < vocabularySize; i++) {
+            fDistribution[i] /= sum;
+        }
+    }
+
+    /**
+     * Returns the word with the specified rank (0 is the most frequent word).
+     *
+     * @param rank the rank of the word
+     * @return the word
+     */
+    public String getWord(int rank) {
+        return fWords[rank];
+    }
+
+    /**
+     * Indexes the specified number of documents in a new in-memory directory.
+     *
+     * @param analyzer the analyzer
+     * @param count the number of documents
+     * @param length the number of words in each document
+     * @return the directory containing the index
+     * @throws SearchException
+     */
+    public Directory index(Analyzer analyzer, int count, int length)
+        throws SearchException {
+        return index(new RAMDirectory(), analyzer, count, length);
+    }
+
+    /**
+     * Indexes the specified number of documents in the given directory.
+     *
+     * @param dir the directory where the index is created
+     * @param analyzer the analyzer
+     * @param count the number of documents
+     * @param length the number of words in each document
+     * @return the directory containing the index
+     * @throws SearchException
+     */
+    public Directory index(
+        Directory dir,
+        Analyzer analyzer,
+        int count,
+        int length) throws SearchException {
+        DocumentIndexer indexer = new DocumentIndexer(dir, analyzer);
+        int batch = 1000;
+        for (int i = 0; i < count; i += batch) {
+            List<IDocument> docs = newDocuments(
+                i,
+                Math.min(batch, count - i),
+                length);
+            indexer.index(FIELDS, new DocumentProvider(docs));
+        }
+        indexer.close();
+        return dir;
+    }
+
+    /**
+     * Generates a new document.
+     *
+     * @param id the identifier of the document
+     * @param length the number of words in the body of the document
+     * @return a new document
+     */
+    public MapBasedDocument newDocument(String id, int length) {
+        MapBasedDocument doc = new MapBasedDocument();
+        doc.setValue("id", id);
+        doc.setValue("title", newText(5));
+        doc.setValue("body", newText(length));
+        return doc;
+    }
+
+    /**
+     * Generates a list of documents with sequential identifiers.
+     *
+     * @param first the identifier of the first document
+     * @param count the number of documents
+     * @param length the number of words in each document
+     * @return a list of documents
+     */
+    public List<IDocument> newDocuments(int first, int count, int length) {
+        List<IDocument> result = new ArrayList<IDocument>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(newDocument("doc-" + (first + i), length));
+        }
+        return result;
+    }
+
+    /**
+     * @return a new word drawn from the vocabulary
+     */
+    public String newRandomWord() {
+        int pos = Arrays.binarySearch(fDistribution, fRandom.nextDouble());
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        return fWords[Math.min(pos, fWords.length - 1)];
+    }
+
+    /**
+     * Generates a text with the specified number of words.
+     *
+     * @param length the number of words
+     * @return a new text
+     */
+    public String newText(int length) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                buf.append(i % 12 == 0 ? ". " : " ");
+            }
+            buf.append(newRandomWord());
+        }
+        return buf.toString();
+    }
+
+    private String newWord() {
+        int len = 3 + fRandom.nextInt(8);
+        char[] chars = new char[len];
+        for (int i = 0; i < len; i++) {
+            chars[i] = (char) ('a' + fRandom.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+}
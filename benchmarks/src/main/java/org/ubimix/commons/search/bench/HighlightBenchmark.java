@@ -0,0 +1,78 @@
+package org.ubimix.commons.search.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.store.Directory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ubimix.commons.search.IDocumentSearcher.ISearchResult;
+import org.ubimix.commons.search.IDocumentSearcher.ISearchResultCursor;
+import org.ubimix.commons.search.SearchException;
+import org.ubimix.commons.search.lucene.DocumentSearcher;
+
+/**
+ * The cost of highlighting of one search result depending on the length of
+ * the found document. Search results are prepared (and their stored fields
+ * are loaded) before the measurement, so only the highlighting itself is
+ * measured.
+ *
+ * @author kotelnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HighlightBenchmark {
+
+    private static final int DOCUMENT_COUNT = 100;
+
+    @Param({ "100", "1000", "10000" })
+    public int documentLength;
+
+    private int fPos;
+
+    private ISearchResult[] fResults;
+
+    @Benchmark
+    public String highlight() throws SearchException {
+        fPos = (fPos + 1) % fResults.length;
+        return fResults[fPos].getHighlight();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SearchException {
+        Corpus corpus = new Corpus(50000, 1);
+        Analyzer analyzer = Corpus.newAnalyzer();
+        Directory dir = corpus.index(analyzer, DOCUMENT_COUNT, documentLength);
+        DocumentSearcher searcher = new DocumentSearcher(dir, analyzer);
+        List<ISearchResult> results = new ArrayList<ISearchResult>();
+        // Frequent terms found in all documents
+        String query = corpus.getWord(0) + " " + corpus.getWord(1);
+        ISearchResultCursor cursor = searcher.search(
+            query,
+            null,
+            DOCUMENT_COUNT);
+        while (cursor.hasNext()) {
+            results.add(cursor.next());
+        }
+        cursor.close();
+        searcher.close();
+        fResults = results.toArray(new ISearchResult[results.size()]);
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.ubimix.commons.search.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ubimix.commons.search.DocumentProvider;
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.MapBasedDocument;
+import org.ubimix.commons.search.SearchException;
+import org.ubimix.commons.search.lucene.DocumentIndexer;
+
+/**
+ * Bulk indexing throughput (documents per second) with different merge
+ * factors and sizes of the RAM buffer. Each iteration indexes batches of
+ * documents into a new in-memory index; segment merges happen inside of
+ * measured operations, as in real bulk loads.
+ *
+ * @author kotelnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IndexingBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({ "100" })
+    public int documentLength;
+
+    @Param({ "2", "10", "30" })
+    public int mergeFactor;
+
+    @Param({ "16", "64" })
+    public double ramBufferSizeMB;
+
+    private String[] fBodies;
+
+    private int fCounter;
+
+    private DocumentIndexer fIndexer;
+
+    private String[] fTitles;
+
+    /**
+     * Indexes a batch of new documents (with new identifiers).
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void index() throws SearchException {
+        List<IDocument> batch = new ArrayList<IDocument>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            MapBasedDocument doc = new MapBasedDocument();
+            doc.setValue("id", "doc-" + fCounter++);
+            doc.setValue("title", fTitles[i]);
+            doc.setValue("body", fBodies[i]);
+            batch.add(doc);
+        }
+        fIndexer.index(Corpus.FIELDS, new DocumentProvider(batch));
+    }
+
+    @Setup(Level.Trial)
+    public void prepareBatch() {
+        Corpus corpus = new Corpus(50000, 1);
+        fTitles = new String[BATCH_SIZE];
+        fBodies = new String[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            fTitles[i] = corpus.newText(5);
+            fBodies[i] = corpus.newText(documentLength);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Analyzer analyzer = Corpus.newAnalyzer();
+        IndexWriterConfig config = DocumentIndexer.newConfig(analyzer);
+        LogByteSizeMergePolicy mergePolicy = new LogByteSizeMergePolicy();
+        mergePolicy.setMergeFactor(mergeFactor);
+        config.setMergePolicy(mergePolicy);
+        config.setRAMBufferSizeMB(ramBufferSizeMB);
+        fIndexer = new DocumentIndexer(new RAMDirectory(), config);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws SearchException {
+        fIndexer.close();
+    }
+
+}
@@ -0,0 +1,55 @@
+package org.ubimix.commons.search.bench;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.store.Directory;
+import org.ubimix.commons.search.lucene.DirectoryFactory;
+import org.ubimix.commons.search.lucene.DocumentSearcher;
+import org.ubimix.commons.search.metrics.QueryLogEntry;
+import org.ubimix.commons.search.metrics.QueryLogReader;
+import org.ubimix.commons.search.metrics.QueryLogReplayer;
+
+/**
+ * Replays a query log recorded with the
+ * {@link org.ubimix.commons.search.metrics.RecordingDocumentSearcher} against
+ * an index on the disk and prints throughput and latency percentiles.
+ *
+ * <pre>
+ * java -cp benchmarks.jar org.ubimix.commons.search.bench.QueryLogReplay \
+ *     &lt;log&gt; &lt;index-dir&gt; [clients=4] [speed=1]
+ * </pre>
+ *
+ * A speed of 0 sends queries as fast as possible.
+ *
+ * @author kotelnikov
+ */
+public class QueryLogReplay {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: QueryLogReplay "
+                + "<log> <index-dir> [clients=4] [speed=1]");
+            System.exit(1);
+        }
+        List<QueryLogEntry> entries = QueryLogReader.readAll(new File(args[0]));
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        double speed = args.length > 3 ? Double.parseDouble(args[3]) : 1;
+        Analyzer analyzer = Corpus.newAnalyzer();
+        DirectoryFactory factory = new DirectoryFactory().setPreload(true);
+        Directory dir = factory.open(new File(args[1]));
+        DocumentSearcher searcher = new DocumentSearcher(dir, analyzer);
+        try {
+            QueryLogReplayer replayer = new QueryLogReplayer(
+                searcher,
+                clients,
+                speed);
+            System.out.println(replayer.replay(entries));
+        } finally {
+            searcher.close();
+            dir.close();
+        }
+    }
+
+}
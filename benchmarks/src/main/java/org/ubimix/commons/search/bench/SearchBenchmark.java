@@ -0,0 +1,221 @@
+package org.ubimix.commons.search.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.ubimix.commons.search.IDocumentSearcher.ISearchResultCursor;
+import org.ubimix.commons.search.SearchException;
+import org.ubimix.commons.search.lucene.DocumentSearcher;
+import org.ubimix.commons.search.lucene.OffHeapDirectory;
+import org.ubimix.commons.search.lucene.StoredDocumentCache;
+
+/**
+ * Search latency for term, phrase and wildcard queries over a synthetic
+ * corpus of a configurable size. Each operation executes one query and loads
+ * stored fields of the returned documents. Queries are rotated over a fixed
+ * set of words with different frequencies (from very common to rare). The
+ * index is kept either in a {@link RAMDirectory} (on the heap) or in an
+ * {@link OffHeapDirectory}; run with <code>-prof gc</code> to compare
+ * allocation and GC costs. Natural language queries mix a few very common
+ * words with one rare word; compare them with and without the common terms
+ * cutoff (see {@link DocumentSearcher#setCommonTermsCutoff(float)}). Queries
+ * return the same documents again and again, so the stored document cache
+ * (see {@link StoredDocumentCache}) removes most of loading costs. Similar
+ * document searches use the most distinctive terms of indexed documents (see
+ * {@link DocumentSearcher#searchSimilar(String, String, java.util.Collection, int)});
+ * compare them with searches using whole texts of documents as queries.
+ *
+ * @author kotelnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+    /**
+     * Per-thread position in the list of queries.
+     */
+    @State(Scope.Thread)
+    public static class Position {
+
+        private int fPos;
+
+        public int next(int count) {
+            fPos = (fPos + 1) % count;
+            return fPos;
+        }
+    }
+
+    private static final int QUERY_COUNT = 64;
+
+    @Param({ "0", "0.01" })
+    public float commonTermsCutoff;
+
+    @Param({ "10000", "100000" })
+    public int corpusSize;
+
+    @Param({ "ram", "offheap" })
+    public String directory;
+
+    /**
+     * The size of the stored document cache in megabytes; 0 to disable it.
+     */
+    @Param({ "0", "16" })
+    public int documentCacheSize;
+
+    @Param({ "100" })
+    public int documentLength;
+
+    @Param({ "10" })
+    public int maxResultNumber;
+
+    private String[] fNaturalQueries;
+
+    private String[] fPhraseQueries;
+
+    private DocumentSearcher fSearcher;
+
+    /**
+     * Identifiers of source documents of similar document searches.
+     */
+    private String[] fSimilarIds;
+
+    /**
+     * Whole texts of documents used as queries (the naive way to search
+     * similar documents).
+     */
+    private String[] fSimilarTexts;
+
+    private String[] fTermQueries;
+
+    private String[] fWildcardQueries;
+
+    @Benchmark
+    public int naturalQuery(Position position, Blackhole blackhole)
+        throws SearchException {
+        return search(fNaturalQueries[position.next(QUERY_COUNT)], blackhole);
+    }
+
+    @Benchmark
+    public int naiveSimilarQuery(Position position, Blackhole blackhole)
+        throws SearchException {
+        return search(fSimilarTexts[position.next(QUERY_COUNT)], blackhole);
+    }
+
+    @Benchmark
+    public int phraseQuery(Position position, Blackhole blackhole)
+        throws SearchException {
+        return search(fPhraseQueries[position.next(QUERY_COUNT)], blackhole);
+    }
+
+    private int consume(ISearchResultCursor cursor, Blackhole blackhole)
+        throws SearchException {
+        try {
+            int count = 0;
+            while (cursor.hasNext()) {
+                blackhole.consume(cursor.next().getDocument());
+                count++;
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int search(String query, Blackhole blackhole)
+        throws SearchException {
+        return consume(
+            fSearcher.search(query, null, maxResultNumber),
+            blackhole);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SearchException {
+        Corpus corpus = new Corpus(50000, 1);
+        Analyzer analyzer = Corpus.newAnalyzer();
+        Directory dir = "offheap".equals(directory)
+            ? new OffHeapDirectory()
+            : new RAMDirectory();
+        corpus.index(dir, analyzer, corpusSize, documentLength);
+        fSearcher = new DocumentSearcher(dir, analyzer);
+        fSearcher.setCommonTermsCutoff(commonTermsCutoff);
+        if (documentCacheSize > 0) {
+            fSearcher.setDocumentCache(new StoredDocumentCache(
+                documentCacheSize * 1024L * 1024L));
+        }
+        fNaturalQueries = new String[QUERY_COUNT];
+        fTermQueries = new String[QUERY_COUNT];
+        fPhraseQueries = new String[QUERY_COUNT];
+        fWildcardQueries = new String[QUERY_COUNT];
+        fSimilarIds = new String[QUERY_COUNT];
+        fSimilarTexts = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            // Ranks from 1 to ~4000: frequent, medium and rare terms
+            String word = corpus.getWord((i * i) + 1);
+            fTermQueries[i] = word;
+            fPhraseQueries[i] = "\""
+                + corpus.getWord(i)
+                + " "
+                + corpus.getWord(i + 1)
+                + "\"";
+            fWildcardQueries[i] = word.substring(0, 2) + "*";
+            fSimilarIds[i] = "doc-" + (i * (corpusSize / QUERY_COUNT));
+            fSimilarTexts[i] = corpus.newText(documentLength);
+            // Three of the ten most common words and a rare one
+            fNaturalQueries[i] = corpus.getWord(i % 10 + 1)
+                + " "
+                + corpus.getWord((i + 3) % 10 + 1)
+                + " "
+                + corpus.getWord((i + 7) % 10 + 1)
+                + " "
+                + corpus.getWord(1000 + i * 50);
+        }
+    }
+
+    @Benchmark
+    public int similarQuery(Position position, Blackhole blackhole)
+        throws SearchException {
+        return consume(fSearcher.searchSimilar(
+            "id",
+            fSimilarIds[position.next(QUERY_COUNT)],
+            null,
+            maxResultNumber), blackhole);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SearchException {
+        fSearcher.close();
+    }
+
+    @Benchmark
+    public int termQuery(Position position, Blackhole blackhole)
+        throws SearchException {
+        return search(fTermQueries[position.next(QUERY_COUNT)], blackhole);
+    }
+
+    @Benchmark
+    public int wildcardQuery(Position position, Blackhole blackhole)
+        throws SearchException {
+        return search(fWildcardQueries[position.next(QUERY_COUNT)], blackhole);
+    }
+
+}
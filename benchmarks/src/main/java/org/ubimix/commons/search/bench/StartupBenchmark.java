@@ -0,0 +1,111 @@
+package org.ubimix.commons.search.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.store.FSDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ubimix.commons.search.IDocumentSearcher.ISearchResultCursor;
+import org.ubimix.commons.search.SearchException;
+import org.ubimix.commons.search.lucene.DirectoryFactory;
+import org.ubimix.commons.search.lucene.DirectoryFactory.DirectoryType;
+import org.ubimix.commons.search.lucene.DocumentSearcher;
+
+/**
+ * The cost of opening an on-disk index with different directory
+ * implementations: each operation opens the directory (optionally reading all
+ * files ahead), opens a searcher, executes the first query and closes
+ * everything. Index files stay in the OS page cache between operations, so
+ * the benchmark shows CPU and memory costs of each choice, not the disk
+ * latency.
+ *
+ * @author kotelnikov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Param({ "100000" })
+    public int corpusSize;
+
+    @Param({ "MMAP", "NIO", "SIMPLE", "OFF_HEAP" })
+    public DirectoryType directoryType;
+
+    @Param({ "false", "true" })
+    public boolean preload;
+
+    @Param({ "1", "4" })
+    public int termIndexDivisor;
+
+    private Analyzer fAnalyzer;
+
+    private DirectoryFactory fFactory;
+
+    private File fPath;
+
+    private String fQuery;
+
+    @Benchmark
+    public int open() throws SearchException {
+        DocumentSearcher searcher = fFactory.newSearcher(fPath, fAnalyzer);
+        try {
+            ISearchResultCursor cursor = searcher.search(fQuery, null, 10);
+            int count = 0;
+            while (cursor.hasNext()) {
+                cursor.next().getDocument();
+                count++;
+            }
+            cursor.close();
+            return count;
+        } finally {
+            searcher.close();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Corpus corpus = new Corpus(50000, 1);
+        fAnalyzer = Corpus.newAnalyzer();
+        fPath = new File(System.getProperty("java.io.tmpdir"), "startup-"
+            + System.nanoTime());
+        corpus.index(FSDirectory.open(fPath), fAnalyzer, corpusSize, 100);
+        fQuery = corpus.getWord(100);
+        fFactory = new DirectoryFactory()
+            .setType(directoryType)
+            .setPreload(preload)
+            .setTermIndexDivisor(termIndexDivisor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        delete(fPath);
+    }
+
+}
@@ -14,6 +14,39 @@ public interface IDocumentIndexer {
      */
     public static class FieldDescription {
 
+        /**
+         * Types of text analysis of analyzed fields.
+         * 
+         * @author kotelnikov
+         */
+        public enum AnalyzerType {
+
+            /**
+             * The analyzer given to indexers and searchers.
+             */
+            DEFAULT,
+
+            /**
+             * The whole value of the field is one lower-cased token. It is
+             * used for case-insensitive exact matching of codes, tags etc.
+             */
+            KEYWORD,
+
+            /**
+             * The default analysis with prefixes of each token (see
+             * {@link org.ubimix.commons.search.lucene.PrefixTokenFilter}) at
+             * indexing time. It is used for autocompletion fields: incomplete
+             * query words match indexed words. Queries are analyzed as usual.
+             */
+            NGRAM,
+
+            /**
+             * The default analysis followed by the Porter stemmer (for English
+             * texts).
+             */
+            STEMMING
+        }
+
         /**
          * The builder for {@link FieldDescription} instances.
          * 
@@ -39,6 +72,20 @@ public interface IDocumentIndexer {
                 return this;
             }
 
+            /**
+             * Defines the type of text analysis of this field. It is used only
+             * for analyzed fields.
+             * 
+             * @param analyzerType the analyzer type to set
+             * @return this instance
+             */
+            public Builder setAnalyzerType(AnalyzerType analyzerType) {
+                fAnalyzerType = analyzerType != null
+                    ? analyzerType
+                    : AnalyzerType.DEFAULT;
+                return this;
+            }
+
             /**
              * @param boostFactor the boostFactor to set
              * @return this instance
@@ -48,6 +95,19 @@ public interface IDocumentIndexer {
                 return this;
             }
 
+            /**
+             * Defines if the value of this field is stored compressed. It is
+             * useful for big text fields. Compressed values are decompressed
+             * only when they are requested from found documents.
+             * 
+             * @param compressed the compressed flag to set
+             * @return this instance
+             */
+            public Builder setCompressed(boolean compressed) {
+                fCompressed = compressed;
+                return this;
+            }
+
             /**
              * @param identifier the identifier to set
              * @return this instance
@@ -60,6 +120,34 @@ public interface IDocumentIndexer {
                 return this;
             }
 
+            /**
+             * Defines if reversed tokens of this field are indexed in a shadow
+             * field (see {@link IFieldConst#REVERSED_SUFFIX}). Such fields are
+             * used to transform queries with leading wildcards (like
+             * <code>*phone</code>) to prefix queries.
+             * 
+             * @param indexReversed the indexReversed flag to set
+             * @return this instance
+             */
+            public Builder setIndexReversed(boolean indexReversed) {
+                fIndexReversed = indexReversed;
+                return this;
+            }
+
+            /**
+             * Defines if word bigrams ("shingles") of this field are indexed in
+             * a shadow field (see {@link IFieldConst#SHINGLES_SUFFIX}). Such
+             * fields are used to speed up exact phrase queries. This option
+             * is used only for analyzed fields.
+             * 
+             * @param indexShingles the indexShingles flag to set
+             * @return this instance
+             */
+            public Builder setIndexShingles(boolean indexShingles) {
+                fIndexShingles = indexShingles;
+                return this;
+            }
+
             /**
              * Defines if the content of this field is appended to the full
              * content and searchable in global queries (over all fields). If
@@ -74,6 +162,18 @@ public interface IDocumentIndexer {
             public void setInFullContent(Boolean inFullContent) {
                 fSearchableInFullIndex = inFullContent;
             }
+
+            /**
+             * Defines if terms of this field are used as a source of
+             * autocompletion suggestions.
+             * 
+             * @param suggest the suggest flag to set
+             * @return this instance
+             */
+            public Builder setSuggest(boolean suggest) {
+                fSuggested = suggest;
+                return this;
+            }
         }
 
         /**
@@ -90,22 +190,51 @@ public interface IDocumentIndexer {
          */
         protected boolean fAnalyzed = true;
 
+        /**
+         * The type of text analysis of this field.
+         */
+        protected AnalyzerType fAnalyzerType = AnalyzerType.DEFAULT;
+
         /**
          * The boost factor for this field
          */
         protected float fBoostFactor = 1;
 
+        /**
+         * If this flag is <code>true</code> then the value of this field is
+         * stored compressed.
+         */
+        protected boolean fCompressed = false;
+
         /**
          * The flag defines if the corresponding field is an identifier.
          */
         protected boolean fIdentifier = false;
 
+        /**
+         * If this flag is <code>true</code> then reversed tokens of this field
+         * are indexed in a shadow field.
+         */
+        protected boolean fIndexReversed = false;
+
+        /**
+         * If this flag is <code>true</code> then word bigrams of this field
+         * are indexed in a shadow field.
+         */
+        protected boolean fIndexShingles = false;
+
         /**
          * If this flag is <code>true</code> then the content of this field is
          * searchable in the full content search.
          */
         protected Boolean fSearchableInFullIndex;
 
+        /**
+         * If this flag is <code>true</code> then terms of this field are used
+         * by suggesters.
+         */
+        protected boolean fSuggested = false;
+
         /**
          * The default constructor
          */
@@ -121,7 +250,13 @@ public interface IDocumentIndexer {
         public FieldDescription(FieldDescription description) {
             fBoostFactor = description.fBoostFactor;
             fAnalyzed = description.fAnalyzed;
+            fAnalyzerType = description.fAnalyzerType;
+            fCompressed = description.fCompressed;
             fIdentifier = description.fIdentifier;
+            fIndexReversed = description.fIndexReversed;
+            fIndexShingles = description.fIndexShingles;
+            fSearchableInFullIndex = description.fSearchableInFullIndex;
+            fSuggested = description.fSuggested;
         }
 
         @Override
@@ -133,7 +268,35 @@ public interface IDocumentIndexer {
                 return false;
             }
             FieldDescription o = (FieldDescription) obj;
-            return fBoostFactor == o.fBoostFactor && fAnalyzed == o.fAnalyzed;
+            return fBoostFactor == o.fBoostFactor
+                && fAnalyzed == o.fAnalyzed
+                && fAnalyzerType == o.fAnalyzerType
+                && fCompressed == o.fCompressed
+                && fIdentifier == o.fIdentifier
+                && fIndexReversed == o.fIndexReversed
+                && fIndexShingles == o.fIndexShingles
+                && fSuggested == o.fSuggested
+                && (fSearchableInFullIndex == null
+                    ? o.fSearchableInFullIndex == null
+                    : fSearchableInFullIndex.equals(o.fSearchableInFullIndex));
+        }
+
+        /**
+         * Returns the explicitly defined full content flag (see
+         * {@link Builder#setInFullContent(Boolean)}).
+         * 
+         * @return the full content flag or <code>null</code> if it is not
+         *         defined
+         */
+        public Boolean getInFullContent() {
+            return fSearchableInFullIndex;
+        }
+
+        /**
+         * @return the type of text analysis of this field
+         */
+        public AnalyzerType getAnalyzerType() {
+            return fAnalyzerType;
         }
 
         /**
@@ -150,9 +313,19 @@ public interface IDocumentIndexer {
          */
         @Override
         public int hashCode() {
-            int a = fAnalyzed ? 1 : 0;
-            int b = Float.floatToIntBits(fBoostFactor);
-            return a ^ b;
+            int result = Float.floatToIntBits(fBoostFactor);
+            result = result * 31 + (fAnalyzed ? 1 : 0);
+            result = result * 31 + fAnalyzerType.hashCode();
+            result = result * 31 + (fCompressed ? 1 : 0);
+            result = result * 31 + (fIdentifier ? 1 : 0);
+            result = result * 31 + (fIndexReversed ? 1 : 0);
+            result = result * 31 + (fIndexShingles ? 1 : 0);
+            result = result * 31 + (fSuggested ? 1 : 0);
+            result = result
+                * 31
+                + (fSearchableInFullIndex != null ? fSearchableInFullIndex
+                    .hashCode() : 0);
+            return result;
         }
 
         /**
@@ -162,6 +335,14 @@ public interface IDocumentIndexer {
             return fAnalyzed;
         }
 
+        /**
+         * @return <code>true</code> if the value of this field should be
+         *         stored compressed
+         */
+        public boolean isCompressed() {
+            return fCompressed;
+        }
+
         /**
          * @return the identifier
          */
@@ -169,6 +350,30 @@ public interface IDocumentIndexer {
             return fIdentifier;
         }
 
+        /**
+         * @return <code>true</code> if reversed tokens of this field should be
+         *         indexed in a shadow field
+         */
+        public boolean isIndexReversed() {
+            return fIndexReversed;
+        }
+
+        /**
+         * @return <code>true</code> if word bigrams of this field should be
+         *         indexed in a shadow field
+         */
+        public boolean isIndexShingles() {
+            return fIndexShingles;
+        }
+
+        /**
+         * @return <code>true</code> if terms of this field should be used as
+         *         autocompletion suggestions
+         */
+        public boolean isSuggested() {
+            return fSuggested;
+        }
+
         /**
          * @return <code>true</code> if the content of this field should be
          *         searchable in the full content search
@@ -202,6 +407,30 @@ public interface IDocumentIndexer {
      */
     void close() throws SearchException;
 
+    /**
+     * Removes from the index all documents having one of the specified values
+     * in the given identifier field. Values are compared with indexed terms
+     * as is, so this method should be used with non-analyzed identifier
+     * fields. Deletions are buffered and applied to the index in bulk.
+     * 
+     * @param field the name of the identifier field
+     * @param identifiers values of identifiers of documents to remove
+     * @throws SearchException
+     */
+    void delete(String field, Iterable<String> identifiers)
+        throws SearchException;
+
+    /**
+     * Removes from the index all documents matching the specified query. The
+     * query has the same syntax as queries of the {@link IDocumentSearcher};
+     * terms without field names are searched in the
+     * {@link IFieldConst#FULL_CONTENT} field.
+     * 
+     * @param query the query defining documents to remove
+     * @throws SearchException
+     */
+    void delete(String query) throws SearchException;
+
     /**
      * Adds the document to the index.
      * 
@@ -1,6 +1,8 @@
 package org.ubimix.commons.search;
 
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * This interface provides access to search functionalities.
@@ -58,11 +60,108 @@ public interface IDocumentSearcher {
         void onSearchResult(ISearchResult result) throws SearchException;
     }
 
+    /**
+     * Pull-based cursor over search results. Stored fields of each result are
+     * loaded only when this result is returned by the {@link #next()} method,
+     * so clients stopping after the first few results never pay for the rest.
+     * Cursors keep a reference to the index snapshot used to perform the
+     * search; they should be closed as soon as they are not needed anymore.
+     * The {@link #next()} method returns <code>null</code> when there is no
+     * more results.
+     * 
+     * @author kotelnikov
+     */
+    public interface ISearchResultCursor extends Iterator<ISearchResult> {
+
+        /**
+         * Closes this cursor and releases all associated resources.
+         * 
+         * @throws SearchException
+         */
+        void close() throws SearchException;
+    }
+
+    /**
+     * An individual request in a batch search (see {@link #search(List)}).
+     * Each request contains the query, fields used to search and the collector
+     * of results. The maximal number of results is defined by the collector.
+     * 
+     * @author kotelnikov
+     */
+    public static class SearchRequest {
+
+        private final ISearchResultCollector fCollector;
+
+        private final Collection<String> fFields;
+
+        private final String fQuery;
+
+        /**
+         * @param query the query to perform
+         * @param collector the collector of search results
+         */
+        public SearchRequest(String query, ISearchResultCollector collector) {
+            this(query, null, collector);
+        }
+
+        /**
+         * @param query the query to perform
+         * @param fields fields used to search; if this parameter is
+         *        <code>null</code> or empty then the full content is used
+         * @param collector the collector of search results
+         */
+        public SearchRequest(
+            String query,
+            Collection<String> fields,
+            ISearchResultCollector collector) {
+            fQuery = query;
+            fFields = fields;
+            fCollector = collector;
+        }
+
+        /**
+         * @return the collector of search results
+         */
+        public ISearchResultCollector getCollector() {
+            return fCollector;
+        }
+
+        /**
+         * @return fields used to search
+         */
+        public Collection<String> getFields() {
+            return fFields;
+        }
+
+        /**
+         * @return the query to perform
+         */
+        public String getQuery() {
+            return fQuery;
+        }
+    }
+
     /**
      * @throws SearchException
      */
     void close() throws SearchException;
 
+    /**
+     * Performs a search operation and returns a cursor over the found results.
+     * The returned cursor should be closed by the caller.
+     * 
+     * @param q the query to perform
+     * @param fields fields used to search; if this parameter is
+     *        <code>null</code> or empty then the full content is used
+     * @param maxResultNumber the maximal number of returned results
+     * @return a cursor over search results
+     * @throws SearchException
+     */
+    ISearchResultCursor search(
+        String q,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException;
+
     /**
      * @param q
      * @param fields
@@ -74,6 +173,16 @@ public interface IDocumentSearcher {
         Collection<String> fields,
         ISearchResultCollector collector) throws SearchException;
 
+    /**
+     * Performs multiple search requests against the same consistent snapshot
+     * of the index. Results of each request are reported to the collector of
+     * this request.
+     * 
+     * @param requests the list of requests to perform
+     * @throws SearchException
+     */
+    void search(List<SearchRequest> requests) throws SearchException;
+
     /**
      * @param q
      * @param collector
@@ -82,4 +191,44 @@ public interface IDocumentSearcher {
     void search(String q, ISearchResultCollector collector)
         throws SearchException;
 
+    /**
+     * Searches documents similar to the given one. The most distinctive terms
+     * of the document (weighted by their tf-idf) are used to search, so the
+     * cost of the search does not depend on the size of the document. The
+     * returned cursor should be closed by the caller.
+     * 
+     * @param doc the source document
+     * @param fields fields used to extract terms and to search; if this
+     *        parameter is <code>null</code> or empty then the full content is
+     *        used
+     * @param maxResultNumber the maximal number of returned results
+     * @return a cursor over similar documents
+     * @throws SearchException
+     */
+    ISearchResultCursor searchSimilar(
+        IDocument doc,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException;
+
+    /**
+     * Searches documents similar to the indexed document with the specified
+     * identifier. The source document is not returned. If there is no such a
+     * document then the returned cursor is empty.
+     * 
+     * @param field the name of the identifier field
+     * @param identifier the identifier of the source document
+     * @param fields fields used to extract terms and to search; if this
+     *        parameter is <code>null</code> or empty then the full content is
+     *        used
+     * @param maxResultNumber the maximal number of returned results
+     * @return a cursor over similar documents
+     * @throws SearchException
+     * @see #searchSimilar(IDocument, Collection, int)
+     */
+    ISearchResultCursor searchSimilar(
+        String field,
+        String identifier,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException;
+
 }
\ No newline at end of file
@@ -1,6 +1,20 @@
-package org.ubimix.commons.search;
-
-public interface IFieldConst {
-    String FULL_CONTENT = "fullContent";
-
-}
+package org.ubimix.commons.search;
+
+public interface IFieldConst {
+    String FULL_CONTENT = "fullContent";
+
+    /**
+     * The suffix of shadow fields containing reversed tokens of the
+     * corresponding fields (see
+     * {@link IDocumentIndexer.FieldDescription#isIndexReversed()}).
+     */
+    String REVERSED_SUFFIX = "$reversed";
+
+    /**
+     * The suffix of shadow fields containing word bigrams of the corresponding
+     * fields (see
+     * {@link IDocumentIndexer.FieldDescription#isIndexShingles()}).
+     */
+    String SHINGLES_SUFFIX = "$shingles";
+
+}
@@ -0,0 +1,85 @@
+package org.ubimix.commons.search;
+
+/**
+ * An individual term suggestion returned by suggesters. Each suggestion
+ * contains the suggested term, its weight (the number of documents containing
+ * this term) and the edit distance between the suggested term and the original
+ * word (spelling suggestions only).
+ * 
+ * @author kotelnikov
+ */
+public class Suggestion {
+
+    private final int fDistance;
+
+    private final String fTerm;
+
+    private final int fWeight;
+
+    /**
+     * @param term the suggested term
+     * @param weight the weight of this term
+     */
+    public Suggestion(String term, int weight) {
+        this(term, weight, 0);
+    }
+
+    /**
+     * @param term the suggested term
+     * @param weight the weight of this term
+     * @param distance the edit distance between the suggested term and the
+     *        original word
+     */
+    public Suggestion(String term, int weight, int distance) {
+        fTerm = term;
+        fWeight = weight;
+        fDistance = distance;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof Suggestion)) {
+            return false;
+        }
+        Suggestion o = (Suggestion) obj;
+        return fWeight == o.fWeight
+            && fDistance == o.fDistance
+            && fTerm.equals(o.fTerm);
+    }
+
+    /**
+     * @return the edit distance between the suggested term and the original
+     *         word
+     */
+    public int getDistance() {
+        return fDistance;
+    }
+
+    /**
+     * @return the suggested term
+     */
+    public String getTerm() {
+        return fTerm;
+    }
+
+    /**
+     * @return the weight of the suggested term
+     */
+    public int getWeight() {
+        return fWeight;
+    }
+
+    @Override
+    public int hashCode() {
+        return fTerm.hashCode() ^ fWeight ^ (fDistance << 24);
+    }
+
+    @Override
+    public String toString() {
+        return fTerm + "(" + fWeight + ")";
+    }
+
+}
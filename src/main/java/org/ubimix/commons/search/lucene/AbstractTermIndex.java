@@ -0,0 +1,173 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ReaderUtil;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * A common superclass for in-memory structures built from terms of a set of
+ * fields. Terms are loaded separately for each index segment and cached by the
+ * segment core. When a new reader is opened only terms of new segments are
+ * loaded from the index; terms of already known segments are re-used.
+ * Subclasses are notified about changes in the term set with the
+ * {@link #setTerms(TermList)} method.
+ * <p>
+ * If an executor is defined (see {@link #setExecutor(Executor)}) then updates
+ * are performed in background and readers are published to searches without
+ * waiting for them.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public abstract class AbstractTermIndex implements IReaderListener {
+
+    private final static Logger log = Logger.getLogger(AbstractTermIndex.class
+        .getName());
+
+    /**
+     * Returns names of all fields marked as suggest fields in the given field
+     * descriptions (see {@link FieldDescription#isSuggested()}).
+     *
+     * @param fieldDescriptions field descriptions
+     * @return a set of suggest field names
+     */
+    public static Set<String> getSuggestFields(
+        Map<String, FieldDescription> fieldDescriptions) {
+        Set<String> result = new LinkedHashSet<String>();
+        for (Map.Entry<String, FieldDescription> entry : fieldDescriptions
+            .entrySet()) {
+            if (entry.getValue().isSuggested()) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    protected static SearchException handleError(String message, Throwable e) {
+        log.log(Level.WARNING, message, e);
+        if (e instanceof SearchException) {
+            return (SearchException) e;
+        }
+        return new SearchException(message, e);
+    }
+
+    private volatile Executor fExecutor;
+
+    private final Collection<String> fFields;
+
+    /**
+     * Term lists of individual segments. Keys are segment core keys.
+     */
+    private Map<Object, TermList> fSegments = new HashMap<Object, TermList>();
+
+    /**
+     * @param fields names of fields used to build this index
+     */
+    public AbstractTermIndex(Collection<String> fields) {
+        fFields = new ArrayList<String>(fields);
+    }
+
+    /**
+     * @return names of fields used by this index
+     */
+    public Collection<String> getFields() {
+        return fFields;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.lucene.IReaderListener#onReaderOpen(org.apache.lucene.index.IndexReader)
+     */
+    public void onReaderOpen(final IndexReader reader) throws SearchException {
+        Executor executor = fExecutor;
+        if (executor == null) {
+            try {
+                update(reader);
+            } catch (Throwable t) {
+                throw handleError("Can not load terms from the index", t);
+            }
+            return;
+        }
+        reader.incRef();
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    update(reader);
+                } catch (Throwable t) {
+                    log.log(
+                        Level.WARNING,
+                        "Can not load terms from the index",
+                        t);
+                } finally {
+                    try {
+                        reader.decRef();
+                    } catch (IOException e) {
+                        log.log(Level.FINE, "Can not release the reader", e);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets an executor used to update this index in background. If the
+     * executor is <code>null</code> then updates are performed in the thread
+     * opening the reader. The executor should run tasks sequentially (in the
+     * submission order), otherwise an older reader could override the state
+     * built from a newer one.
+     *
+     * @param executor the executor to set
+     */
+    public void setExecutor(Executor executor) {
+        fExecutor = executor;
+    }
+
+    /**
+     * This method is called when the set of terms of this index is changed.
+     *
+     * @param terms all terms of this index
+     */
+    protected abstract void setTerms(TermList terms);
+
+    /**
+     * Updates this index using terms of the given reader. Terms are loaded
+     * only from segments which are not known yet.
+     *
+     * @param reader the reader used as a source of terms
+     * @throws IOException
+     */
+    public synchronized void update(IndexReader reader) throws IOException {
+        List<IndexReader> segments = new ArrayList<IndexReader>();
+        ReaderUtil.gatherSubReaders(segments, reader);
+        Map<Object, TermList> map = new HashMap<Object, TermList>();
+        List<TermList> lists = new ArrayList<TermList>();
+        boolean changed = segments.size() != fSegments.size();
+        for (IndexReader segment : segments) {
+            Object key = segment.getCoreCacheKey();
+            TermList list = fSegments.get(key);
+            if (list == null) {
+                list = TermList.load(segment, fFields);
+                changed = true;
+            }
+            map.put(key, list);
+            lists.add(list);
+        }
+        fSegments = map;
+        if (changed) {
+            setTerms(TermList.merge(lists));
+        }
+    }
+
+}
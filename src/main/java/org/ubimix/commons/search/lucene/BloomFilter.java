@@ -0,0 +1,134 @@
+package org.ubimix.commons.search.lucene;
+
+/**
+ * A compact probabilistic set of strings. The {@link #mightContain(String)}
+ * method never returns <code>false</code> for added values but it could
+ * return <code>true</code> for values which were never added (with the
+ * probability defined at construction time). This class is used by the
+ * {@link DocumentIndexer} to avoid deletes of documents which are definitely
+ * absent in the index.
+ * <p>
+ * The false positive rate is guaranteed only while the number of added values
+ * is below the capacity of the filter (see {@link #isSaturated()}). This class
+ * is not thread-safe.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class BloomFilter {
+
+    /**
+     * Returns a 64-bit hash of the given string (FNV-1a followed by the
+     * MurmurHash3 finalizer to spread bits).
+     */
+    private static long getHash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private final long[] fBits;
+
+    private final int fCapacity;
+
+    private int fCount;
+
+    private final int fHashCount;
+
+    private final long fSize;
+
+    /**
+     * @param capacity the expected number of values in this filter
+     * @param falsePositiveRate the expected probability of false positives
+     */
+    public BloomFilter(int capacity, double falsePositiveRate) {
+        fCapacity = Math.max(1, capacity);
+        double ln2 = Math.log(2);
+        long size = (long) Math.ceil(-fCapacity
+            * Math.log(falsePositiveRate)
+            / (ln2 * ln2));
+        size = Math.max(64, (size + 63) & ~63L);
+        fBits = new long[(int) (size >>> 6)];
+        fSize = size;
+        fHashCount = Math.max(1, (int) Math.round((double) size
+            / fCapacity
+            * ln2));
+    }
+
+    /**
+     * Adds a new value to this filter.
+     *
+     * @param value the value to add
+     */
+    public void add(String value) {
+        long hash = getHash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < fHashCount; i++) {
+            long pos = ((h1 + (long) i * h2) & Long.MAX_VALUE) % fSize;
+            fBits[(int) (pos >>> 6)] |= 1L << pos;
+        }
+        fCount++;
+    }
+
+    /**
+     * @return the expected number of values in this filter
+     */
+    public int getCapacity() {
+        return fCapacity;
+    }
+
+    /**
+     * @return the number of values added to this filter
+     */
+    public int getCount() {
+        return fCount;
+    }
+
+    /**
+     * @return the size of this filter in bytes
+     */
+    public long getMemorySize() {
+        return fBits.length * 8L;
+    }
+
+    /**
+     * Returns <code>true</code> if the number of added values exceeds the
+     * capacity of this filter. The false positive rate of saturated filters
+     * grows quickly, so they should be re-created.
+     *
+     * @return <code>true</code> if this filter is saturated
+     */
+    public boolean isSaturated() {
+        return fCount > fCapacity;
+    }
+
+    /**
+     * Returns <code>false</code> if the specified value was definitely never
+     * added to this filter.
+     *
+     * @param value the value to check
+     * @return <code>true</code> if the value might be in this filter
+     */
+    public boolean mightContain(String value) {
+        long hash = getHash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < fHashCount; i++) {
+            long pos = ((h1 + (long) i * h2) & Long.MAX_VALUE) % fSize;
+            if ((fBits[(int) (pos >>> 6)] & (1L << pos)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,222 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexFileNameFilter;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+
+/**
+ * This class copies files of an index commit point to another directory.
+ * Lucene never modifies segment files after they are written, so files already
+ * present in the target directory (with the same length) are not copied again;
+ * this makes copies incremental. The segments file of the commit is copied
+ * after all other files, so the target directory always contains a consistent
+ * index. When both directories are file system directories files are copied
+ * with zero-copy {@link FileChannel} transfers.
+ *
+ * @author kotelnikov
+ */
+public class CommitCopier {
+
+    private final static Logger log = Logger.getLogger(CommitCopier.class
+        .getName());
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private long fCopiedBytes;
+
+    private int fCopiedFiles;
+
+    private int fSkippedFiles;
+
+    private final Directory fTarget;
+
+    /**
+     * @param target the target directory
+     */
+    public CommitCopier(Directory target) {
+        fTarget = target;
+    }
+
+    /**
+     * Copies all files of the given commit point to the target directory and
+     * removes index files not referenced by this commit from the target.
+     *
+     * @param commit the commit point to copy
+     * @return the number of copied bytes
+     * @throws IOException
+     */
+    public long copy(IndexCommit commit) throws IOException {
+        Directory source = commit.getDirectory();
+        Collection<String> files = commit.getFileNames();
+        String segmentsFile = commit.getSegmentsFileName();
+        long bytes = fCopiedBytes;
+        List<String> copied = new ArrayList<String>();
+        for (String file : files) {
+            if (file.equals(segmentsFile)
+                || file.equals(IndexFileNames.SEGMENTS_GEN)) {
+                continue;
+            }
+            if (copyFile(source, file, false)) {
+                copied.add(file);
+            }
+        }
+        fTarget.sync(copied);
+        // The commit point becomes visible in the target only now
+        copyFile(source, segmentsFile, true);
+        fTarget.sync(Collections.singleton(segmentsFile));
+        // The "segments.gen" file of the source could already reference a
+        // newer commit, so it is not copied; readers use directory listings.
+        deleteObsoleteFiles(files);
+        return fCopiedBytes - bytes;
+    }
+
+    /**
+     * Copies the specified file to the target directory.
+     *
+     * @return <code>true</code> if the file was copied
+     */
+    private boolean copyFile(Directory source, String file, boolean overwrite)
+        throws IOException {
+        long length = source.fileLength(file);
+        if (!overwrite
+            && fTarget.fileExists(file)
+            && fTarget.fileLength(file) == length) {
+            fSkippedFiles++;
+            return false;
+        }
+        if (fTarget.fileExists(file)) {
+            fTarget.deleteFile(file);
+        }
+        if (source instanceof FSDirectory && fTarget instanceof FSDirectory) {
+            File from = new File(((FSDirectory) source).getDirectory(), file);
+            File to = new File(((FSDirectory) fTarget).getDirectory(), file);
+            transfer(from, to, length);
+        } else {
+            IndexInput input = source.openInput(file);
+            try {
+                IndexOutput output = fTarget.createOutput(file);
+                try {
+                    byte[] buf = new byte[BUFFER_SIZE];
+                    long left = length;
+                    while (left > 0) {
+                        int len = (int) Math.min(buf.length, left);
+                        input.readBytes(buf, 0, len);
+                        output.writeBytes(buf, len);
+                        left -= len;
+                    }
+                } finally {
+                    output.close();
+                }
+            } finally {
+                input.close();
+            }
+        }
+        fCopiedFiles++;
+        fCopiedBytes += length;
+        return true;
+    }
+
+    /**
+     * Removes all index files from the target directory which are not
+     * referenced by the copied commit (including the "segments.gen" file).
+     */
+    private void deleteObsoleteFiles(Collection<String> files)
+        throws IOException {
+        Set<String> keep = new HashSet<String>(files);
+        IndexFileNameFilter filter = IndexFileNameFilter.getFilter();
+        for (String file : fTarget.listAll()) {
+            if (keep.contains(file) || !filter.accept(null, file)) {
+                continue;
+            }
+            try {
+                fTarget.deleteFile(file);
+            } catch (IOException e) {
+                // Files could be still open by readers (on Windows)
+                log.log(Level.FINE, "Can not delete the file " + file, e);
+            }
+        }
+    }
+
+    /**
+     * @return the total number of bytes copied by this object
+     */
+    public long getCopiedBytes() {
+        return fCopiedBytes;
+    }
+
+    /**
+     * @return the total number of files copied by this object
+     */
+    public int getCopiedFiles() {
+        return fCopiedFiles;
+    }
+
+    /**
+     * @return the number of files which were not copied because they already
+     *         exist in the target directory
+     */
+    public int getSkippedFiles() {
+        return fSkippedFiles;
+    }
+
+    /**
+     * @return the target directory
+     */
+    public Directory getTarget() {
+        return fTarget;
+    }
+
+    private void transfer(File from, File to, long length) throws IOException {
+        File dir = to.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Can not create the directory " + dir);
+        }
+        FileInputStream in = new FileInputStream(from);
+        try {
+            FileOutputStream out = new FileOutputStream(to);
+            try {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long pos = 0;
+                while (pos < length) {
+                    long count = inChannel.transferTo(
+                        pos,
+                        length - pos,
+                        outChannel);
+                    if (count <= 0) {
+                        throw new IOException("Can not copy the file "
+                            + from
+                            + " (the file was truncated).");
+                    }
+                    pos += count;
+                }
+                // Files written directly are not synchronized by the
+                // FSDirectory#sync method
+                outChannel.force(true);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+}
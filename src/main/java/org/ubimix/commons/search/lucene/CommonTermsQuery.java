@@ -0,0 +1,172 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * A disjunction of terms which splits its terms in rare and common groups
+ * using document frequencies of the searched index. Terms found in more
+ * documents than the cutoff are common (like "the" or "of"). The query is
+ * rewritten to a boolean query where at least one rare term is required and
+ * common terms are optional: common terms are only used to score documents
+ * matching rare terms, so their huge lists of postings are not iterated but
+ * advanced to these documents. Documents matching only common terms are not
+ * returned. If all terms are rare then the query is rewritten to a plain
+ * disjunction. If all terms are common then all of them are required: a
+ * disjunction of such terms would iterate postings of most documents of the
+ * index.
+ *
+ * @author kotelnikov
+ */
+public class CommonTermsQuery extends Query {
+
+    private static final long serialVersionUID = 3517592218524318446L;
+
+    private final float fCutoff;
+
+    private final boolean fDisableCoord;
+
+    private final List<TermQuery> fQueries = new ArrayList<TermQuery>();
+
+    /**
+     * @param cutoff the maximal document frequency of rare terms; values
+     *        lower than 1 are fractions of the number of documents in the index
+     *        (0.01 means 1% of documents), other values are absolute numbers
+     *        of documents
+     * @param disableCoord if this flag is <code>true</code> then the coord
+     *        factor is disabled in scoring (see {@link BooleanQuery})
+     */
+    public CommonTermsQuery(float cutoff, boolean disableCoord) {
+        fCutoff = cutoff;
+        fDisableCoord = disableCoord;
+    }
+
+    /**
+     * Adds a new optional term to this query.
+     *
+     * @param query the term query to add
+     */
+    public void add(TermQuery query) {
+        fQueries.add(query);
+    }
+
+    /**
+     * @see org.apache.lucene.search.Query#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CommonTermsQuery)) {
+            return false;
+        }
+        CommonTermsQuery o = (CommonTermsQuery) obj;
+        return getBoost() == o.getBoost()
+            && fCutoff == o.fCutoff
+            && fDisableCoord == o.fDisableCoord
+            && fQueries.equals(o.fQueries);
+    }
+
+    /**
+     * @see org.apache.lucene.search.Query#extractTerms(java.util.Set)
+     */
+    @Override
+    public void extractTerms(Set<Term> terms) {
+        for (TermQuery query : fQueries) {
+            terms.add(query.getTerm());
+        }
+    }
+
+    /**
+     * @return the cutoff of document frequencies
+     */
+    public float getCutoff() {
+        return fCutoff;
+    }
+
+    /**
+     * @see org.apache.lucene.search.Query#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(getBoost());
+        result = 31 * result + Float.floatToIntBits(fCutoff);
+        result = 31 * result + (fDisableCoord ? 1 : 0);
+        return 31 * result + fQueries.hashCode();
+    }
+
+    private BooleanQuery newBooleanQuery(
+        List<TermQuery> queries,
+        Occur occur) {
+        BooleanQuery query = new BooleanQuery(fDisableCoord);
+        for (TermQuery q : queries) {
+            query.add(q, occur);
+        }
+        return query;
+    }
+
+    /**
+     * @see org.apache.lucene.search.Query#rewrite(org.apache.lucene.index.IndexReader)
+     */
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException {
+        int maxDocFreq = fCutoff < 1
+            ? (int) (fCutoff * reader.maxDoc())
+            : (int) fCutoff;
+        List<TermQuery> rare = new ArrayList<TermQuery>();
+        List<TermQuery> common = new ArrayList<TermQuery>();
+        for (TermQuery query : fQueries) {
+            if (reader.docFreq(query.getTerm()) > maxDocFreq) {
+                common.add(query);
+            } else {
+                rare.add(query);
+            }
+        }
+        BooleanQuery result;
+        if (rare.isEmpty()) {
+            result = newBooleanQuery(common, Occur.MUST);
+        } else if (common.isEmpty()) {
+            result = newBooleanQuery(rare, Occur.SHOULD);
+        } else {
+            result = new BooleanQuery(true);
+            result.add(newBooleanQuery(rare, Occur.SHOULD), Occur.MUST);
+            result.add(newBooleanQuery(common, Occur.SHOULD), Occur.SHOULD);
+        }
+        result.setBoost(getBoost());
+        return result;
+    }
+
+    /**
+     * @see org.apache.lucene.search.Query#toString(java.lang.String)
+     */
+    @Override
+    public String toString(String field) {
+        StringBuilder buf = new StringBuilder();
+        if (getBoost() != 1) {
+            buf.append("(");
+        }
+        buf.append("common(");
+        for (int i = 0; i < fQueries.size(); i++) {
+            if (i > 0) {
+                buf.append(" ");
+            }
+            buf.append(fQueries.get(i).toString(field));
+        }
+        buf.append(")~").append(fCutoff);
+        if (getBoost() != 1) {
+            buf.append(")^").append(getBoost());
+        }
+        return buf.toString();
+    }
+
+}
@@ -0,0 +1,402 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.LockFactory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NativeFSLockFactory;
+import org.apache.lucene.store.NoLockFactory;
+import org.apache.lucene.store.SimpleFSDirectory;
+import org.apache.lucene.store.SimpleFSLockFactory;
+import org.apache.lucene.util.Constants;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * Opens index directories by their paths and creates indexers and searchers
+ * for them. The type of the directory implementation is chosen based on the
+ * platform and on the size of the index (see {@link DirectoryType#AUTO}).
+ * <p>
+ * Example:
+ * </p>
+ *
+ * <pre>
+ * DirectoryFactory factory = new DirectoryFactory()
+ *     .setPreload(true)
+ *     .setTermIndexDivisor(4);
+ * DocumentSearcher searcher = factory.newSearcher(path, analyzer);
+ * </pre>
+ *
+ * @author kotelnikov
+ */
+public class DirectoryFactory {
+
+    /**
+     * Directory implementations.
+     */
+    public enum DirectoryType {
+
+        /**
+         * Memory-mapped files on 64-bit JVMs (zero-copy reads served
+         * directly from the OS page cache); on 32-bit JVMs the address space
+         * is too small for big indexes, so {@link #NIO} is used (or
+         * {@link #SIMPLE} on Windows where positional NIO reads are
+         * synchronized). Indexes smaller than the off-heap threshold (see
+         * {@link DirectoryFactory#setOffHeapThreshold(long)}) are loaded in
+         * memory.
+         */
+        AUTO,
+
+        /**
+         * {@link MMapDirectory}
+         */
+        MMAP,
+
+        /**
+         * {@link NIOFSDirectory}
+         */
+        NIO,
+
+        /**
+         * A copy of the index loaded in an {@link OffHeapDirectory}. Changes
+         * are not written back to the disk, so this type should be used only
+         * for read-only indexes.
+         */
+        OFF_HEAP,
+
+        /**
+         * {@link SimpleFSDirectory}
+         */
+        SIMPLE
+    }
+
+    /**
+     * Lock implementations of file-based directories. A new lock factory is
+     * created for each opened directory, so locks are always kept in the
+     * directory they protect.
+     */
+    public enum LockType {
+
+        /**
+         * {@link NativeFSLockFactory} (the default lock type of
+         * {@link FSDirectory})
+         */
+        NATIVE,
+
+        /**
+         * No locks ({@link NoLockFactory}); it could be used by read-only
+         * searchers
+         */
+        NONE,
+
+        /**
+         * {@link SimpleFSLockFactory}
+         */
+        SIMPLE
+    }
+
+    private final static Logger log = Logger.getLogger(DirectoryFactory.class
+        .getName());
+
+    /**
+     * Returns the total size of index files in the specified directory.
+     *
+     * @param path the index directory
+     * @return the size of the index in bytes
+     */
+    public static long getIndexSize(File path) {
+        long size = 0;
+        File[] files = path.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    size += file.length();
+                }
+            }
+        }
+        return size;
+    }
+
+    private static SearchException handleError(String msg, Throwable e) {
+        log.log(Level.WARNING, msg, e);
+        if (e instanceof SearchException) {
+            return (SearchException) e;
+        }
+        return new SearchException(msg, e);
+    }
+
+    /**
+     * Reads all files of the given directory. For file-based directories it
+     * loads index files in the OS page cache, so first queries do not wait
+     * for random disk reads.
+     *
+     * @param dir the directory to read
+     * @return the number of read bytes
+     * @throws IOException
+     */
+    public static long preload(Directory dir) throws IOException {
+        byte[] buf = new byte[1 << 16];
+        long total = 0;
+        for (String name : dir.listAll()) {
+            IndexInput input = dir.openInput(name, buf.length);
+            try {
+                long len = input.length();
+                for (long pos = 0; pos < len;) {
+                    int count = (int) Math.min(buf.length, len - pos);
+                    input.readBytes(buf, 0, count);
+                    pos += count;
+                }
+                total += len;
+            } finally {
+                input.close();
+            }
+        }
+        return total;
+    }
+
+    private LockType fLockType = LockType.NATIVE;
+
+    private long fOffHeapThreshold = 0;
+
+    private boolean fPreload;
+
+    private int fTermIndexDivisor = 1;
+
+    private DirectoryType fType = DirectoryType.AUTO;
+
+    /**
+     * Returns the directory type which should be used for the specified
+     * index.
+     *
+     * @param path the path to the index
+     * @return the directory type (never {@link DirectoryType#AUTO})
+     */
+    public DirectoryType getDirectoryType(File path) {
+        if (fType != DirectoryType.AUTO) {
+            return fType;
+        }
+        if (fOffHeapThreshold > 0) {
+            long size = getIndexSize(path);
+            if (size > 0 && size <= fOffHeapThreshold) {
+                return DirectoryType.OFF_HEAP;
+            }
+        }
+        return getFileType();
+    }
+
+    /**
+     * Returns the best file-based directory type for this platform.
+     */
+    private DirectoryType getFileType() {
+        if (Constants.JRE_IS_64BIT && MMapDirectory.UNMAP_SUPPORTED) {
+            return DirectoryType.MMAP;
+        }
+        return Constants.WINDOWS ? DirectoryType.SIMPLE : DirectoryType.NIO;
+    }
+
+    /**
+     * Copies the index located by the specified path to a new
+     * {@link OffHeapDirectory}. The write lock of the index is not copied.
+     */
+    private Directory load(File path) throws IOException {
+        Directory dir = new OffHeapDirectory();
+        boolean loaded = false;
+        try {
+            Directory source = FSDirectory.open(path, newLockFactory());
+            try {
+                for (String name : source.listAll()) {
+                    if (!IndexWriter.WRITE_LOCK_NAME.equals(name)) {
+                        source.copy(dir, name, name);
+                    }
+                }
+            } finally {
+                source.close();
+            }
+            loaded = true;
+            return dir;
+        } finally {
+            if (!loaded) {
+                dir.close();
+            }
+        }
+    }
+
+    /**
+     * Creates and returns a new index writer configuration with the settings
+     * of this factory.
+     *
+     * @param analyzer the analyzer used to index documents
+     * @return a new index writer configuration
+     */
+    public IndexWriterConfig newConfig(Analyzer analyzer) {
+        IndexWriterConfig config = DocumentIndexer.newConfig(analyzer);
+        config.setReaderTermsIndexDivisor(fTermIndexDivisor);
+        return config;
+    }
+
+    /**
+     * Creates a new indexer for the specified path. Indexes are never loaded
+     * off-heap for indexers (their changes should be written to the disk).
+     *
+     * @param path the path to the index
+     * @param analyzer the analyzer used to index documents
+     * @return a new indexer
+     * @throws SearchException
+     */
+    public DocumentIndexer newIndexer(File path, Analyzer analyzer)
+        throws SearchException {
+        DirectoryType type = getDirectoryType(path);
+        if (type == DirectoryType.OFF_HEAP) {
+            type = getFileType();
+        }
+        Directory dir = open(path, type);
+        return new DocumentIndexer(dir, newConfig(analyzer));
+    }
+
+    /**
+     * Creates and returns a new lock factory of the configured type.
+     */
+    private LockFactory newLockFactory() throws IOException {
+        switch (fLockType) {
+            case NONE:
+                return NoLockFactory.getNoLockFactory();
+            case SIMPLE:
+                return new SimpleFSLockFactory();
+            default:
+                return new NativeFSLockFactory();
+        }
+    }
+
+    /**
+     * Creates a new searcher for the specified path.
+     *
+     * @param path the path to the index
+     * @param analyzer the analyzer used to parse queries
+     * @return a new searcher
+     * @throws SearchException
+     */
+    public DocumentSearcher newSearcher(File path, Analyzer analyzer)
+        throws SearchException {
+        DocumentSearcher searcher = new DocumentSearcher(open(path), analyzer);
+        searcher.setTermIndexDivisor(fTermIndexDivisor);
+        return searcher;
+    }
+
+    /**
+     * Opens the index directory located by the specified path.
+     *
+     * @param path the path to the index
+     * @return a new directory instance
+     * @throws SearchException
+     */
+    public Directory open(File path) throws SearchException {
+        return open(path, getDirectoryType(path));
+    }
+
+    private Directory open(File path, DirectoryType type)
+        throws SearchException {
+        try {
+            Directory dir;
+            switch (type) {
+                case MMAP:
+                    dir = new MMapDirectory(path, newLockFactory());
+                    break;
+                case NIO:
+                    dir = new NIOFSDirectory(path, newLockFactory());
+                    break;
+                case SIMPLE:
+                    dir = new SimpleFSDirectory(path, newLockFactory());
+                    break;
+                case OFF_HEAP:
+                    dir = load(path);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown type: "
+                        + type);
+            }
+            if (fPreload && type != DirectoryType.OFF_HEAP) {
+                long bytes = preload(dir);
+                log.fine("Preloaded " + bytes + " bytes of " + path);
+            }
+            return dir;
+        } catch (Throwable t) {
+            throw handleError("Can not open the index directory '"
+                + path
+                + "'.", t);
+        }
+    }
+
+    /**
+     * Sets the type of locks used by file-based directories. By default
+     * native OS locks are used ({@link LockType#NATIVE}). Read-only searchers
+     * could use {@link LockType#NONE}.
+     *
+     * @param lockType the lock type to set
+     * @return this instance
+     */
+    public DirectoryFactory setLockType(LockType lockType) {
+        fLockType = lockType != null ? lockType : LockType.NATIVE;
+        return this;
+    }
+
+    /**
+     * Sets the maximal size of indexes loaded in memory by the
+     * {@link DirectoryType#AUTO} mode. Such indexes are copied to an
+     * {@link OffHeapDirectory}, so the factory should be used only for
+     * read-only indexes if this threshold is positive.
+     *
+     * @param threshold the maximal size of indexes loaded in memory (in
+     *        bytes); 0 disables loading
+     * @return this instance
+     */
+    public DirectoryFactory setOffHeapThreshold(long threshold) {
+        fOffHeapThreshold = threshold;
+        return this;
+    }
+
+    /**
+     * If this flag is <code>true</code> then all index files are read when a
+     * directory is opened (a read-ahead of the whole index into the OS page
+     * cache).
+     *
+     * @param preload the preload flag to set
+     * @return this instance
+     */
+    public DirectoryFactory setPreload(boolean preload) {
+        fPreload = preload;
+        return this;
+    }
+
+    /**
+     * Sets the term index divisor used by created indexers and searchers (see
+     * {@link DocumentSearcher#setTermIndexDivisor(int)}).
+     *
+     * @param divisor the divisor to set
+     * @return this instance
+     */
+    public DirectoryFactory setTermIndexDivisor(int divisor) {
+        fTermIndexDivisor = Math.max(1, divisor);
+        return this;
+    }
+
+    /**
+     * Sets the type of directories opened by this factory.
+     *
+     * @param type the type to set
+     * @return this instance
+     */
+    public DirectoryFactory setType(DirectoryType type) {
+        fType = type != null ? type : DirectoryType.AUTO;
+        return this;
+    }
+
+}
@@ -1,215 +1,889 @@
-package org.ubimix.commons.search.lucene;
-
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Field;
-import org.apache.lucene.document.Field.Index;
-import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.MergeScheduler;
-import org.apache.lucene.index.SerialMergeScheduler;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.queryParser.QueryParser;
-import org.apache.lucene.search.BooleanClause.Occur;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.util.Version;
-import org.ubimix.commons.search.DocumentProvider;
-import org.ubimix.commons.search.IDocument;
-import org.ubimix.commons.search.IDocumentIndexer;
-import org.ubimix.commons.search.IDocumentProvider;
-import org.ubimix.commons.search.IFieldConst;
-import org.ubimix.commons.search.SearchException;
-
-/**
- * This class is used to index objects of the {@link IDocument} type. Indexing
- * parameters for individual fields could be re-defined using the
- * {@link FieldDescription} instances.
- * 
- * @author kotelnikov
- */
-public class DocumentIndexer implements IDocumentIndexer {
-
-    /**
-     * The internal logger
-     */
-    private final static Logger log = Logger.getLogger(DocumentIndexer.class
-        .getName());
-
-    /**
-     * The text analyzer (used by Lucene).
-     */
-    private Analyzer fAnalyzer;
-
-    private IndexWriter fWriter;
-
-    /**
-     * @param dir the Lucene directory
-     * @param analyzer the analyzer
-     */
-    public DocumentIndexer(Directory dir, Analyzer analyzer) {
-        try {
-            fAnalyzer = analyzer;
-            IndexWriterConfig config = new IndexWriterConfig(
-                Version.LUCENE_33,
-                fAnalyzer);
-            MergeScheduler mergeScheduler = new SerialMergeScheduler();
-            config.setMergeScheduler(mergeScheduler);
-            fWriter = new IndexWriter(dir, config);
-        } catch (Throwable t) {
-            throw handleErrror("Can not open the index.", t);
-        }
-    }
-
-    /**
-     * @see org.ubimix.commons.search.IDocumentIndexer#close()
-     */
-    public void close() throws SearchException {
-        try {
-            fWriter.optimize();
-            fWriter.close(true);
-        } catch (Throwable t) {
-            throw handleError("Can not close the indexer", t);
-        }
-    }
-
-    private SearchException handleError(String msg, Throwable e) {
-        log.log(Level.FINE, msg, e);
-        return new SearchException(msg, e);
-    }
-
-    private RuntimeException handleErrror(String message, Throwable t) {
-        log.log(Level.WARNING, message, t);
-        return new RuntimeException(t);
-    }
-
-    /**
-     * @see org.ubimix.commons.search.IDocumentIndexer#index(org.ubimix.commons.search.IDocument)
-     */
-    public void index(IDocument doc) throws SearchException {
-        index(null, doc);
-    }
-
-    public void index(IDocumentProvider documents) throws SearchException {
-        index(null, documents);
-    }
-
-    /**
-     * @see org.ubimix.commons.search.IDocumentIndexer#index(java.util.Map,
-     *      org.ubimix.commons.search.IDocument)
-     */
-    public void index(
-        Map<String, FieldDescription> fieldDescriptors,
-        IDocument doc) throws SearchException {
-        IDocumentProvider provider = new DocumentProvider(doc);
-        index(fieldDescriptors, provider);
-    }
-
-    public void index(
-        Map<String, FieldDescription> fieldDescriptors,
-        IDocumentProvider documents) throws SearchException {
-        try {
-            if (fieldDescriptors == null) {
-                fieldDescriptors = Collections.emptyMap();
-            }
-            // Gets all index fields of documents to index.
-            Map<String, QueryParser> indexFields = new HashMap<String, QueryParser>();
-            for (Map.Entry<String, FieldDescription> entry : fieldDescriptors
-                .entrySet()) {
-                FieldDescription value = entry.getValue();
-                if (value.isIdentifier()) {
-                    String field = entry.getKey();
-                    if (value.isAnalyzed()) {
-                        QueryParser parser = new QueryParser(
-                            Version.LUCENE_33,
-                            field,
-                            fAnalyzer);
-                        indexFields.put(field, parser);
-                    } else {
-                        indexFields.put(field, null);
-                    }
-                }
-            }
-            for (IDocument document : documents) {
-                // Remove previous version of the document from the index
-                BooleanQuery booleanQuery = new BooleanQuery();
-                for (Map.Entry<String, QueryParser> entry : indexFields
-                    .entrySet()) {
-                    String field = entry.getKey();
-                    String value = document.getValue(field);
-                    if (value != null) {
-                        Query query = null;
-                        QueryParser parser = entry.getValue();
-                        if (parser == null) {
-                            Term term = new Term(field, value);
-                            query = new TermQuery(term);
-                        } else {
-                            query = parser.parse(value);
-                        }
-                        booleanQuery.add(query, Occur.SHOULD);
-                    }
-                }
-                fWriter.deleteDocuments(booleanQuery);
-
-                // Add a new version of the document
-                Document luceneDoc = newDocument(document, fieldDescriptors);
-                fWriter.addDocument(luceneDoc);
-
-            }
-        } catch (Throwable t) {
-            throw handleError("Can not index a document", t);
-        }
-
-    }
-
-    /**
-     * Create a new Lucene document to index based on the provided fields and
-     * field descriptions.
-     * 
-     * @param doc the document to transform into a Lucene document
-     * @param fieldDescriptions the map containing descriptions of specified
-     *        field configurations
-     * @return
-     * @throws SearchException
-     */
-    private Document newDocument(
-        IDocument doc,
-        Map<String, FieldDescription> fieldDescriptions) throws SearchException {
-        Document result = new Document();
-        StringBuffer fullContent = new StringBuffer();
-        for (String fieldName : doc.getFields()) {
-            String str = doc.getValue(fieldName);
-            FieldDescription descr = fieldDescriptions.get(fieldName);
-            if (descr == null) {
-                descr = FieldDescription.DEFAULT;
-            }
-            Index analyze;
-            if (descr.isSearchableInFullIndex()) {
-                analyze = Field.Index.ANALYZED;
-                fullContent.append(" ").append(str);
-            } else {
-                analyze = Field.Index.NOT_ANALYZED;
-            }
-            Field field = new Field(fieldName, str, Field.Store.YES, analyze);
-            float boost = descr.getBoostFactor();
-            field.setBoost(boost);
-            result.add(field);
-        }
-        Field field = new Field(
-            IFieldConst.FULL_CONTENT,
-            fullContent.toString(),
-            Field.Store.YES,
-            Field.Index.ANALYZED);
-        result.add(field);
-        return result;
-    }
-
+package org.ubimix.commons.search.lucene;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.CompressionTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.Field.Index;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.MergeScheduler;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SerialMergeScheduler;
+import org.apache.lucene.index.SnapshotDeletionPolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.ubimix.commons.search.DocumentProvider;
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IDocumentIndexer;
+import org.ubimix.commons.search.IDocumentProvider;
+import org.ubimix.commons.search.IFieldConst;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * This class is used to index objects of the {@link IDocument} type. Indexing
+ * parameters for individual fields could be re-defined using the
+ * {@link FieldDescription} instances.
+ * 
+ * @author kotelnikov
+ */
+public class DocumentIndexer implements IDocumentIndexer {
+
+    /**
+     * A schema with analyzers of its fields.
+     */
+    private static class SchemaPlan {
+
+        private final FieldAnalyzer fIndexAnalyzer;
+
+        private final FieldAnalyzer fQueryAnalyzer;
+
+        private final IndexSchema fSchema;
+
+        public SchemaPlan(IndexSchema schema, Analyzer analyzer) {
+            fSchema = schema;
+            fIndexAnalyzer = schema.newIndexAnalyzer(analyzer);
+            fQueryAnalyzer = schema.newQueryAnalyzer(analyzer);
+        }
+
+        /**
+         * Releases token streams kept by analyzers of this plan.
+         */
+        public void close() {
+            fIndexAnalyzer.close();
+            fQueryAnalyzer.close();
+        }
+    }
+
+    /**
+     * The internal logger
+     */
+    private final static Logger log = Logger.getLogger(DocumentIndexer.class
+        .getName());
+
+    /**
+     * The maximal number of identifiers passed to the writer in one call.
+     */
+    private static final int DELETE_BATCH_SIZE = 1024;
+
+    /**
+     * The prefix of marker files recording published commit points (see
+     * {@link #publish()}). The name of a marker file is this prefix followed
+     * by the generation of the published commit point. Lucene does not remove
+     * such files, so publications survive restarts of the indexer and are
+     * visible to replicas having access only to the index directory.
+     */
+    public static final String PUBLISHED_FILE_PREFIX = "published_";
+
+    /**
+     * The identifier of the snapshot pinning the published commit point found
+     * in the index when the indexer is opened.
+     */
+    private static final String PUBLISHED_SNAPSHOT = "publish-0";
+
+    /**
+     * The minimal capacity of identifier filters.
+     */
+    private static final int MIN_FILTER_CAPACITY = 1024;
+
+    /**
+     * The text analyzer (used by Lucene).
+     */
+    private Analyzer fAnalyzer;
+
+    /**
+     * The expected false positive rate of identifier filters.
+     */
+    private double fFilterFalsePositiveRate = 0.01;
+
+    /**
+     * Bloom filters of identifiers existing in the index (one filter per
+     * non-analyzed identifier field). This map is <code>null</code> if
+     * identifier filters are disabled. It is also used as a lock for
+     * individual documents updates when filters are enabled.
+     */
+    private volatile Map<String, BloomFilter> fIdentifierFilters;
+
+    /**
+     * The identifier of the snapshot pinning the last published commit point
+     * (see {@link #publish()}).
+     */
+    private String fPublishedSnapshot;
+
+    /**
+     * The schema used to index documents without explicit field descriptions.
+     */
+    private volatile SchemaPlan fPlan;
+
+    /**
+     * This counter is used to generate unique snapshot identifiers.
+     */
+    private final AtomicLong fSnapshotCounter = new AtomicLong();
+
+    /**
+     * This deletion policy is used to pin commit points while they are copied
+     * (see {@link #backup(Directory)}).
+     */
+    private SnapshotDeletionPolicy fSnapshotPolicy;
+
+    private IndexWriter fWriter;
+
+    /**
+     * Returns a new index writer configuration with default parameters used by
+     * this indexer. The returned configuration could be modified (to change
+     * the merge policy, the size of the RAM buffer etc) and used with the
+     * {@link #DocumentIndexer(Directory, IndexWriterConfig)} constructor.
+     * 
+     * @param analyzer the analyzer
+     * @return a new index writer configuration
+     */
+    public static IndexWriterConfig newConfig(Analyzer analyzer) {
+        IndexWriterConfig config = new IndexWriterConfig(
+            Version.LUCENE_33,
+            analyzer);
+        MergeScheduler mergeScheduler = new SerialMergeScheduler();
+        config.setMergeScheduler(mergeScheduler);
+        config.setIndexDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy());
+        return config;
+    }
+
+    /**
+     * Returns the last commit point published in the specified index
+     * directory (see {@link #publish()}).
+     * 
+     * @param dir the index directory
+     * @return the published commit point or <code>null</code> if there is no
+     *         published commit points in the index or if its files were
+     *         already removed
+     * @throws IOException
+     */
+    public static IndexCommit getPublishedCommit(Directory dir)
+        throws IOException {
+        long generation = getPublishedGeneration(dir);
+        if (generation < 0) {
+            return null;
+        }
+        for (IndexCommit commit : IndexReader.listCommits(dir)) {
+            if (commit.getGeneration() == generation) {
+                return commit;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the generation of the last commit point published in the
+     * specified index directory (see {@link #publish()}).
+     * 
+     * @param dir the index directory
+     * @return the generation of the published commit point or
+     *         <code>-1</code> if nothing was published in this directory
+     * @throws IOException
+     */
+    public static long getPublishedGeneration(Directory dir)
+        throws IOException {
+        long result = -1;
+        if (!IndexReader.indexExists(dir)) {
+            return result;
+        }
+        for (String name : dir.listAll()) {
+            if (name.startsWith(PUBLISHED_FILE_PREFIX)) {
+                try {
+                    result = Math.max(result, Long.parseLong(name
+                        .substring(PUBLISHED_FILE_PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a marker file
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param dir the Lucene directory
+     * @param analyzer the analyzer
+     */
+    public DocumentIndexer(Directory dir, Analyzer analyzer) {
+        this(dir, newConfig(analyzer));
+    }
+
+    /**
+     * Creates a new indexer with the specified writer configuration. The
+     * deletion policy of the configuration is wrapped in a snapshot deletion
+     * policy (see {@link #backup(Directory)}). The commit point published
+     * before (see {@link #publish()}) remains pinned.
+     * 
+     * @param dir the Lucene directory
+     * @param config the index writer configuration
+     */
+    public DocumentIndexer(Directory dir, IndexWriterConfig config) {
+        try {
+            fAnalyzer = config.getAnalyzer();
+            Map<String, String> snapshots = new HashMap<String, String>();
+            IndexCommit published = getPublishedCommit(dir);
+            if (published != null) {
+                snapshots.put(
+                    PUBLISHED_SNAPSHOT,
+                    published.getSegmentsFileName());
+                fPublishedSnapshot = PUBLISHED_SNAPSHOT;
+            }
+            fSnapshotPolicy = new SnapshotDeletionPolicy(
+                config.getIndexDeletionPolicy(),
+                snapshots);
+            config.setIndexDeletionPolicy(fSnapshotPolicy);
+            fWriter = new IndexWriter(dir, config);
+            fPlan = new SchemaPlan(IndexSchema.load(dir), fAnalyzer);
+        } catch (Throwable t) {
+            throw handleErrror("Can not open the index.", t);
+        }
+    }
+
+    /**
+     * Makes a hot backup of the index to the given directory. This method
+     * commits all pending changes, pins the resulting commit point with a
+     * snapshot deletion policy and copies its files to the target directory;
+     * documents could be indexed in parallel while files are copied. Only
+     * files which are not present in the target directory yet are copied, so
+     * repeated backups to the same directory are incremental. Index files which
+     * are not used anymore are removed from the target directory.
+     * 
+     * @param target the backup directory
+     * @return the number of copied bytes
+     * @throws SearchException
+     */
+    public long backup(Directory target) throws SearchException {
+        try {
+            fWriter.commit();
+            return copyCommit(new CommitCopier(target));
+        } catch (Throwable t) {
+            throw handleError("Can not backup the index", t);
+        }
+    }
+
+    /**
+     * Makes a hot backup of the index to the specified file system directory.
+     * 
+     * @param dir the backup directory
+     * @return the number of copied bytes
+     * @throws SearchException
+     * @see #backup(Directory)
+     */
+    public long backup(File dir) throws SearchException {
+        try {
+            Directory target = FSDirectory.open(dir);
+            try {
+                return backup(target);
+            } finally {
+                target.close();
+            }
+        } catch (IOException e) {
+            throw handleError("Can not open the backup directory", e);
+        }
+    }
+
+    /**
+     * Sets a new schema and stores it with the index. The schema is used to
+     * index documents when field descriptions are not given explicitly (see
+     * {@link #index(IDocumentProvider)}); searchers load it with new readers.
+     * This method commits all pending changes.
+     * 
+     * @param schema the schema to set
+     * @throws SearchException
+     */
+    public void setSchema(IndexSchema schema) throws SearchException {
+        try {
+            fWriter.commit(schema.toUserData());
+            // The previous plan could be still used by other threads
+            fPlan = new SchemaPlan(schema, fAnalyzer);
+        } catch (Throwable t) {
+            throw handleError("Can not store the schema", t);
+        }
+    }
+
+    /**
+     * Enables or disables Bloom filters of identifiers. When filters are
+     * enabled the indexer keeps in memory a compact filter of all values of
+     * each non-analyzed identifier field. Filters are loaded from the index at
+     * the first use and updated with each new document. Deletes of previous
+     * document versions are skipped for identifiers definitely absent in the
+     * index, which makes initial loads and append-mostly feeds cheaper.
+     * Updates of individual documents are serialized when filters are
+     * enabled. This method should not be called while documents are indexed.
+     * 
+     * @param enabled if this flag is <code>true</code> then filters are used
+     * @param falsePositiveRate the expected probability of false positives
+     *        (for example 0.01)
+     */
+    public void setIdentifierFilter(boolean enabled, double falsePositiveRate) {
+        fFilterFalsePositiveRate = falsePositiveRate;
+        fIdentifierFilters = enabled
+            ? new HashMap<String, BloomFilter>()
+            : null;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#close()
+     */
+    public void close() throws SearchException {
+        try {
+            fWriter.optimize();
+            fWriter.close(true);
+        } catch (Throwable t) {
+            throw handleError("Can not close the indexer", t);
+        }
+    }
+
+    /**
+     * Pins the last commit point of the index and copies it using the given
+     * copier. The snapshot is released when all files are copied.
+     * 
+     * @param copier the copier used to copy files of the commit point
+     * @return the number of copied bytes
+     * @throws IOException
+     */
+    protected long copyCommit(CommitCopier copier) throws IOException {
+        String id = "snapshot-" + fSnapshotCounter.incrementAndGet();
+        IndexCommit commit = fSnapshotPolicy.snapshot(id);
+        try {
+            return copier.copy(commit);
+        } finally {
+            fSnapshotPolicy.release(id);
+        }
+    }
+
+    /**
+     * Removes documents with the specified identifiers. Identifiers are
+     * passed to the writer in batches of buffered term deletions; the writer
+     * applies them to all segments at once when it flushes. If identifier
+     * filters are enabled (see {@link #setIdentifierFilter(boolean, double)})
+     * then identifiers which are definitely not in the index are skipped.
+     * 
+     * @see org.ubimix.commons.search.IDocumentIndexer#delete(java.lang.String,
+     *      java.lang.Iterable)
+     */
+    public void delete(String field, Iterable<String> identifiers)
+        throws SearchException {
+        try {
+            Term prototype = new Term(field, "");
+            Term[] batch = new Term[DELETE_BATCH_SIZE];
+            int count = 0;
+            for (String identifier : identifiers) {
+                if (identifier == null || !mightContain(field, identifier)) {
+                    continue;
+                }
+                batch[count++] = prototype.createTerm(identifier);
+                if (count == batch.length) {
+                    fWriter.deleteDocuments(batch);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                Term[] terms = new Term[count];
+                System.arraycopy(batch, 0, terms, 0, count);
+                fWriter.deleteDocuments(terms);
+            }
+        } catch (Throwable t) {
+            throw handleError("Can not delete documents", t);
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#delete(java.lang.String)
+     */
+    public void delete(String query) throws SearchException {
+        try {
+            QueryParser parser = new DocumentQueryParser(
+                IFieldConst.FULL_CONTENT,
+                fPlan.fQueryAnalyzer,
+                null);
+            fWriter.deleteDocuments(parser.parse(query));
+        } catch (Throwable t) {
+            throw handleError("Can not delete documents. Query: '"
+                + query
+                + "'.", t);
+        }
+    }
+
+    /**
+     * Commits all pending changes and publishes the resulting commit point to
+     * replicas (see {@link IndexReplicator}). The published commit point is
+     * pinned until the next call of this method, so replicas can copy its
+     * files while new documents are indexed and segments are merged. The
+     * publication is recorded in a marker file of the index directory (see
+     * {@link #PUBLISHED_FILE_PREFIX}).
+     * 
+     * @return the generation of the published commit point
+     * @throws SearchException
+     */
+    public synchronized long publish() throws SearchException {
+        try {
+            fWriter.commit();
+            String id = "publish-" + fSnapshotCounter.incrementAndGet();
+            IndexCommit commit = fSnapshotPolicy.snapshot(id);
+            long generation = commit.getGeneration();
+            Directory dir = fWriter.getDirectory();
+            String marker = PUBLISHED_FILE_PREFIX + generation;
+            if (!dir.fileExists(marker)) {
+                dir.createOutput(marker).close();
+            }
+            for (String name : dir.listAll()) {
+                if (name.startsWith(PUBLISHED_FILE_PREFIX)
+                    && !name.equals(marker)) {
+                    dir.deleteFile(name);
+                }
+            }
+            if (fPublishedSnapshot != null) {
+                fSnapshotPolicy.release(fPublishedSnapshot);
+            }
+            fPublishedSnapshot = id;
+            return generation;
+        } catch (Throwable t) {
+            throw handleError("Can not publish the index", t);
+        }
+    }
+
+    /**
+     * @return the number of documents buffered in memory and not flushed yet
+     */
+    public int getBufferedDocuments() {
+        return fWriter.numRamDocs();
+    }
+
+    /**
+     * Returns a filter of identifiers for the specified field. Filters are
+     * created at the first call and re-created when they are saturated.
+     * 
+     * @param field the identifier field
+     * @return a filter of identifiers
+     * @throws IOException
+     */
+    private BloomFilter getIdentifierFilter(String field) throws IOException {
+        BloomFilter filter = fIdentifierFilters.get(field);
+        if (filter == null || filter.isSaturated()) {
+            int capacity = filter != null ? filter.getCapacity() * 2 : 0;
+            filter = newIdentifierFilter(field, capacity);
+            fIdentifierFilters.put(field, filter);
+        }
+        return filter;
+    }
+
+    /**
+     * Returns the analyzer used to parse queries on fields of the current
+     * schema. Queries should be parsed with this analyzer to match terms of
+     * non-analyzed and specially analyzed fields.
+     * 
+     * @return the query analyzer of the current schema
+     */
+    Analyzer getQueryAnalyzer() {
+        return fPlan.fQueryAnalyzer;
+    }
+
+    /**
+     * Returns the Lucene writer used by this indexer. It is used by other
+     * index implementations of this package (see {@link TieredIndex}).
+     * 
+     * @return the index writer
+     */
+    IndexWriter getWriter() {
+        return fWriter;
+    }
+
+    /**
+     * @return the size of the memory buffer used by not flushed documents (in
+     *         bytes)
+     */
+    public long getRamBufferUsage() {
+        return fWriter.ramSizeInBytes();
+    }
+
+    /**
+     * @return the schema stored with the index
+     */
+    public IndexSchema getSchema() {
+        return fPlan.fSchema;
+    }
+
+    /**
+     * @return the number of segments in the last commit of the index
+     * @throws SearchException
+     */
+    public int getSegmentCount() throws SearchException {
+        try {
+            SegmentInfos infos = new SegmentInfos();
+            infos.read(fWriter.getDirectory());
+            return infos.size();
+        } catch (Throwable t) {
+            throw handleError("Can not read segments of the index", t);
+        }
+    }
+
+    private SearchException handleError(String msg, Throwable e) {
+        log.log(Level.FINE, msg, e);
+        return new SearchException(msg, e);
+    }
+
+    private RuntimeException handleErrror(String message, Throwable t) {
+        log.log(Level.WARNING, message, t);
+        return new RuntimeException(t);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#index(org.ubimix.commons.search.IDocument)
+     */
+    public void index(IDocument doc) throws SearchException {
+        index(null, doc);
+    }
+
+    public void index(IDocumentProvider documents) throws SearchException {
+        index(null, documents);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#index(java.util.Map,
+     *      org.ubimix.commons.search.IDocument)
+     */
+    public void index(
+        Map<String, FieldDescription> fieldDescriptors,
+        IDocument doc) throws SearchException {
+        IDocumentProvider provider = new DocumentProvider(doc);
+        index(fieldDescriptors, provider);
+    }
+
+    public void index(
+        Map<String, FieldDescription> fieldDescriptors,
+        IDocumentProvider documents) throws SearchException {
+        try {
+            SchemaPlan plan = fieldDescriptors != null ? new SchemaPlan(
+                new IndexSchema(fieldDescriptors),
+                fAnalyzer) : fPlan;
+            try {
+                for (IDocument document : documents) {
+                    Document luceneDoc = newDocument(document, plan);
+                    Map<String, BloomFilter> filters = fIdentifierFilters;
+                    if (filters != null) {
+                        // Filters should reflect all previously added
+                        // documents
+                        synchronized (filters) {
+                            replaceDocument(plan, document, luceneDoc);
+                        }
+                    } else {
+                        replaceDocument(plan, document, luceneDoc);
+                    }
+                }
+            } finally {
+                if (plan != fPlan) {
+                    plan.close();
+                }
+            }
+        } catch (Throwable t) {
+            throw handleError("Can not index a document", t);
+        }
+
+    }
+
+    /**
+     * Replaces the previous version of the document in the index by the new
+     * one.
+     * 
+     * @param plan the schema defining identifier fields and analyzers
+     * @param document the document to index
+     * @param luceneDoc the Lucene document to add
+     */
+    private void replaceDocument(
+        SchemaPlan plan,
+        IDocument document,
+        Document luceneDoc) throws Exception {
+        IndexSchema schema = plan.fSchema;
+        // Remove previous version of the document from the index
+        BooleanQuery booleanQuery = new BooleanQuery();
+        for (String field : schema.getIdentifierFields()) {
+            String value = document.getValue(field);
+            if (value != null) {
+                Query query = null;
+                if (!schema.getField(field).isAnalyzed()) {
+                    if (fIdentifierFilters != null
+                        && !getIdentifierFilter(field).mightContain(value)) {
+                        // This identifier is definitely not in the index
+                        continue;
+                    }
+                    Term term = new Term(field, value);
+                    query = new TermQuery(term);
+                } else {
+                    QueryParser parser = new QueryParser(
+                        Version.LUCENE_33,
+                        field,
+                        plan.fQueryAnalyzer);
+                    query = parser.parse(value);
+                }
+                booleanQuery.add(query, Occur.SHOULD);
+            }
+        }
+        if (booleanQuery.clauses().size() > 0) {
+            fWriter.deleteDocuments(booleanQuery);
+        }
+
+        // Add a new version of the document
+        fWriter.addDocument(luceneDoc, plan.fIndexAnalyzer);
+        if (fIdentifierFilters != null) {
+            for (String field : schema.getIdentifierFields()) {
+                String value = document.getValue(field);
+                if (value != null && !schema.getField(field).isAnalyzed()) {
+                    getIdentifierFilter(field).add(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns <code>false</code> if the specified identifier is definitely
+     * not in the index. Only already loaded identifier filters are used.
+     * 
+     * @param field the identifier field
+     * @param value the value of the identifier
+     * @return <code>false</code> if the identifier is not in the index
+     */
+    private boolean mightContain(String field, String value) {
+        Map<String, BloomFilter> filters = fIdentifierFilters;
+        if (filters == null) {
+            return true;
+        }
+        synchronized (filters) {
+            BloomFilter filter = filters.get(field);
+            return filter == null || filter.mightContain(value);
+        }
+    }
+
+    /**
+     * Creates a new filter and loads in it all identifiers of the specified
+     * field existing in the index (including not committed documents).
+     * 
+     * @param field the identifier field
+     * @param minCapacity the minimal capacity of the filter
+     * @return a new filter of identifiers
+     * @throws IOException
+     */
+    private BloomFilter newIdentifierFilter(String field, int minCapacity)
+        throws IOException {
+        IndexReader reader = IndexReader.open(fWriter, false);
+        try {
+            int capacity = Math.max(reader.maxDoc() * 2, minCapacity);
+            capacity = Math.max(capacity, MIN_FILTER_CAPACITY);
+            BloomFilter filter = new BloomFilter(
+                capacity,
+                fFilterFalsePositiveRate);
+            field = field.intern();
+            TermEnum terms = reader.terms(new Term(field, ""));
+            try {
+                do {
+                    Term term = terms.term();
+                    if (term == null || term.field() != field) {
+                        break;
+                    }
+                    filter.add(term.text());
+                } while (terms.next());
+            } finally {
+                terms.close();
+            }
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Identifier filter for the '"
+                    + field
+                    + "' field is loaded ("
+                    + filter.getCount()
+                    + " identifiers, "
+                    + filter.getMemorySize()
+                    + " bytes).");
+            }
+            return filter;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Adds a new stored field to the given Lucene document. Values of
+     * compressed fields are stored as binary deflated blocks and indexed in a
+     * separate (not stored) field with the same name.
+     * 
+     * @param doc the document to update
+     * @param fieldName the name of the field
+     * @param str the value of the field
+     * @param analyze the indexing mode of the field
+     * @param boost the boost factor of the field
+     * @param compressed if this flag is <code>true</code> then the value is
+     *        stored compressed
+     */
+    private void addField(
+        Document doc,
+        String fieldName,
+        String str,
+        Index analyze,
+        float boost,
+        boolean compressed) {
+        Field field;
+        if (compressed) {
+            field = new Field(fieldName, str, Field.Store.NO, analyze);
+            doc.add(new Field(fieldName, CompressionTools.compressString(str)));
+        } else {
+            field = new Field(fieldName, str, Field.Store.YES, analyze);
+        }
+        field.setBoost(boost);
+        doc.add(field);
+    }
+
+    /**
+     * Create a new Lucene document to index based on the provided fields and
+     * field descriptions.
+     * 
+     * @param doc the document to transform into a Lucene document
+     * @param plan the schema containing descriptions of fields
+     * @return
+     * @throws SearchException
+     */
+    private Document newDocument(IDocument doc, SchemaPlan plan)
+        throws SearchException {
+        Document result = new Document();
+        StringBuffer fullContent = new StringBuffer();
+        StringBuffer reversedContent = new StringBuffer();
+        StringBuffer shingleContent = new StringBuffer();
+        // Shadow fields of the full content are built from all its fields;
+        // otherwise queries would not match fields without these flags
+        boolean reverseFullContent = plan.fSchema
+            .isIndexReversed(IFieldConst.FULL_CONTENT);
+        boolean shingleFullContent = plan.fSchema
+            .isIndexShingles(IFieldConst.FULL_CONTENT);
+        boolean compressFullContent = false;
+        for (String fieldName : doc.getFields()) {
+            String str = doc.getValue(fieldName);
+            FieldDescription descr = plan.fSchema.getField(fieldName);
+            Index analyze;
+            if (descr.isSearchableInFullIndex()) {
+                analyze = Field.Index.ANALYZED;
+                fullContent.append(" ").append(str);
+                if (reverseFullContent) {
+                    reversedContent.append(" ").append(str);
+                }
+                if (shingleFullContent) {
+                    shingleContent.append(" ").append(str);
+                }
+                compressFullContent |= descr.isCompressed();
+            } else {
+                analyze = Field.Index.NOT_ANALYZED;
+            }
+            addField(
+                result,
+                fieldName,
+                str,
+                analyze,
+                descr.getBoostFactor(),
+                descr.isCompressed());
+            if (descr.isIndexReversed()) {
+                result.add(newReversedField(
+                    plan.fQueryAnalyzer,
+                    fieldName,
+                    str,
+                    analyze));
+            }
+            if (descr.isIndexShingles() && analyze == Field.Index.ANALYZED) {
+                result.add(newShingleField(
+                    plan.fQueryAnalyzer,
+                    fieldName,
+                    str));
+            }
+        }
+        addField(
+            result,
+            IFieldConst.FULL_CONTENT,
+            fullContent.toString(),
+            Field.Index.ANALYZED,
+            1,
+            compressFullContent);
+        if (reversedContent.length() > 0) {
+            result.add(newReversedField(
+                plan.fQueryAnalyzer,
+                IFieldConst.FULL_CONTENT,
+                reversedContent.toString(),
+                Field.Index.ANALYZED));
+        }
+        if (shingleContent.length() > 0) {
+            result.add(newShingleField(
+                plan.fQueryAnalyzer,
+                IFieldConst.FULL_CONTENT,
+                shingleContent.toString()));
+        }
+        return result;
+    }
+
+    /**
+     * Creates a new (not stored) shadow field containing reversed tokens of
+     * the specified value.
+     * 
+     * @param analyzer the analyzer of the schema
+     * @param fieldName the name of the original field
+     * @param str the value of the field
+     * @param analyze the indexing mode of the original field
+     * @return a new shadow field
+     */
+    private Field newReversedField(
+        Analyzer analyzer,
+        String fieldName,
+        String str,
+        Index analyze) {
+        String name = fieldName + IFieldConst.REVERSED_SUFFIX;
+        if (analyze == Field.Index.ANALYZED) {
+            TokenStream stream = analyzer.tokenStream(
+                fieldName,
+                new StringReader(str));
+            return new Field(name, new ReversedTokenFilter(stream));
+        } else {
+            return new Field(
+                name,
+                ReversedTokenFilter.reverse(str),
+                Field.Store.NO,
+                Field.Index.NOT_ANALYZED_NO_NORMS);
+        }
+    }
+
+    /**
+     * Creates a new (not stored) shadow field containing word bigrams of the
+     * specified value. Values are analyzed in the same way as queries, so
+     * bigrams of the field correspond to bigrams of phrase queries.
+     * 
+     * @param analyzer the query analyzer
+     * @param fieldName the name of the original field
+     * @param str the value of the field
+     * @return a new shadow field
+     */
+    private Field newShingleField(
+        Analyzer analyzer,
+        String fieldName,
+        String str) {
+        TokenStream stream = analyzer.tokenStream(
+            fieldName,
+            new StringReader(str));
+        return new Field(
+            fieldName + IFieldConst.SHINGLES_SUFFIX,
+            new ShingleTokenFilter(stream));
+    }
+
 }
\ No newline at end of file
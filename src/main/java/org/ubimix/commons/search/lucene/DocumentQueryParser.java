@@ -0,0 +1,231 @@
+package org.ubimix.commons.search.lucene;
+
+import java.util.List;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.WildcardQuery;
+import org.apache.lucene.util.Version;
+import org.ubimix.commons.search.IFieldConst;
+
+/**
+ * The query parser used by the {@link DocumentSearcher}. It uses shadow fields
+ * created by the {@link DocumentIndexer} to speed up some types of queries.
+ * <p>
+ * Wildcard queries with a leading wildcard (like <code>*phone</code>) are
+ * transformed to prefix queries (<code>enohp*</code>) on fields with reversed
+ * tokens (see {@link IFieldConst#REVERSED_SUFFIX}). If the schema of the
+ * index does not declare reversed tokens for the field (see
+ * {@link IndexSchema#isIndexReversed(String)}) then leading wildcards are
+ * rejected as usual.
+ * </p>
+ * <p>
+ * Exact phrase queries are transformed to phrase queries over word bigrams on
+ * fields with shingles (see {@link IFieldConst#SHINGLES_SUFFIX} and
+ * {@link IndexSchema#isIndexShingles(String)}). Bigrams are
+ * much more rare than individual words, so such queries intersect much
+ * shorter lists of positions.
+ * </p>
+ * <p>
+ * If the common terms cutoff is set (see {@link #setCommonTermsCutoff(float)})
+ * then disjunctions of terms are transformed to {@link CommonTermsQuery}
+ * instances, so very common words of natural language queries are scored
+ * only in documents matching rare words.
+ * </p>
+ * <p>
+ * Queries on shadow fields can not be used to highlight the original text. If
+ * the schema is <code>null</code> then shadow fields are not
+ * used and leading wildcards are allowed; such parsers build queries used
+ * only to highlight search results.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class DocumentQueryParser extends QueryParser {
+
+    private static boolean isWildcard(char ch) {
+        return ch == '*' || ch == '?';
+    }
+
+    private float fCommonTermsCutoff;
+
+    private final IndexSchema fSchema;
+
+    /**
+     * @param field the default field of the query
+     * @param analyzer the analyzer used to parse queries
+     * @param schema the schema of the index defining available shadow fields;
+     *        if it is <code>null</code> then shadow fields are not used
+     */
+    public DocumentQueryParser(
+        String field,
+        Analyzer analyzer,
+        IndexSchema schema) {
+        super(Version.LUCENE_33, field, analyzer);
+        fSchema = schema;
+        setAllowLeadingWildcard(schema == null);
+    }
+
+    /**
+     * @see org.apache.lucene.queryParser.QueryParser#getBooleanQuery(java.util.List,
+     *      boolean)
+     */
+    @Override
+    protected Query getBooleanQuery(
+        List<BooleanClause> clauses,
+        boolean disableCoord) throws ParseException {
+        if (fCommonTermsCutoff <= 0 || clauses.size() < 2) {
+            return super.getBooleanQuery(clauses, disableCoord);
+        }
+        CommonTermsQuery query = new CommonTermsQuery(
+            fCommonTermsCutoff,
+            disableCoord);
+        for (BooleanClause clause : clauses) {
+            if (clause.getOccur() != Occur.SHOULD
+                || !(clause.getQuery() instanceof TermQuery)) {
+                return super.getBooleanQuery(clauses, disableCoord);
+            }
+            query.add((TermQuery) clause.getQuery());
+        }
+        return query;
+    }
+
+    /**
+     * @see org.apache.lucene.queryParser.QueryParser#getFieldQuery(java.lang.String,
+     *      java.lang.String, int)
+     */
+    @Override
+    protected Query getFieldQuery(String field, String queryText, int slop)
+        throws ParseException {
+        Query query = super.getFieldQuery(field, queryText, slop);
+        if (slop == 0 && query instanceof PhraseQuery) {
+            Query shingleQuery = getShingleQuery((PhraseQuery) query);
+            if (shingleQuery != null) {
+                query = shingleQuery;
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Returns a query on the reversed shadow field for terms with a leading
+     * wildcard.
+     *
+     * @param field the field of the term
+     * @param termStr the term with wildcards
+     * @return a query on the reversed field or <code>null</code> if such a
+     *         query could not be built
+     */
+    protected Query getReversedQuery(String field, String termStr) {
+        if (termStr.length() < 2 || !isWildcard(termStr.charAt(0))) {
+            return null;
+        }
+        if (fSchema == null || !fSchema.isIndexReversed(field)) {
+            return null;
+        }
+        String reversedField = field + IFieldConst.REVERSED_SUFFIX;
+        if (getLowercaseExpandedTerms()) {
+            termStr = termStr.toLowerCase(getLocale());
+        }
+        String reversed = ReversedTokenFilter.reverse(termStr);
+        if (isWildcard(reversed.charAt(0))) {
+            // Wildcards on both sides; the reversed field does not help.
+            return null;
+        }
+        int len = reversed.length() - 1;
+        boolean prefix = reversed.charAt(len) == '*';
+        for (int i = 0; prefix && i < len; i++) {
+            prefix = !isWildcard(reversed.charAt(i));
+        }
+        Query query;
+        if (prefix) {
+            Term term = new Term(reversedField, reversed.substring(0, len));
+            PrefixQuery q = new PrefixQuery(term);
+            q.setRewriteMethod(getMultiTermRewriteMethod());
+            query = q;
+        } else {
+            Term term = new Term(reversedField, reversed);
+            WildcardQuery q = new WildcardQuery(term);
+            q.setRewriteMethod(getMultiTermRewriteMethod());
+            query = q;
+        }
+        return query;
+    }
+
+    /**
+     * Returns a query over word bigrams for the specified exact phrase query.
+     * 
+     * @param query the phrase query to transform
+     * @return a query on the shingle field or <code>null</code> if such a
+     *         query could not be built
+     */
+    protected Query getShingleQuery(PhraseQuery query) {
+        Term[] terms = query.getTerms();
+        int[] positions = query.getPositions();
+        if (terms.length < 2) {
+            return null;
+        }
+        String field = terms[0].field();
+        if (fSchema == null || !fSchema.isIndexShingles(field)) {
+            return null;
+        }
+        String shingleField = field + IFieldConst.SHINGLES_SUFFIX;
+        for (int i = 1; i < terms.length; i++) {
+            if (positions[i] != positions[i - 1] + 1) {
+                // Gaps (removed stop words) are not indexed in shingles
+                return null;
+            }
+        }
+        Query result;
+        if (terms.length == 2) {
+            result = new TermQuery(new Term(shingleField, ShingleTokenFilter
+                .getShingle(terms[0].text(), terms[1].text())));
+        } else {
+            PhraseQuery phrase = new PhraseQuery();
+            for (int i = 1; i < terms.length; i++) {
+                String shingle = ShingleTokenFilter.getShingle(
+                    terms[i - 1].text(),
+                    terms[i].text());
+                phrase.add(new Term(shingleField, shingle), i - 1);
+            }
+            result = phrase;
+        }
+        result.setBoost(query.getBoost());
+        return result;
+    }
+
+    /**
+     * @see org.apache.lucene.queryParser.QueryParser#getWildcardQuery(java.lang.String,
+     *      java.lang.String)
+     */
+    @Override
+    protected Query getWildcardQuery(String field, String termStr)
+        throws ParseException {
+        Query query = getReversedQuery(field, termStr);
+        if (query == null) {
+            query = super.getWildcardQuery(field, termStr);
+        }
+        return query;
+    }
+
+    /**
+     * Sets the maximal document frequency of rare terms (see
+     * {@link CommonTermsQuery}). Disjunctions of terms are parsed as usual if
+     * this value is 0 (by default).
+     * 
+     * @param cutoff the cutoff to set; values lower than 1 are fractions of
+     *        the number of documents in the index
+     */
+    public void setCommonTermsCutoff(float cutoff) {
+        fCommonTermsCutoff = cutoff;
+    }
+
+}
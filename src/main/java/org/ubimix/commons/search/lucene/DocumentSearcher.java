@@ -1,250 +1,1431 @@
-/**
- * 
- */
-package org.ubimix.commons.search.lucene;
-
-import java.io.IOException;
-import java.io.StringReader;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.TokenStream;
-import org.apache.lucene.document.Document;
-import org.apache.lucene.document.Fieldable;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.queryParser.QueryParser;
-import org.apache.lucene.search.BooleanClause.Occur;
-import org.apache.lucene.search.BooleanQuery;
-import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.Query;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.highlight.Formatter;
-import org.apache.lucene.search.highlight.Highlighter;
-import org.apache.lucene.search.highlight.QueryScorer;
-import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
-import org.apache.lucene.store.Directory;
-import org.apache.lucene.util.Version;
-import org.ubimix.commons.search.AbstractDocument;
-import org.ubimix.commons.search.IDocument;
-import org.ubimix.commons.search.IDocumentSearcher;
-import org.ubimix.commons.search.IFieldConst;
-import org.ubimix.commons.search.SearchException;
-
-/**
- * @author kotelnikov
- */
-public class DocumentSearcher implements IDocumentSearcher {
-
-    protected static class InternalSearchResults implements ISearchResult {
-
-        private Analyzer fAnalyzer;
-
-        private final Document fDoc;
-
-        private IDocument fDocument;
-
-        private final Highlighter fHighlighter;
-
-        private float fScore;
-
-        private final Collection<String> fSearchFields;
-
-        protected InternalSearchResults(
-            Document doc,
-            Analyzer analyzer,
-            Highlighter highlighter,
-            Collection<String> searchFields,
-            float score) {
-            fDoc = doc;
-            fAnalyzer = analyzer;
-            fHighlighter = highlighter;
-            fSearchFields = searchFields;
-            fScore = score;
-        }
-
-        public IDocument getDocument() {
-            if (fDocument == null) {
-                fDocument = new AbstractDocument() {
-                    public Set<String> getFields() throws SearchException {
-                        List<Fieldable> fields = fDoc.getFields();
-                        Set<String> set = new LinkedHashSet<String>();
-                        for (Fieldable field : fields) {
-                            String fieldName = field.name();
-                            set.add(fieldName);
-                        }
-                        set.remove(IFieldConst.FULL_CONTENT);
-                        return set;
-                    }
-
-                    public String getValue(String fieldName)
-                        throws SearchException {
-                        String value = fDoc.get(fieldName);
-                        return value;
-                    }
-                };
-            }
-            return fDocument;
-        }
-
-        public String getHighlight() throws SearchException {
-            try {
-                IDocument document = getDocument();
-                StringBuilder buf = new StringBuilder();
-                for (String field : fSearchFields) {
-                    String value = document.getValue(field);
-                    TokenStream tokenStream = fAnalyzer.tokenStream(
-                        field,
-                        new StringReader(value));
-                    String formattedValue = fHighlighter.getBestFragments(
-                        tokenStream,
-                        value,
-                        3,
-                        "...");
-                    if (formattedValue.length() > 0) {
-                        buf.append(" ... ");
-                        buf.append(formattedValue);
-                    }
-                }
-                if (buf.length() > 0) {
-                    buf.append(" ... ");
-                }
-                return buf.toString();
-            } catch (Throwable t) {
-                throw handleError(
-                    "Can not return highlights for search results.",
-                    t);
-            }
-        }
-
-        public float getScore() {
-            return fScore;
-        }
-    }
-
-    final static Logger log = Logger
-        .getLogger(DocumentSearcher.class.getName());
-
-    private static SearchException handleError(String message, Throwable e) {
-        log.log(Level.WARNING, message, e);
-        if (e instanceof SearchException) {
-            return (SearchException) e;
-        }
-        return new SearchException(message, e);
-    }
-
-    private Analyzer fAnalyzer;
-
-    private Directory fDir;
-
-    private IndexReader fReader;
-
-    public DocumentSearcher(Directory dir, Analyzer analyzer)
-        throws SearchException {
-        fAnalyzer = analyzer;
-        fDir = dir;
-    }
-
-    /**
-     * @see org.ubimix.commons.search.IDocumentSearcher#close()
-     */
-    public void close() throws SearchException {
-        try {
-            IndexReader reader = getReader(false);
-            if (reader != null) {
-                reader.close();
-            }
-        } catch (IOException e) {
-            throw handleError("Can not close the Lucene reader", e);
-        }
-    }
-
-    private Query getQuery(
-        Collection<String> fields,
-        Analyzer analyzer,
-        String q) throws SearchException {
-        try {
-            BooleanQuery booleanQuery = new BooleanQuery();
-            for (String field : fields) {
-                QueryParser parser = new QueryParser(
-                    Version.LUCENE_33,
-                    field,
-                    analyzer);
-                Query query = parser.parse(q);
-                booleanQuery.add(query, Occur.SHOULD);
-            }
-            return booleanQuery;
-        } catch (Throwable t) {
-            throw handleError("Parse error", t);
-        }
-    }
-
-    private IndexReader getReader(boolean open) throws SearchException {
-        try {
-            if (fReader == null && open) {
-                fReader = IndexReader.open(fDir);
-            }
-            return fReader;
-        } catch (IOException e) {
-            throw handleError("Can not create a DocumentSearcher instance.", e);
-        }
-    }
-
-    /**
-     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
-     *      java.util.Collection,
-     *      org.ubimix.commons.search.DocumentSearcher.ISearchResultCollector)
-     */
-    public void search(
-        String q,
-        Collection<String> fields,
-        final ISearchResultCollector collector) throws SearchException {
-        try {
-            if (fields == null || fields.isEmpty()) {
-                fields = new HashSet<String>();
-                fields.add(IFieldConst.FULL_CONTENT);
-            }
-            IndexReader reader = getReader(true);
-            final Collection<String> searchFields = fields;
-            Query query = getQuery(searchFields, fAnalyzer, q);
-            IndexSearcher searcher = new IndexSearcher(reader);
-            Formatter formatter = new SimpleHTMLFormatter();
-            final Highlighter highlighter = new Highlighter(
-                formatter,
-                new QueryScorer(query));
-            int maxCount = collector.getMaxResultNumber();
-            TopDocs hits = searcher.search(query, maxCount);
-            if (hits != null) {
-                for (ScoreDoc hit : hits.scoreDocs) {
-                    final Document doc = reader.document(hit.doc);
-                    collector.onSearchResult(new InternalSearchResults(
-                        doc,
-                        fAnalyzer,
-                        highlighter,
-                        searchFields,
-                        hit.score));
-                }
-            }
-        } catch (Throwable t) {
-            throw handleError("Can not perform a search operation. Query: '"
-                + q
-                + "'.", t);
-        }
-    }
-
-    /**
-     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
-     *      java.util.Collection,
-     *      org.ubimix.commons.search.DocumentSearcher.ISearchResultCollector)
-     */
-    public void search(String q, final ISearchResultCollector collector)
-        throws SearchException {
-        search(q, null, collector);
-    }
-}
+/**
+ * 
+ */
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.highlight.Formatter;
+import org.apache.lucene.search.highlight.Highlighter;
+import org.apache.lucene.search.highlight.QueryScorer;
+import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ReaderUtil;
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IDocumentSearcher;
+import org.ubimix.commons.search.IFieldConst;
+import org.ubimix.commons.search.SearchException;
+import org.ubimix.commons.search.ShiftIterator;
+
+/**
+ * @author kotelnikov
+ */
+public class DocumentSearcher implements IDocumentSearcher {
+
+    protected static class InternalSearchResults implements ISearchResult {
+
+        private Analyzer fAnalyzer;
+
+        private Document fDoc;
+
+        private final int fDocId;
+
+        private IDocument fDocument;
+
+        private final Highlighter fHighlighter;
+
+        private SearchProfile fProfile;
+
+        private float fScore;
+
+        private final Collection<String> fSearchFields;
+
+        protected InternalSearchResults(
+            Document doc,
+            Analyzer analyzer,
+            Highlighter highlighter,
+            Collection<String> searchFields,
+            float score) {
+            this(-1, null, analyzer, highlighter, searchFields, score);
+            fDoc = doc;
+        }
+
+        /**
+         * @param docId the internal identifier of the found document
+         * @param document the found document; if it is <code>null</code>
+         *        then it should be set later using the
+         *        {@link #setDocument(IDocument)} method
+         * @param analyzer the analyzer used to highlight results
+         * @param highlighter the highlighter
+         * @param searchFields fields used to search
+         * @param score the score of this result
+         */
+        protected InternalSearchResults(
+            int docId,
+            IDocument document,
+            Analyzer analyzer,
+            Highlighter highlighter,
+            Collection<String> searchFields,
+            float score) {
+            fDocId = docId;
+            fDocument = document;
+            fAnalyzer = analyzer;
+            fHighlighter = highlighter;
+            fSearchFields = searchFields;
+            fScore = score;
+        }
+
+        public IDocument getDocument() {
+            if (fDocument == null && fDoc != null) {
+                fDocument = StoredDocument.newDocument(fDoc);
+            }
+            return fDocument;
+        }
+
+        /**
+         * @return the internal identifier of the found document
+         */
+        protected int getDocId() {
+            return fDocId;
+        }
+
+        public String getHighlight() throws SearchException {
+            long start = fProfile != null ? System.nanoTime() : 0;
+            try {
+                IDocument document = getDocument();
+                StringBuilder buf = new StringBuilder();
+                for (String field : fSearchFields) {
+                    String value = document.getValue(field);
+                    TokenStream tokenStream = fAnalyzer.reusableTokenStream(
+                        field,
+                        new StringReader(value));
+                    String formattedValue = fHighlighter.getBestFragments(
+                        tokenStream,
+                        value,
+                        3,
+                        "...");
+                    if (formattedValue.length() > 0) {
+                        buf.append(" ... ");
+                        buf.append(formattedValue);
+                    }
+                }
+                if (buf.length() > 0) {
+                    buf.append(" ... ");
+                }
+                return buf.toString();
+            } catch (Throwable t) {
+                throw handleError(
+                    "Can not return highlights for search results.",
+                    t);
+            } finally {
+                if (fProfile != null) {
+                    fProfile.addHighlightTime(System.nanoTime() - start);
+                }
+            }
+        }
+
+        public float getScore() {
+            return fScore;
+        }
+
+        /**
+         * @param document the found document
+         */
+        protected void setDocument(IDocument document) {
+            fDoc = null;
+            fDocument = document;
+        }
+
+        /**
+         * @param profile the profile used to register highlighting times; it
+         *        could be <code>null</code>
+         */
+        protected void setProfile(SearchProfile profile) {
+            fProfile = profile;
+        }
+    }
+
+    /**
+     * Results of an executed query: the parsed query, fields used to search,
+     * the highlighter and found documents.
+     * 
+     * @author kotelnikov
+     */
+    protected static class QueryResults {
+
+        private final Highlighter fHighlighter;
+
+        private final ScoreDoc[] fHits;
+
+        private SearchProfile fProfile;
+
+        private final Collection<String> fSearchFields;
+
+        public QueryResults(
+            Collection<String> searchFields,
+            Highlighter highlighter,
+            ScoreDoc[] hits) {
+            fSearchFields = searchFields;
+            fHighlighter = highlighter;
+            fHits = hits;
+        }
+
+        /**
+         * @return the highlighter for found documents
+         */
+        public Highlighter getHighlighter() {
+            return fHighlighter;
+        }
+
+        /**
+         * @return found documents
+         */
+        public ScoreDoc[] getHits() {
+            return fHits;
+        }
+
+        /**
+         * @return the execution profile of the query or <code>null</code> if
+         *         profiling is disabled
+         */
+        public SearchProfile getProfile() {
+            return fProfile;
+        }
+
+        /**
+         * @return fields used to search
+         */
+        public Collection<String> getSearchFields() {
+            return fSearchFields;
+        }
+
+        /**
+         * @param profile the execution profile of the query
+         */
+        public void setProfile(SearchProfile profile) {
+            fProfile = profile;
+        }
+    }
+
+    /**
+     * A lazy cursor over found documents. It holds a reference to the index
+     * reader used to perform the search and loads stored fields only for
+     * documents returned by the {@link #next()} method.
+     * 
+     * @author kotelnikov
+     */
+    /**
+     * The schema of the index loaded with a reader and the analyzer used to
+     * parse queries on fields of this schema.
+     */
+    private static class SchemaPlan {
+
+        private final Analyzer fQueryAnalyzer;
+
+        private final IndexSchema fSchema;
+
+        public SchemaPlan(IndexSchema schema, Analyzer queryAnalyzer) {
+            fSchema = schema;
+            fQueryAnalyzer = queryAnalyzer;
+        }
+    }
+
+    protected static class SearchResultCursor
+        extends
+        ShiftIterator<ISearchResult> implements ISearchResultCursor {
+
+        private int fPos;
+
+        private IndexReader fReader;
+
+        private final QueryResults fResults;
+
+        private final DocumentSearcher fSearcher;
+
+        /**
+         * @param searcher the searcher used to load documents
+         * @param reader the reader used to load documents; the reference
+         *        counter of this reader should be already incremented by the
+         *        caller; this reference is released when this cursor is closed
+         * @param results results of the executed query
+         */
+        protected SearchResultCursor(
+            DocumentSearcher searcher,
+            IndexReader reader,
+            QueryResults results) {
+            fSearcher = searcher;
+            fReader = reader;
+            fResults = results;
+        }
+
+        /**
+         * @see org.ubimix.commons.search.IDocumentSearcher.ISearchResultCursor#close()
+         */
+        public synchronized void close() throws SearchException {
+            try {
+                if (fReader != null) {
+                    fReader.decRef();
+                    SearchProfile profile = fResults.getProfile();
+                    if (profile != null) {
+                        fSearcher.onSearchProfile(profile);
+                    }
+                }
+            } catch (IOException e) {
+                throw handleError("Can not release the index reader", e);
+            } finally {
+                fReader = null;
+                reset();
+            }
+        }
+
+        /**
+         * Returns the next search result. Stored fields of the returned result
+         * are already loaded.
+         * 
+         * @see org.ubimix.commons.search.ShiftIterator#next()
+         */
+        @Override
+        public ISearchResult next() {
+            InternalSearchResults result = (InternalSearchResults) super
+                .next();
+            if (result != null) {
+                try {
+                    SearchProfile profile = fResults.getProfile();
+                    long start = profile != null ? System.nanoTime() : 0;
+                    IDocument doc = fSearcher.loadDocument(
+                        fReader,
+                        result.getDocId());
+                    result.setDocument(doc);
+                    if (profile != null) {
+                        profile.addLoadedDocument(
+                            System.nanoTime() - start,
+                            SearchProfile.getStoredBytes(doc));
+                    }
+                } catch (IOException e) {
+                    throw handleRuntimeError("Can not load the document", e);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        protected ISearchResult shiftItem() {
+            ScoreDoc[] hits = fResults.getHits();
+            if (fReader == null || fPos >= hits.length) {
+                return null;
+            }
+            ScoreDoc hit = hits[fPos++];
+            return fSearcher.newSearchResult(fResults, hit, null);
+        }
+    }
+
+    final static Logger log = Logger
+        .getLogger(DocumentSearcher.class.getName());
+
+    /**
+     * The logger used to report slow queries.
+     */
+    final static Logger slowQueryLog = Logger.getLogger(DocumentSearcher.class
+        .getName() + ".slowQueries");
+
+    /**
+     * Waits until all given tasks are finished. This method is used to release
+     * a reader only when no task uses it anymore.
+     * 
+     * @param tasks tasks to wait
+     */
+    private static void awaitTasks(Collection<FutureTask<QueryResults>> tasks) {
+        boolean interrupted = false;
+        for (FutureTask<QueryResults> task : tasks) {
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (Throwable t) {
+                    // Already reported by the batch search
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static SearchException handleError(String message, Throwable e) {
+        log.log(Level.WARNING, message, e);
+        if (e instanceof SearchException) {
+            return (SearchException) e;
+        }
+        return new SearchException(message, e);
+    }
+
+    private static RuntimeException handleRuntimeError(
+        String message,
+        Throwable e) {
+        log.log(Level.WARNING, message, e);
+        return new RuntimeException(message, e);
+    }
+
+    /**
+     * Returns the internal identifier of the first document with the
+     * specified field value.
+     * 
+     * @param reader the reader used to search the document
+     * @param field the name of the field
+     * @param value the value of the field
+     * @return the internal identifier of the document or <code>-1</code> if
+     *         there is no such a document
+     * @throws IOException
+     */
+    private static int findDocument(
+        IndexReader reader,
+        String field,
+        String value) throws IOException {
+        TermDocs docs = reader.termDocs(new Term(field, value));
+        try {
+            return docs.next() ? docs.doc() : -1;
+        } finally {
+            docs.close();
+        }
+    }
+
+    /**
+     * Returns a set of fields used to search. If the given collection is empty
+     * then the full content field is used.
+     */
+    private static Collection<String> getSearchFields(
+        Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            fields = new HashSet<String>();
+            fields.add(IFieldConst.FULL_CONTENT);
+        }
+        return fields;
+    }
+
+    private static void releaseReader(IndexReader reader) {
+        try {
+            reader.decRef();
+        } catch (IOException e) {
+            log.log(Level.FINE, "Can not release the reader", e);
+        }
+    }
+
+    private Analyzer fAnalyzer;
+
+    /**
+     * The maximal document frequency of rare query terms (see
+     * {@link #setCommonTermsCutoff(float)}).
+     */
+    private volatile float fCommonTermsCutoff;
+
+    private Directory fDir;
+
+    /**
+     * The cache of stored fields of found documents; it is <code>null</code>
+     * if documents are not cached.
+     */
+    private volatile StoredDocumentCache fDocumentCache;
+
+    /**
+     * The executor used to run batch queries in parallel.
+     */
+    private ExecutorService fExecutor;
+
+    /**
+     * This flag is <code>true</code> if the executor was created by this
+     * searcher and should be shut down when the searcher is closed.
+     */
+    private boolean fOwnExecutor;
+
+    private final List<IReaderListener> fListeners = new CopyOnWriteArrayList<IReaderListener>();
+
+    /**
+     * The schema loaded with the current reader and the analyzer used to parse
+     * queries. This analyzer analyzes fields of the schema with the
+     * corresponding analyzers. The plan is replaced together with the reader.
+     */
+    private volatile SchemaPlan fPlan;
+
+    private IndexReader fReader;
+
+    /**
+     * The time when the current reader was opened (in milliseconds).
+     */
+    private volatile long fReaderOpenTime;
+
+    /**
+     * This lock is used to serialize reader refreshes.
+     */
+    private final Object fRefreshLock = new Object();
+
+    /**
+     * The maximal number of terms in queries searching similar documents.
+     */
+    private volatile int fSimilarMaxTerms = SimilarQueryBuilder.DEFAULT_MAX_TERMS;
+
+    /**
+     * The minimal document frequency of terms of queries searching similar
+     * documents.
+     */
+    private volatile int fSimilarMinDocFreq = SimilarQueryBuilder.DEFAULT_MIN_DOC_FREQ;
+
+    /**
+     * Queries executed longer than this threshold (in nanoseconds) are
+     * reported to the slow query log. Profiling is disabled if this value is
+     * negative.
+     */
+    private volatile long fSlowQueryThreshold = -1;
+
+    /**
+     * Only each N-th term of the term index is loaded in memory (see
+     * {@link #setTermIndexDivisor(int)}).
+     */
+    private volatile int fTermIndexDivisor = 1;
+
+    public DocumentSearcher(Directory dir, Analyzer analyzer)
+        throws SearchException {
+        fAnalyzer = analyzer;
+        fPlan = new SchemaPlan(IndexSchema.EMPTY, analyzer);
+        fDir = dir;
+    }
+
+    /**
+     * Returns the current index reader with an incremented reference counter.
+     * The returned reader should be released using the
+     * {@link IndexReader#decRef()} method.
+     * 
+     * @return the current index reader
+     * @throws SearchException
+     */
+    protected synchronized IndexReader acquireReader() throws SearchException {
+        IndexReader reader = getReader(true);
+        reader.incRef();
+        return reader;
+    }
+
+    /**
+     * Adds a new listener notified each time when this searcher opens a new
+     * index reader. If the reader is already opened then the listener is
+     * immediately notified about it.
+     * 
+     * @param listener the listener to add
+     * @throws SearchException
+     */
+    public void addReaderListener(IReaderListener listener)
+        throws SearchException {
+        synchronized (this) {
+            fListeners.add(listener);
+            if (fReader != null) {
+                listener.onReaderOpen(fReader);
+            }
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#close()
+     */
+    public synchronized void close() throws SearchException {
+        try {
+            if (fOwnExecutor) {
+                fExecutor.shutdown();
+                fExecutor = null;
+                fOwnExecutor = false;
+            }
+            IndexReader reader = getReader(false);
+            if (reader != null) {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw handleError("Can not close the Lucene reader", e);
+        } finally {
+            fReader = null;
+        }
+    }
+
+    /**
+     * Parses and executes the given query and returns found documents.
+     * 
+     * @param searcher the index searcher
+     * @param q the query to execute
+     * @param fields fields used to search
+     * @param maxResultNumber the maximal number of results
+     * @return results of the query
+     * @throws SearchException
+     */
+    protected QueryResults executeQuery(
+        IndexSearcher searcher,
+        String q,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        try {
+            SearchProfile profile = fSlowQueryThreshold >= 0
+                ? new SearchProfile(q, fields)
+                : null;
+            long start = profile != null ? System.nanoTime() : 0;
+            SchemaPlan plan = fPlan;
+            IndexSchema schema = plan.fSchema;
+            Analyzer analyzer = plan.fQueryAnalyzer;
+            Query query = getQuery(schema, fields, analyzer, q);
+            // Queries on shadow fields and common terms queries can not be
+            // used for highlighting
+            Query highlightQuery = schema.hasShadowFields()
+                || fCommonTermsCutoff > 0
+                ? getQuery(null, fields, analyzer, q)
+                : query;
+            Formatter formatter = new SimpleHTMLFormatter();
+            Highlighter highlighter = new Highlighter(
+                formatter,
+                new QueryScorer(highlightQuery));
+            if (profile != null) {
+                profile.setParseTime(System.nanoTime() - start);
+            }
+            return executeQuery(
+                searcher,
+                query,
+                highlighter,
+                fields,
+                maxResultNumber,
+                -1,
+                profile);
+        } catch (Throwable t) {
+            throw handleError("Can not perform a search operation. Query: '"
+                + q
+                + "'.", t);
+        }
+    }
+
+    /**
+     * Executes the given query and returns found documents.
+     * 
+     * @param searcher the index searcher
+     * @param query the query to execute
+     * @param highlighter the highlighter of search results
+     * @param fields fields used to search
+     * @param maxResultNumber the maximal number of results
+     * @param excludedDoc the internal identifier of a document which should
+     *        not be returned or <code>-1</code>
+     * @param profile the profile of the query; it could be <code>null</code>
+     * @return results of the query
+     * @throws IOException
+     */
+    private QueryResults executeQuery(
+        IndexSearcher searcher,
+        Query query,
+        Highlighter highlighter,
+        Collection<String> fields,
+        int maxResultNumber,
+        int excludedDoc,
+        SearchProfile profile) throws IOException {
+        long start = profile != null ? System.nanoTime() : 0;
+        TopDocs hits = searcher.search(query, excludedDoc >= 0
+            ? maxResultNumber + 1
+            : maxResultNumber);
+        ScoreDoc[] scoreDocs = hits != null ? hits.scoreDocs : new ScoreDoc[0];
+        int hitCount = hits != null ? hits.totalHits : 0;
+        if (excludedDoc >= 0) {
+            List<ScoreDoc> list = new ArrayList<ScoreDoc>(scoreDocs.length);
+            for (ScoreDoc hit : scoreDocs) {
+                if (hit.doc == excludedDoc) {
+                    hitCount--;
+                } else if (list.size() < maxResultNumber) {
+                    list.add(hit);
+                }
+            }
+            scoreDocs = list.toArray(new ScoreDoc[list.size()]);
+        }
+        QueryResults results = new QueryResults(fields, highlighter, scoreDocs);
+        if (profile != null) {
+            profile.setSearchTime(System.nanoTime() - start);
+            profile.setHitCount(hitCount);
+            results.setProfile(profile);
+        }
+        return results;
+    }
+
+    /**
+     * Notifies all listeners about a newly opened reader. If a listener fails
+     * then the reader is closed.
+     */
+    private void fireReaderOpen(IndexReader reader) throws SearchException {
+        try {
+            for (IReaderListener listener : fListeners) {
+                listener.onReaderOpen(reader);
+            }
+        } catch (SearchException e) {
+            try {
+                reader.close();
+            } catch (IOException t) {
+                log.log(Level.FINE, "Can not close the reader", t);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the executor used to run batch queries. If there is no executor
+     * defined then this method creates a new fixed-size pool with one thread
+     * per available processor.
+     * 
+     * @return the executor used to run batch queries
+     */
+    protected synchronized ExecutorService getExecutor() {
+        if (fExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            fExecutor = Executors.newFixedThreadPool(
+                threads,
+                new ThreadFactory() {
+                    private final AtomicInteger fCounter = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "DocumentSearcher-"
+                            + fCounter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            fOwnExecutor = true;
+        }
+        return fExecutor;
+    }
+
+    /**
+     * @return the cache of stored fields of found documents or
+     *         <code>null</code> if documents are not cached
+     */
+    public StoredDocumentCache getDocumentCache() {
+        return fDocumentCache;
+    }
+
+    /**
+     * @return the number of documents visible to searches
+     * @throws SearchException
+     */
+    public int getDocumentCount() throws SearchException {
+        IndexReader reader = acquireReader();
+        try {
+            return reader.numDocs();
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    private Query getQuery(
+        IndexSchema schema,
+        Collection<String> fields,
+        Analyzer analyzer,
+        String q) throws SearchException {
+        try {
+            BooleanQuery booleanQuery = new BooleanQuery();
+            for (String field : fields) {
+                DocumentQueryParser parser = new DocumentQueryParser(
+                    field,
+                    analyzer,
+                    schema);
+                if (schema != null) {
+                    // Highlighting queries keep all terms
+                    parser.setCommonTermsCutoff(fCommonTermsCutoff);
+                }
+                Query query = parser.parse(q);
+                booleanQuery.add(query, Occur.SHOULD);
+            }
+            return booleanQuery;
+        } catch (Throwable t) {
+            throw handleError("Parse error", t);
+        }
+    }
+
+    private synchronized IndexReader getReader(boolean open)
+        throws SearchException {
+        try {
+            if (fReader == null && open) {
+                IndexReader reader = openReader();
+                SchemaPlan plan = newPlan(reader);
+                fireReaderOpen(reader);
+                fPlan = plan;
+                fReader = reader;
+                fReaderOpenTime = System.currentTimeMillis();
+            }
+            return fReader;
+        } catch (IOException e) {
+            throw handleError("Can not create a DocumentSearcher instance.", e);
+        }
+    }
+
+    /**
+     * Returns the time passed since the current reader was opened. This time
+     * shows how fresh search results are.
+     * 
+     * @return the age of the current reader in milliseconds or
+     *         <code>-1</code> if there is no opened reader
+     */
+    public synchronized long getReaderAge() {
+        if (fReader == null) {
+            return -1;
+        }
+        return System.currentTimeMillis() - fReaderOpenTime;
+    }
+
+    /**
+     * @return the schema of the index loaded with the current reader
+     */
+    public IndexSchema getSchema() {
+        return fPlan.fSchema;
+    }
+
+    /**
+     * @return the number of segments of the current reader
+     * @throws SearchException
+     */
+    public int getSegmentCount() throws SearchException {
+        IndexReader reader = acquireReader();
+        try {
+            List<IndexReader> segments = new ArrayList<IndexReader>();
+            ReaderUtil.gatherSubReaders(segments, reader);
+            return segments.size();
+        } finally {
+            releaseReader(reader);
+        }
+    }
+
+    /**
+     * Loads stored fields of the specified document. If there is a document
+     * cache (see {@link #setDocumentCache(StoredDocumentCache)}) then
+     * documents are loaded from the index only once.
+     * 
+     * @param reader the reader used to load the document
+     * @param docId the internal identifier of the document
+     * @return the loaded document
+     * @throws IOException
+     */
+    protected IDocument loadDocument(IndexReader reader, int docId)
+        throws IOException {
+        StoredDocumentCache cache = fDocumentCache;
+        if (cache == null) {
+            return newDocument(reader, docId);
+        }
+        IDocument doc = cache.get(reader, docId);
+        if (doc == null) {
+            doc = newDocument(reader, docId);
+            cache.put(reader, docId, doc);
+        }
+        return doc;
+    }
+
+    /**
+     * Reads stored fields of the specified document from the index.
+     * 
+     * @param reader the reader used to load the document
+     * @param docId the internal identifier of the document
+     * @return a new document
+     * @throws IOException
+     */
+    protected IDocument newDocument(IndexReader reader, int docId)
+        throws IOException {
+        Document doc = reader.document(docId);
+        return StoredDocument.newDocument(doc);
+    }
+
+    /**
+     * Creates and returns a new search result object.
+     * 
+     * @param results results of the query
+     * @param hit the found document
+     * @param document stored fields of the found document; it could be
+     *        <code>null</code> if the document is not loaded yet
+     * @return a new search result
+     */
+    protected InternalSearchResults newSearchResult(
+        QueryResults results,
+        ScoreDoc hit,
+        IDocument document) {
+        InternalSearchResults result = new InternalSearchResults(
+            hit.doc,
+            document,
+            fPlan.fQueryAnalyzer,
+            results.getHighlighter(),
+            results.getSearchFields(),
+            hit.score);
+        result.setProfile(results.getProfile());
+        return result;
+    }
+
+    /**
+     * This method is called when all results of a profiled query are
+     * consumed (see {@link #setSlowQueryThreshold(long)}). It reports slow
+     * queries to the slow query log. Subclasses could override this method to
+     * collect search statistics.
+     * 
+     * @param profile the execution profile of the query
+     */
+    protected void onSearchProfile(SearchProfile profile) {
+        long threshold = fSlowQueryThreshold;
+        if (threshold >= 0 && profile.getTotalTime() >= threshold) {
+            slowQueryLog.info(profile.toString());
+        }
+    }
+
+    /**
+     * Re-opens the index reader if the index was changed since the reader was
+     * opened. All registered listeners are notified about the new reader
+     * before it is used by new searches. Searches started in the meantime and
+     * searches already in progress continue to use the previous reader.
+     * 
+     * @return <code>true</code> if a new reader was opened
+     * @throws SearchException
+     */
+    public boolean refresh() throws SearchException {
+        synchronized (fRefreshLock) {
+            IndexReader current;
+            synchronized (this) {
+                if (fReader == null) {
+                    getReader(true);
+                    return true;
+                }
+                current = fReader;
+                current.incRef();
+            }
+            try {
+                IndexReader reader = reopenReader(current);
+                if (reader == current) {
+                    return false;
+                }
+                SchemaPlan plan = newPlan(reader);
+                // Listeners (warmers) are called outside of the main lock, so
+                // searches continue to use the current reader meanwhile.
+                fireReaderOpen(reader);
+                IndexReader prev;
+                synchronized (this) {
+                    prev = fReader;
+                    if (prev != null) {
+                        fPlan = plan;
+                        fReader = reader;
+                        fReaderOpenTime = System.currentTimeMillis();
+                    }
+                }
+                if (prev == null) {
+                    // This searcher was closed in the meantime
+                    reader.close();
+                    return false;
+                }
+                prev.close();
+                return true;
+            } catch (Throwable t) {
+                throw handleError("Can not refresh the index reader.", t);
+            } finally {
+                releaseReader(current);
+            }
+        }
+    }
+
+    /**
+     * Enables the common terms mode for disjunctions of terms (see
+     * {@link CommonTermsQuery}). Query terms found in more documents than the
+     * cutoff are used only to score documents matching other (rare) terms of
+     * the query. This mode is disabled if the cutoff is 0 (by default).
+     * 
+     * @param cutoff the maximal document frequency of rare terms; values
+     *        lower than 1 are fractions of the number of documents in the
+     *        index (for example 0.01), other values are numbers of documents
+     */
+    public void setCommonTermsCutoff(float cutoff) {
+        fCommonTermsCutoff = Math.max(0, cutoff);
+    }
+
+    /**
+     * Sets the cache of stored fields of found documents. The cache is
+     * notified about all new readers of this searcher and it drops documents
+     * of segments which are not used anymore. Documents are not cached if the
+     * cache is <code>null</code> (by default).
+     * 
+     * @param cache the cache to set
+     * @throws SearchException
+     */
+    public void setDocumentCache(StoredDocumentCache cache)
+        throws SearchException {
+        StoredDocumentCache prev;
+        synchronized (this) {
+            prev = fDocumentCache;
+            fDocumentCache = cache;
+        }
+        if (prev != null) {
+            removeReaderListener(prev);
+        }
+        if (cache != null) {
+            addReaderListener(cache);
+        }
+    }
+
+    /**
+     * Sets limits of queries searching similar documents (see
+     * {@link SimilarQueryBuilder}). The cost of these queries depends only on
+     * the number of used terms, not on the size of the source document.
+     * 
+     * @param maxTerms the maximal number of the most distinctive terms of the
+     *        source document used to search (25 by default)
+     * @param minDocFreq the minimal number of documents containing a term;
+     *        rare terms are ignored (2 by default)
+     */
+    public void setSimilarityLimits(int maxTerms, int minDocFreq) {
+        fSimilarMaxTerms = maxTerms;
+        fSimilarMinDocFreq = minDocFreq;
+    }
+
+    /**
+     * Enables query profiling and sets the threshold for the slow query log.
+     * Times of individual search phases (parsing, scoring, loading of stored
+     * fields and highlighting) are measured for each query; queries with the
+     * total time greater than the threshold are reported to the
+     * <code>org.ubimix.commons.search.lucene.DocumentSearcher.slowQueries</code>
+     * logger as structured records (see {@link SearchProfile#toString()}).
+     * Profiling is disabled if the threshold is negative (by default).
+     * 
+     * @param threshold the slow query threshold in milliseconds
+     */
+    public void setSlowQueryThreshold(long threshold) {
+        fSlowQueryThreshold = threshold >= 0 ? threshold * 1000000 : -1;
+    }
+
+    /**
+     * Loads the schema of the index (see {@link IndexSchema}) from the commit
+     * point of the given reader. This method is called each time when a new
+     * reader is opened.
+     * 
+     * @param reader the new reader
+     * @return the schema of the index
+     * @throws IOException
+     */
+    protected IndexSchema loadSchema(IndexReader reader) throws IOException {
+        return IndexSchema.fromUserData(reader.getCommitUserData());
+    }
+
+    /**
+     * Opens a new index reader. This method could be overloaded in subclasses
+     * to search in other sources (like near-real-time readers of index
+     * writers).
+     * 
+     * @return a new index reader
+     * @throws IOException
+     */
+    protected IndexReader openReader() throws IOException {
+        return IndexReader.open(fDir, null, true, fTermIndexDivisor);
+    }
+
+    /**
+     * Returns a refreshed version of the given reader (see
+     * {@link IndexReader#reopen()}).
+     * 
+     * @param current the current reader
+     * @return a new reader or the current one if the index was not changed
+     * @throws IOException
+     */
+    protected IndexReader reopenReader(IndexReader current) throws IOException {
+        return current.reopen();
+    }
+
+    /**
+     * Sets the term index divisor used by readers opened by this searcher.
+     * Only each N-th term of the term index is loaded in memory. Bigger
+     * values reduce the memory footprint and the time needed to open huge
+     * indexes but make term look-ups slower. This value is applied to readers
+     * opened after this call.
+     * 
+     * @param divisor the term index divisor (1 by default)
+     */
+    public void setTermIndexDivisor(int divisor) {
+        fTermIndexDivisor = Math.max(1, divisor);
+    }
+
+    /**
+     * Sets the executor used to run batch queries in parallel. This executor
+     * is not shut down when this searcher is closed.
+     * 
+     * @param executor the executor to set
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+        if (fOwnExecutor) {
+            fExecutor.shutdown();
+        }
+        fExecutor = executor;
+        fOwnExecutor = false;
+    }
+
+    /**
+     * Removes the specified reader listener.
+     * 
+     * @param listener the listener to remove
+     */
+    public void removeReaderListener(IReaderListener listener) {
+        fListeners.remove(listener);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      java.util.Collection,
+     *      org.ubimix.commons.search.DocumentSearcher.ISearchResultCollector)
+     */
+    public void search(
+        String q,
+        Collection<String> fields,
+        final ISearchResultCollector collector) throws SearchException {
+        int maxCount = collector.getMaxResultNumber();
+        ISearchResultCursor cursor = search(q, fields, maxCount);
+        try {
+            while (cursor.hasNext()) {
+                ISearchResult result = cursor.next();
+                collector.onSearchResult(result);
+            }
+        } catch (Throwable t) {
+            throw handleError("Can not perform a search operation. Query: '"
+                + q
+                + "'.", t);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      java.util.Collection, int)
+     */
+    public ISearchResultCursor search(
+        String q,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        IndexReader reader = acquireReader();
+        try {
+            fields = getSearchFields(fields);
+            IndexSearcher searcher = new IndexSearcher(reader);
+            QueryResults results = executeQuery(
+                searcher,
+                q,
+                fields,
+                maxResultNumber);
+            SearchResultCursor cursor = new SearchResultCursor(
+                this,
+                reader,
+                results);
+            reader = null;
+            return cursor;
+        } finally {
+            if (reader != null) {
+                releaseReader(reader);
+            }
+        }
+    }
+
+    /**
+     * Executes all requests using the same index reader. Identical queries
+     * (with the same query string, search fields and the maximal number of
+     * results) are executed only once. Unique queries are executed in
+     * parallel (see {@link #getExecutor()}). Stored fields of documents
+     * found by multiple queries are loaded only once. Collectors are notified
+     * in the calling thread in the order of requests.
+     * 
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.util.List)
+     */
+    public void search(List<SearchRequest> requests) throws SearchException {
+        IndexReader reader = acquireReader();
+        // Tasks submitted to the executor; they are cancelled and awaited
+        // before the reader is released
+        List<FutureTask<QueryResults>> submitted = new ArrayList<FutureTask<QueryResults>>();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        try {
+            final IndexSearcher searcher = new IndexSearcher(reader);
+            Map<String, FutureTask<QueryResults>> queries = new LinkedHashMap<String, FutureTask<QueryResults>>();
+            List<FutureTask<QueryResults>> tasks = new ArrayList<FutureTask<QueryResults>>();
+            for (SearchRequest request : requests) {
+                final String q = request.getQuery();
+                final Collection<String> fields = getSearchFields(request
+                    .getFields());
+                final int maxCount = request
+                    .getCollector()
+                    .getMaxResultNumber();
+                String key = q
+                    + "\u0000"
+                    + new TreeSet<String>(fields)
+                    + "\u0000"
+                    + maxCount;
+                FutureTask<QueryResults> task = queries.get(key);
+                if (task == null) {
+                    task = new FutureTask<QueryResults>(
+                        new Callable<QueryResults>() {
+                            public QueryResults call() throws Exception {
+                                if (cancelled.get()) {
+                                    throw new CancellationException();
+                                }
+                                return executeQuery(
+                                    searcher,
+                                    q,
+                                    fields,
+                                    maxCount);
+                            }
+                        });
+                    queries.put(key, task);
+                }
+                tasks.add(task);
+            }
+            if (queries.size() > 1) {
+                ExecutorService executor = getExecutor();
+                for (FutureTask<QueryResults> task : queries.values()) {
+                    executor.execute(task);
+                    submitted.add(task);
+                }
+            } else {
+                for (FutureTask<QueryResults> task : queries.values()) {
+                    task.run();
+                }
+            }
+
+            Map<Integer, IDocument> documents = new HashMap<Integer, IDocument>();
+            for (int i = 0; i < tasks.size(); i++) {
+                ISearchResultCollector collector = requests
+                    .get(i)
+                    .getCollector();
+                QueryResults results;
+                try {
+                    results = tasks.get(i).get();
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
+                SearchProfile profile = results.getProfile();
+                for (ScoreDoc hit : results.getHits()) {
+                    IDocument doc = documents.get(hit.doc);
+                    if (doc == null) {
+                        long start = profile != null ? System.nanoTime() : 0;
+                        doc = loadDocument(reader, hit.doc);
+                        documents.put(hit.doc, doc);
+                        if (profile != null) {
+                            profile.addLoadedDocument(
+                                System.nanoTime() - start,
+                                SearchProfile.getStoredBytes(doc));
+                        }
+                    }
+                    collector.onSearchResult(newSearchResult(
+                        results,
+                        hit,
+                        doc));
+                }
+            }
+            for (FutureTask<QueryResults> task : queries.values()) {
+                SearchProfile profile = task.get().getProfile();
+                if (profile != null) {
+                    onSearchProfile(profile);
+                }
+            }
+        } catch (Throwable t) {
+            throw handleError("Can not perform a batch search operation.", t);
+        } finally {
+            // Queries which are not started yet are skipped
+            cancelled.set(true);
+            awaitTasks(submitted);
+            releaseReader(reader);
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      java.util.Collection,
+     *      org.ubimix.commons.search.DocumentSearcher.ISearchResultCollector)
+     */
+    public void search(String q, final ISearchResultCollector collector)
+        throws SearchException {
+        search(q, null, collector);
+    }
+
+    /**
+     * Searches documents similar to the given one (see
+     * {@link SimilarQueryBuilder}). If the document has values of identifier
+     * fields of the index schema and it is found in the index then it is not
+     * returned.
+     * 
+     * @see org.ubimix.commons.search.IDocumentSearcher#searchSimilar(org.ubimix.commons.search.IDocument,
+     *      java.util.Collection, int)
+     */
+    public ISearchResultCursor searchSimilar(
+        IDocument doc,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        IndexReader reader = acquireReader();
+        try {
+            int docId = -1;
+            for (String field : fPlan.fSchema.getIdentifierFields()) {
+                String value = doc.getValue(field);
+                if (value != null) {
+                    docId = findDocument(reader, field, value);
+                    if (docId >= 0) {
+                        break;
+                    }
+                }
+            }
+            ISearchResultCursor cursor = searchSimilar(
+                reader,
+                docId,
+                doc,
+                fields,
+                maxResultNumber);
+            reader = null;
+            return cursor;
+        } catch (IOException e) {
+            throw handleError("Can not search similar documents", e);
+        } finally {
+            if (reader != null) {
+                releaseReader(reader);
+            }
+        }
+    }
+
+    /**
+     * Executes a query built from the most distinctive terms of the source
+     * document and returns a cursor over results.
+     * 
+     * @param reader the reader used to search; this reference is transferred
+     *        to the returned cursor
+     * @param docId the internal identifier of the source document or
+     *        <code>-1</code> if it is not in the index
+     * @param doc the source document; if it is <code>null</code> then stored
+     *        fields and term vectors of the indexed document are used
+     * @param fields fields used to extract terms and to search
+     * @param maxResultNumber the maximal number of returned results
+     * @return a cursor over search results
+     * @throws SearchException
+     */
+    private ISearchResultCursor searchSimilar(
+        IndexReader reader,
+        int docId,
+        IDocument doc,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        try {
+            fields = getSearchFields(fields);
+            long start = System.nanoTime();
+            SimilarQueryBuilder builder = new SimilarQueryBuilder(
+                fPlan.fQueryAnalyzer,
+                fSimilarMaxTerms,
+                fSimilarMinDocFreq);
+            BooleanQuery query;
+            if (doc != null) {
+                query = builder.newQuery(reader, doc, fields);
+            } else if (docId >= 0) {
+                IDocument stored = loadDocument(reader, docId);
+                query = builder.newQuery(reader, docId, stored, fields);
+            } else {
+                query = new BooleanQuery();
+            }
+            Highlighter highlighter = new Highlighter(
+                new SimpleHTMLFormatter(),
+                new QueryScorer(query));
+            SearchProfile profile = null;
+            if (fSlowQueryThreshold >= 0) {
+                profile = new SearchProfile(query.toString(), fields);
+                profile.setParseTime(System.nanoTime() - start);
+            }
+            QueryResults results = executeQuery(
+                new IndexSearcher(reader),
+                query,
+                highlighter,
+                fields,
+                maxResultNumber,
+                docId,
+                profile);
+            return new SearchResultCursor(this, reader, results);
+        } catch (Throwable t) {
+            throw handleError("Can not search similar documents", t);
+        }
+    }
+
+    /**
+     * Searches documents similar to the indexed document with the specified
+     * identifier (see {@link SimilarQueryBuilder}). The source document itself
+     * is not returned.
+     * 
+     * @see org.ubimix.commons.search.IDocumentSearcher#searchSimilar(java.lang.String,
+     *      java.lang.String, java.util.Collection, int)
+     */
+    public ISearchResultCursor searchSimilar(
+        String field,
+        String identifier,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        IndexReader reader = acquireReader();
+        try {
+            int docId = findDocument(reader, field, identifier);
+            ISearchResultCursor cursor = searchSimilar(
+                reader,
+                docId,
+                null,
+                fields,
+                maxResultNumber);
+            reader = null;
+            return cursor;
+        } catch (IOException e) {
+            throw handleError("Can not search similar documents", e);
+        } finally {
+            if (reader != null) {
+                releaseReader(reader);
+            }
+        }
+    }
+
+    /**
+     * Loads the schema of the given new reader and re-builds the query
+     * analyzer if the schema was changed. The reader is closed if its schema
+     * can not be loaded.
+     * 
+     * @param reader the new reader
+     * @return the plan to use with the new reader
+     * @throws IOException
+     */
+    private SchemaPlan newPlan(IndexReader reader) throws IOException {
+        boolean loaded = false;
+        try {
+            IndexSchema schema = loadSchema(reader);
+            SchemaPlan plan = fPlan;
+            if (!schema.equals(plan.fSchema)) {
+                plan = new SchemaPlan(schema, schema
+                    .newQueryAnalyzer(fAnalyzer));
+            }
+            loaded = true;
+            return plan;
+        } finally {
+            if (!loaded) {
+                reader.close();
+            }
+        }
+    }
+}
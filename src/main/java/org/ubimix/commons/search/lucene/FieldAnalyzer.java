@@ -0,0 +1,226 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.KeywordTokenizer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.PorterStemFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.util.Version;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription.AnalyzerType;
+
+/**
+ * This analyzer applies the text analysis defined by field descriptions of an
+ * index schema (see {@link FieldDescription#getAnalyzerType()}). Fields
+ * without descriptions (including the full content field) are analyzed by
+ * the default analyzer.
+ * <p>
+ * There are two modes of analysis. The indexing mode is used to index
+ * documents. The query mode is used to parse queries and to highlight
+ * results: values of non-analyzed fields are not tokenized and prefixes of
+ * autocompletion fields are not generated.
+ * </p>
+ * <p>
+ * Token streams returned by {@link #reusableTokenStream(String, Reader)} are
+ * kept per thread and re-used for all following values of fields with the same
+ * type of analysis.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public final class FieldAnalyzer extends Analyzer {
+
+    /**
+     * Types of analysis of individual fields.
+     */
+    private enum Kind {
+
+        /**
+         * The default analyzer.
+         */
+        DEFAULT,
+
+        /**
+         * The whole value is one token.
+         */
+        EXACT,
+
+        /**
+         * The whole value is one lower-cased token.
+         */
+        KEYWORD,
+
+        /**
+         * The default analysis with prefixes of tokens.
+         */
+        NGRAM,
+
+        /**
+         * The default analysis with stemming.
+         */
+        STEMMING
+    }
+
+    /**
+     * The source and the last filter of a reusable stream.
+     */
+    private static class Streams {
+
+        private final TokenStream fResult;
+
+        private final TokenStream fSource;
+
+        public Streams(TokenStream source, TokenStream result) {
+            fSource = source;
+            fResult = result;
+        }
+    }
+
+    private final Analyzer fAnalyzer;
+
+    private final Map<String, Kind> fKinds = new HashMap<String, Kind>();
+
+    /**
+     * @param schema the schema defining analysis of fields
+     * @param analyzer the default analyzer
+     * @param query if this flag is <code>true</code> then this analyzer is
+     *        used to analyze queries; otherwise it is used to index documents
+     */
+    public FieldAnalyzer(IndexSchema schema, Analyzer analyzer, boolean query) {
+        fAnalyzer = analyzer;
+        for (Map.Entry<String, FieldDescription> entry : schema
+            .getFields()
+            .entrySet()) {
+            Kind kind = getKind(entry.getValue(), query);
+            if (kind != Kind.DEFAULT) {
+                fKinds.put(entry.getKey(), kind);
+            }
+        }
+    }
+
+    /**
+     * @return the default analyzer
+     */
+    public Analyzer getAnalyzer() {
+        return fAnalyzer;
+    }
+
+    private Kind getKind(FieldDescription description, boolean query) {
+        if (!description.isAnalyzed()) {
+            return Kind.EXACT;
+        }
+        switch (description.getAnalyzerType()) {
+            case KEYWORD:
+                return Kind.KEYWORD;
+            case NGRAM:
+                return query ? Kind.DEFAULT : Kind.NGRAM;
+            case STEMMING:
+                return Kind.STEMMING;
+            default:
+                return Kind.DEFAULT;
+        }
+    }
+
+    private Kind getKind(String fieldName) {
+        Kind kind = fKinds.get(fieldName);
+        return kind != null ? kind : Kind.DEFAULT;
+    }
+
+    /**
+     * @see org.apache.lucene.analysis.Analyzer#getOffsetGap(org.apache.lucene.document.Fieldable)
+     */
+    @Override
+    public int getOffsetGap(Fieldable field) {
+        return fAnalyzer.getOffsetGap(field);
+    }
+
+    /**
+     * @see org.apache.lucene.analysis.Analyzer#getPositionIncrementGap(java.lang.String)
+     */
+    @Override
+    public int getPositionIncrementGap(String fieldName) {
+        return fAnalyzer.getPositionIncrementGap(fieldName);
+    }
+
+    /**
+     * @return <code>true</code> if all fields are analyzed by the default
+     *         analyzer
+     */
+    public boolean isDefault() {
+        return fKinds.isEmpty();
+    }
+
+    private TokenStream newFilter(Kind kind, TokenStream source) {
+        switch (kind) {
+            case KEYWORD:
+                return new LowerCaseFilter(Version.LUCENE_33, source);
+            case NGRAM:
+                return new PrefixTokenFilter(source);
+            case STEMMING:
+                return new PorterStemFilter(source);
+            default:
+                return source;
+        }
+    }
+
+    /**
+     * @see org.apache.lucene.analysis.Analyzer#reusableTokenStream(java.lang.String,
+     *      java.io.Reader)
+     */
+    @Override
+    public TokenStream reusableTokenStream(String fieldName, Reader reader)
+        throws IOException {
+        Kind kind = getKind(fieldName);
+        if (kind == Kind.DEFAULT) {
+            return fAnalyzer.reusableTokenStream(fieldName, reader);
+        }
+        @SuppressWarnings("unchecked")
+        Map<Kind, Streams> map = (Map<Kind, Streams>) getPreviousTokenStream();
+        if (map == null) {
+            map = new EnumMap<Kind, Streams>(Kind.class);
+            setPreviousTokenStream(map);
+        }
+        Streams streams = map.get(kind);
+        TokenStream source;
+        if (kind == Kind.EXACT || kind == Kind.KEYWORD) {
+            if (streams != null) {
+                ((Tokenizer) streams.fSource).reset(reader);
+                return streams.fResult;
+            }
+            source = new KeywordTokenizer(reader);
+        } else {
+            source = fAnalyzer.reusableTokenStream(fieldName, reader);
+            if (streams != null && streams.fSource == source) {
+                return streams.fResult;
+            }
+        }
+        streams = new Streams(source, newFilter(kind, source));
+        map.put(kind, streams);
+        return streams.fResult;
+    }
+
+    /**
+     * @see org.apache.lucene.analysis.Analyzer#tokenStream(java.lang.String,
+     *      java.io.Reader)
+     */
+    @Override
+    public TokenStream tokenStream(String fieldName, Reader reader) {
+        Kind kind = getKind(fieldName);
+        TokenStream source;
+        if (kind == Kind.EXACT || kind == Kind.KEYWORD) {
+            source = new KeywordTokenizer(reader);
+        } else {
+            source = fAnalyzer.tokenStream(fieldName, reader);
+        }
+        return newFilter(kind, source);
+    }
+
+}
@@ -0,0 +1,25 @@
+package org.ubimix.commons.search.lucene;
+
+import org.apache.lucene.index.IndexReader;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * Listeners of this type are notified when a {@link DocumentSearcher} opens or
+ * re-opens its index reader. Listeners are called <em>before</em> the new
+ * reader is used by searches, so they could be used to warm up the reader or
+ * to update auxiliary structures (suggesters, caches etc).
+ * 
+ * @author kotelnikov
+ */
+public interface IReaderListener {
+
+    /**
+     * This method is called when a new index reader is opened and before it is
+     * published to searches.
+     * 
+     * @param reader the newly opened reader
+     * @throws SearchException
+     */
+    void onReaderOpen(IndexReader reader) throws SearchException;
+
+}
@@ -0,0 +1,208 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * Replica-side part of the segment-level index replication. The indexer
+ * publishes commit points of the master index (see
+ * {@link DocumentIndexer#publish()}); this class copies files of the
+ * published commit point which are not present in the local directory yet and
+ * then refreshes the local searcher. Publications are recorded in the master
+ * directory (see {@link DocumentIndexer#PUBLISHED_FILE_PREFIX}), so replicas
+ * need only an access to this directory. Published commit points are pinned
+ * by the indexer (even after restarts), so their files are not removed by
+ * merges while they are copied. Commit points which are not published are
+ * never replicated. Segment files
+ * are never modified after they are written, so only new segments are
+ * transferred. The local searcher switches to the new reader atomically (see
+ * {@link DocumentSearcher#refresh()}), so searches are never executed over a
+ * partially copied index.
+ * <p>
+ * This class implements the {@link Runnable} interface, so it could be
+ * scheduled for periodic execution:
+ * </p>
+ *
+ * <pre>
+ * IndexReplicator replicator = new IndexReplicator(master, local, searcher);
+ * ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+ * executor.scheduleWithFixedDelay(replicator, 0, 1, TimeUnit.SECONDS);
+ * </pre>
+ *
+ * @author kotelnikov
+ */
+public class IndexReplicator implements Runnable {
+
+    private final static Logger log = Logger.getLogger(IndexReplicator.class
+        .getName());
+
+    private static SearchException handleError(String message, Throwable e) {
+        log.log(Level.WARNING, message, e);
+        if (e instanceof SearchException) {
+            return (SearchException) e;
+        }
+        return new SearchException(message, e);
+    }
+
+    private final CommitCopier fCopier;
+
+    /**
+     * The generation of the last replicated commit.
+     */
+    private long fGeneration = -1;
+
+    private final DocumentSearcher fSearcher;
+
+    private final Directory fSource;
+
+    /**
+     * @param source the directory of the master index
+     * @param target the local directory of the replica
+     * @param searcher the searcher working with the local directory; it is
+     *        refreshed each time when a new commit is replicated; this
+     *        parameter could be <code>null</code>
+     */
+    public IndexReplicator(
+        Directory source,
+        Directory target,
+        DocumentSearcher searcher) {
+        fSource = source;
+        fCopier = new CommitCopier(target);
+        fSearcher = searcher;
+    }
+
+    private IndexCommit getCommit(long generation) throws IOException {
+        for (IndexCommit commit : IndexReader.listCommits(fSource)) {
+            if (commit.getGeneration() == generation) {
+                return commit;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the total number of bytes copied by this replicator
+     */
+    public long getCopiedBytes() {
+        return fCopier.getCopiedBytes();
+    }
+
+    /**
+     * @return the total number of files copied by this replicator
+     */
+    public int getCopiedFiles() {
+        return fCopier.getCopiedFiles();
+    }
+
+    /**
+     * @return the generation of the last replicated commit or <code>-1</code>
+     *         if there is no replicated commits yet
+     */
+    public synchronized long getGeneration() {
+        return fGeneration;
+    }
+
+    /**
+     * Copies the last commit published in the master directory to the local
+     * directory if it is not replicated yet and refreshes the local searcher.
+     *
+     * @return <code>true</code> if a new commit was replicated
+     * @throws SearchException
+     */
+    public synchronized boolean replicate() throws SearchException {
+        IndexCommit commit;
+        try {
+            long generation = DocumentIndexer.getPublishedGeneration(fSource);
+            if (generation < 0 || generation == fGeneration) {
+                return false;
+            }
+            commit = DocumentIndexer.getPublishedCommit(fSource);
+        } catch (Throwable t) {
+            throw handleError("Can not find the published commit", t);
+        }
+        if (commit == null) {
+            // A newer commit is published meanwhile; the next call copies it
+            return false;
+        }
+        return replicate(commit);
+    }
+
+    private boolean replicate(IndexCommit commit) throws SearchException {
+        try {
+            Directory target = fCopier.getTarget();
+            if (fGeneration < 0 && IndexReader.indexExists(target)) {
+                fGeneration = SegmentInfos.getCurrentSegmentGeneration(target);
+            }
+            if (commit.getGeneration() == fGeneration) {
+                return false;
+            }
+            long bytes = fCopier.copy(commit);
+            fGeneration = commit.getGeneration();
+            if (log.isLoggable(Level.FINE)) {
+                log.fine("Commit "
+                    + commit.getSegmentsFileName()
+                    + " replicated ("
+                    + bytes
+                    + " bytes copied).");
+            }
+            if (fSearcher != null) {
+                fSearcher.refresh();
+            }
+            return true;
+        } catch (Throwable t) {
+            throw handleError("Can not replicate the index", t);
+        }
+    }
+
+    /**
+     * Copies the published commit with the specified generation to the local
+     * directory if it is not replicated yet and refreshes the local searcher.
+     * Files of the commit could be removed by the indexer when a newer commit
+     * is published; in this case this method fails and the replication should
+     * be restarted with the new generation.
+     *
+     * @param generation the generation returned by the
+     *        {@link DocumentIndexer#publish()} method
+     * @return <code>true</code> if a new commit was replicated
+     * @throws SearchException
+     */
+    public synchronized boolean replicate(long generation)
+        throws SearchException {
+        if (generation == fGeneration) {
+            return false;
+        }
+        IndexCommit commit;
+        try {
+            commit = getCommit(generation);
+        } catch (Throwable t) {
+            throw handleError("Can not list commits of the index", t);
+        }
+        if (commit == null) {
+            String message = "The commit "
+                + generation
+                + " is not available. It is not published "
+                + "or a newer commit was published.";
+            throw handleError(message, new SearchException(message));
+        }
+        return replicate(commit);
+    }
+
+    /**
+     * @see java.lang.Runnable#run()
+     */
+    public void run() {
+        try {
+            replicate();
+        } catch (SearchException e) {
+            // Already logged; the next run will retry
+        }
+    }
+
+}
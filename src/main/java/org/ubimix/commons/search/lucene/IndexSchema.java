@@ -0,0 +1,359 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+import org.ubimix.commons.search.IFieldConst;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription.AnalyzerType;
+
+/**
+ * An immutable set of field descriptions stored with the index in the user
+ * data of its commits. The {@link DocumentIndexer} uses the schema to index
+ * documents when field descriptions are not given explicitly, and the
+ * {@link DocumentSearcher} uses it to choose analyzers of query fields (values
+ * of non-analyzed fields are searched as is). Both use it to analyze fields
+ * with the analysis defined by their descriptions (see {@link FieldAnalyzer}).
+ * <p>
+ * Field descriptions are compiled once when the schema is created: the list
+ * of identifier fields and the query analyzer are not re-built for each
+ * indexed document or executed query.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class IndexSchema {
+
+    /**
+     * The empty schema; all fields have the default description.
+     */
+    public final static IndexSchema EMPTY = new IndexSchema(null);
+
+    /**
+     * The prefix of commit user data keys containing field descriptions.
+     */
+    public final static String USER_DATA_PREFIX = "schema.";
+
+    /**
+     * Parses the specified serialized field description.
+     *
+     * @param str the serialized description (see
+     *        {@link #encode(FieldDescription)})
+     * @return a new field description
+     */
+    static FieldDescription decode(String str) {
+        Map<String, String> params = new HashMap<String, String>();
+        for (String param : str.split(";")) {
+            int idx = param.indexOf('=');
+            if (idx > 0) {
+                params.put(param.substring(0, idx), param.substring(idx + 1));
+            }
+        }
+        FieldDescription.Builder builder = FieldDescription.builder();
+        // Identifiers are not analyzed by default
+        builder.setIdentifier(getFlag(params, "identifier", false));
+        builder.setAnalyze(getFlag(params, "analyzed", true));
+        String analyzer = params.get("analyzer");
+        if (analyzer != null) {
+            builder.setAnalyzerType(AnalyzerType.valueOf(analyzer));
+        }
+        String boost = params.get("boost");
+        if (boost != null) {
+            builder.setBoostFactor(Float.parseFloat(boost));
+        }
+        builder.setCompressed(getFlag(params, "compressed", false));
+        builder.setIndexReversed(getFlag(params, "reversed", false));
+        builder.setIndexShingles(getFlag(params, "shingles", false));
+        String inFullContent = params.get("inFullContent");
+        if (inFullContent != null && inFullContent.length() > 0) {
+            builder.setInFullContent(Boolean.valueOf(inFullContent));
+        }
+        builder.setSuggest(getFlag(params, "suggest", false));
+        return builder.build();
+    }
+
+    /**
+     * Serializes the specified field description in a string.
+     *
+     * @param description the description to serialize
+     * @return a serialized description
+     */
+    static String encode(FieldDescription description) {
+        Boolean inFullContent = description.getInFullContent();
+        return "analyzed="
+            + description.isAnalyzed()
+            + ";analyzer="
+            + description.getAnalyzerType()
+            + ";boost="
+            + description.getBoostFactor()
+            + ";compressed="
+            + description.isCompressed()
+            + ";identifier="
+            + description.isIdentifier()
+            + ";inFullContent="
+            + (inFullContent != null ? inFullContent.toString() : "")
+            + ";reversed="
+            + description.isIndexReversed()
+            + ";shingles="
+            + description.isIndexShingles()
+            + ";suggest="
+            + description.isSuggested();
+    }
+
+    /**
+     * Restores a schema from the user data of a commit.
+     *
+     * @param userData the user data of a commit
+     * @return the restored schema
+     */
+    public static IndexSchema fromUserData(Map<String, String> userData) {
+        if (userData == null) {
+            return EMPTY;
+        }
+        Map<String, FieldDescription> fields = new LinkedHashMap<String, FieldDescription>();
+        for (Map.Entry<String, String> entry : userData.entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(USER_DATA_PREFIX)) {
+                String field = key.substring(USER_DATA_PREFIX.length());
+                fields.put(field, decode(entry.getValue()));
+            }
+        }
+        return fields.isEmpty() ? EMPTY : new IndexSchema(fields);
+    }
+
+    private static boolean getFlag(
+        Map<String, String> params,
+        String name,
+        boolean defaultValue) {
+        String value = params.get(name);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    /**
+     * Loads the schema stored in the last commit of the index in the given
+     * directory.
+     *
+     * @param dir the index directory
+     * @return the loaded schema or the empty schema if the index does not
+     *         exist or if it has no schema
+     * @throws IOException
+     */
+    public static IndexSchema load(Directory dir) throws IOException {
+        if (!IndexReader.indexExists(dir)) {
+            return EMPTY;
+        }
+        return fromUserData(IndexReader.getCommitUserData(dir));
+    }
+
+    private final Map<String, FieldDescription> fFields;
+
+    /**
+     * Names of identifier fields.
+     */
+    private final List<String> fIdentifierFields;
+
+    /**
+     * This flag is <code>true</code> if reversed tokens of the full content
+     * are indexed (see {@link #isIndexReversed(String)}).
+     */
+    private final boolean fReversedFullContent;
+
+    /**
+     * This flag is <code>true</code> if word bigrams of the full content are
+     * indexed (see {@link #isIndexShingles(String)}).
+     */
+    private final boolean fShingledFullContent;
+
+    /**
+     * @param fields field names with the corresponding descriptions
+     */
+    public IndexSchema(Map<String, FieldDescription> fields) {
+        Map<String, FieldDescription> map = new LinkedHashMap<String, FieldDescription>();
+        List<String> identifiers = new ArrayList<String>();
+        boolean reversedFullContent = false;
+        boolean shingledFullContent = false;
+        if (fields != null) {
+            for (Map.Entry<String, FieldDescription> entry : fields
+                .entrySet()) {
+                FieldDescription description = new FieldDescription(entry
+                    .getValue());
+                map.put(entry.getKey(), description);
+                if (description.isIdentifier()) {
+                    identifiers.add(entry.getKey());
+                }
+                reversedFullContent |= description.isIndexReversed()
+                    && description.isSearchableInFullIndex();
+                shingledFullContent |= description.isIndexShingles()
+                    && description.isSearchableInFullIndex();
+            }
+        }
+        fFields = Collections.unmodifiableMap(map);
+        fIdentifierFields = Collections.unmodifiableList(identifiers);
+        fReversedFullContent = reversedFullContent;
+        fShingledFullContent = shingledFullContent;
+    }
+
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof IndexSchema)) {
+            return false;
+        }
+        return toUserData().equals(((IndexSchema) obj).toUserData());
+    }
+
+    /**
+     * Returns the description of the specified field.
+     *
+     * @param field the name of the field
+     * @return the description of the field or the default description if the
+     *         field is not defined in this schema
+     */
+    public FieldDescription getField(String field) {
+        FieldDescription description = fFields.get(field);
+        return description != null ? description : FieldDescription.DEFAULT;
+    }
+
+    /**
+     * @return an unmodifiable map of field names with the corresponding
+     *         descriptions
+     */
+    public Map<String, FieldDescription> getFields() {
+        return fFields;
+    }
+
+    /**
+     * @return an unmodifiable list of names of identifier fields
+     */
+    public List<String> getIdentifierFields() {
+        return fIdentifierFields;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return toUserData().hashCode();
+    }
+
+    /**
+     * @return <code>true</code> if shadow fields (reversed tokens or
+     *         shingles) are indexed for some fields of this schema
+     */
+    public boolean hasShadowFields() {
+        for (String field : fFields.keySet()) {
+            if (isIndexReversed(field) || isIndexShingles(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if this schema has no field descriptions
+     */
+    public boolean isEmpty() {
+        return fFields.isEmpty();
+    }
+
+    /**
+     * Returns <code>true</code> if reversed tokens of all values of the
+     * specified field are indexed in a shadow field (see
+     * {@link org.ubimix.commons.search.IFieldConst#REVERSED_SUFFIX}). If at
+     * least one field of the full content is reversed then reversed tokens of
+     * the whole full content (including fields without this flag) are
+     * indexed. Documents indexed with another schema should be re-indexed
+     * when this flag is changed.
+     * 
+     * @param field the name of the field
+     * @return <code>true</code> if the reversed shadow field could be used
+     *         to search in the field
+     */
+    public boolean isIndexReversed(String field) {
+        if (IFieldConst.FULL_CONTENT.equals(field)) {
+            return fReversedFullContent;
+        }
+        return getField(field).isIndexReversed();
+    }
+
+    /**
+     * Returns <code>true</code> if word bigrams of all values of the
+     * specified field are indexed in a shadow field (see
+     * {@link org.ubimix.commons.search.IFieldConst#SHINGLES_SUFFIX}). If at
+     * least one field of the full content has this flag then bigrams of the
+     * whole full content are indexed. Documents indexed with another schema
+     * should be re-indexed when this flag is changed.
+     * 
+     * @param field the name of the field
+     * @return <code>true</code> if the shingle shadow field could be used to
+     *         search in the field
+     */
+    public boolean isIndexShingles(String field) {
+        if (IFieldConst.FULL_CONTENT.equals(field)) {
+            return fShingledFullContent;
+        }
+        FieldDescription description = getField(field);
+        return description.isIndexShingles()
+            && description.isSearchableInFullIndex();
+    }
+
+    /**
+     * Returns an analyzer used to index fields of this schema (see
+     * {@link FieldAnalyzer}).
+     *
+     * @param analyzer the default analyzer
+     * @return an indexing analyzer
+     */
+    public FieldAnalyzer newIndexAnalyzer(Analyzer analyzer) {
+        return new FieldAnalyzer(this, analyzer, false);
+    }
+
+    /**
+     * Returns an analyzer used to parse queries on fields of this schema and
+     * to highlight search results. Values of non-analyzed fields are not
+     * tokenized (see {@link FieldAnalyzer}).
+     *
+     * @param analyzer the default analyzer
+     * @return a query analyzer
+     */
+    public FieldAnalyzer newQueryAnalyzer(Analyzer analyzer) {
+        return new FieldAnalyzer(this, analyzer, true);
+    }
+
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return fFields.toString();
+    }
+
+    /**
+     * Serializes this schema in commit user data.
+     *
+     * @return a map with serialized field descriptions
+     */
+    public Map<String, String> toUserData() {
+        Map<String, String> result = new HashMap<String, String>();
+        for (Map.Entry<String, FieldDescription> entry : fFields.entrySet()) {
+            result.put(USER_DATA_PREFIX + entry.getKey(), encode(entry
+                .getValue()));
+        }
+        return result;
+    }
+
+}
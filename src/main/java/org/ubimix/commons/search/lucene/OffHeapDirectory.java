@@ -0,0 +1,424 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.SingleInstanceLockFactory;
+
+/**
+ * An in-memory directory keeping file content outside of the Java heap, in
+ * direct byte buffers of a fixed size. It could be used instead of the
+ * {@link org.apache.lucene.store.RAMDirectory} for big in-memory indexes: the
+ * heap contains only a few small objects per file, so the index size does not
+ * affect garbage collection pauses.
+ * <p>
+ * Files are written once (by one thread) and then they are read by any number
+ * of concurrent readers without locks. The memory of a deleted file is
+ * released when the garbage collector finalizes its buffers.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class OffHeapDirectory extends Directory {
+
+    /**
+     * A file stored in a list of direct buffers.
+     */
+    private static class OffHeapFile {
+
+        private volatile ByteBuffer[] fBlocks = new ByteBuffer[0];
+
+        private volatile long fLastModified = System.currentTimeMillis();
+
+        private volatile long fLength;
+
+        /**
+         * Adds a new block to this file. Called only by the writer.
+         */
+        void addBlock(ByteBuffer block) {
+            ByteBuffer[] blocks = new ByteBuffer[fBlocks.length + 1];
+            System.arraycopy(fBlocks, 0, blocks, 0, fBlocks.length);
+            blocks[fBlocks.length] = block;
+            fBlocks = blocks;
+        }
+
+        ByteBuffer[] getBlocks() {
+            return fBlocks;
+        }
+
+        long getLastModified() {
+            return fLastModified;
+        }
+
+        long getLength() {
+            return fLength;
+        }
+
+        void setLastModified(long lastModified) {
+            fLastModified = lastModified;
+        }
+
+        void setLength(long length) {
+            fLength = length;
+        }
+    }
+
+    /**
+     * Reads a file. Each clone has its own view of the current block, so
+     * instances are never shared between threads. The position of the
+     * current block view (if any) always corresponds to the file pointer.
+     */
+    private static class OffHeapInput extends IndexInput {
+
+        private ByteBuffer fBlock;
+
+        private int fBlockIndex;
+
+        private final ByteBuffer[] fBlocks;
+
+        private final int fBlockShift;
+
+        private final long fLength;
+
+        private long fPosition;
+
+        OffHeapInput(OffHeapFile file, int blockShift) {
+            // The length should be read first: blocks are added before the
+            // length is published, so they always cover the read length
+            fLength = file.getLength();
+            fBlocks = file.getBlocks();
+            fBlockShift = blockShift;
+        }
+
+        private void checkEOF() throws IOException {
+            if (fPosition >= fLength) {
+                throw new IOException("Read past EOF");
+            }
+        }
+
+        @Override
+        public Object clone() {
+            OffHeapInput clone = (OffHeapInput) super.clone();
+            if (fBlock != null) {
+                clone.fBlock = fBlock.duplicate();
+            }
+            return clone;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+
+        @Override
+        public long getFilePointer() {
+            return fPosition;
+        }
+
+        @Override
+        public long length() {
+            return fLength;
+        }
+
+        private void nextBlock() {
+            fBlockIndex = (int) (fPosition >>> fBlockShift);
+            fBlock = fBlocks[fBlockIndex].duplicate();
+            fBlock.position(getOffset(fPosition, fBlockShift));
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            checkEOF();
+            if (fBlock == null || !fBlock.hasRemaining()) {
+                nextBlock();
+            }
+            fPosition++;
+            return fBlock.get();
+        }
+
+        @Override
+        public void readBytes(byte[] b, int offset, int len)
+            throws IOException {
+            while (len > 0) {
+                checkEOF();
+                if (fBlock == null || !fBlock.hasRemaining()) {
+                    nextBlock();
+                }
+                int count = (int) Math.min(
+                    Math.min(len, fBlock.remaining()),
+                    fLength - fPosition);
+                fBlock.get(b, offset, count);
+                fPosition += count;
+                offset += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            fPosition = pos;
+            if (fBlock != null && (pos >>> fBlockShift) == fBlockIndex) {
+                fBlock.position(getOffset(pos, fBlockShift));
+            } else {
+                fBlock = null;
+            }
+        }
+    }
+
+    /**
+     * Writes a file. Written data become visible for new readers when the
+     * output is flushed or closed. The position of the current block (if any)
+     * always corresponds to the file pointer.
+     */
+    private class OffHeapOutput extends IndexOutput {
+
+        private ByteBuffer fBlock;
+
+        private final OffHeapFile fFile;
+
+        private long fLength;
+
+        private long fPosition;
+
+        OffHeapOutput(OffHeapFile file) {
+            fFile = file;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            fFile.setLength(fLength);
+            fFile.setLastModified(System.currentTimeMillis());
+        }
+
+        @Override
+        public long getFilePointer() {
+            return fPosition;
+        }
+
+        @Override
+        public long length() throws IOException {
+            return fLength;
+        }
+
+        private void nextBlock() {
+            int index = (int) (fPosition >>> fBlockShift);
+            ByteBuffer[] blocks = fFile.getBlocks();
+            while (index >= blocks.length) {
+                fFile.addBlock(newBlock());
+                blocks = fFile.getBlocks();
+            }
+            fBlock = blocks[index];
+            fBlock.position(getOffset(fPosition, fBlockShift));
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            fPosition = pos;
+            fBlock = null;
+        }
+
+        @Override
+        public void writeByte(byte b) throws IOException {
+            if (fBlock == null || !fBlock.hasRemaining()) {
+                nextBlock();
+            }
+            fBlock.put(b);
+            fPosition++;
+            if (fPosition > fLength) {
+                fLength = fPosition;
+            }
+        }
+
+        @Override
+        public void writeBytes(byte[] b, int offset, int len)
+            throws IOException {
+            while (len > 0) {
+                if (fBlock == null || !fBlock.hasRemaining()) {
+                    nextBlock();
+                }
+                int count = Math.min(len, fBlock.remaining());
+                fBlock.put(b, offset, count);
+                fPosition += count;
+                offset += count;
+                len -= count;
+            }
+            if (fPosition > fLength) {
+                fLength = fPosition;
+            }
+        }
+    }
+
+    /**
+     * The default size of blocks (64 KB).
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Returns the offset of the specified file position in its block.
+     */
+    private static int getOffset(long pos, int blockShift) {
+        return (int) (pos & ((1L << blockShift) - 1));
+    }
+
+    private final int fBlockShift;
+
+    private final Map<String, OffHeapFile> fFiles = new ConcurrentHashMap<String, OffHeapFile>();
+
+    private final AtomicLong fSize = new AtomicLong();
+
+    /**
+     * Creates a new directory with the default size of blocks.
+     */
+    public OffHeapDirectory() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize the size of memory blocks; it is rounded up to the
+     *        next power of two. Small blocks waste less memory for small files
+     *        but they require more objects on the heap for big files.
+     */
+    public OffHeapDirectory(int blockSize) {
+        int shift = 10;
+        while ((1 << shift) < blockSize && shift < 30) {
+            shift++;
+        }
+        fBlockShift = shift;
+        try {
+            setLockFactory(new SingleInstanceLockFactory());
+        } catch (IOException e) {
+            // It never happens with this lock factory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @see org.apache.lucene.store.Directory#close()
+     */
+    @Override
+    public void close() throws IOException {
+        isOpen = false;
+        for (String name : fFiles.keySet()) {
+            deleteFile(name);
+        }
+    }
+
+    /**
+     * @see org.apache.lucene.store.Directory#createOutput(java.lang.String)
+     */
+    @Override
+    public IndexOutput createOutput(String name) throws IOException {
+        ensureOpen();
+        OffHeapFile file = new OffHeapFile();
+        release(fFiles.put(name, file));
+        return new OffHeapOutput(file);
+    }
+
+    /**
+     * @see org.apache.lucene.store.Directory#deleteFile(java.lang.String)
+     */
+    @Override
+    public void deleteFile(String name) throws IOException {
+        OffHeapFile file = fFiles.remove(name);
+        if (file == null) {
+            throw new FileNotFoundException(name);
+        }
+        release(file);
+    }
+
+    /**
+     * @see org.apache.lucene.store.Directory#fileExists(java.lang.String)
+     */
+    @Override
+    public boolean fileExists(String name) throws IOException {
+        ensureOpen();
+        return fFiles.containsKey(name);
+    }
+
+    /**
+     * @see org.apache.lucene.store.Directory#fileLength(java.lang.String)
+     */
+    @Override
+    public long fileLength(String name) throws IOException {
+        return getFile(name).getLength();
+    }
+
+    /**
+     * @see org.apache.lucene.store.Directory#fileModified(java.lang.String)
+     */
+    @Deprecated
+    @Override
+    public long fileModified(String name) throws IOException {
+        return getFile(name).getLastModified();
+    }
+
+    private OffHeapFile getFile(String name) throws IOException {
+        ensureOpen();
+        OffHeapFile file = fFiles.get(name);
+        if (file == null) {
+            throw new FileNotFoundException(name);
+        }
+        return file;
+    }
+
+    /**
+     * @see org.apache.lucene.store.Directory#listAll()
+     */
+    @Override
+    public String[] listAll() throws IOException {
+        ensureOpen();
+        Set<String> names = fFiles.keySet();
+        return names.toArray(new String[names.size()]);
+    }
+
+    private ByteBuffer newBlock() {
+        int size = 1 << fBlockShift;
+        fSize.addAndGet(size);
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * @see org.apache.lucene.store.Directory#openInput(java.lang.String)
+     */
+    @Override
+    public IndexInput openInput(String name) throws IOException {
+        return new OffHeapInput(getFile(name), fBlockShift);
+    }
+
+    private void release(OffHeapFile file) {
+        if (file != null) {
+            fSize.addAndGet(-((long) file.getBlocks().length << fBlockShift));
+        }
+    }
+
+    /**
+     * Returns the size of memory allocated for files of this directory.
+     *
+     * @return the size of allocated memory in bytes
+     */
+    public long sizeInBytes() {
+        return fSize.get();
+    }
+
+    /**
+     * @see org.apache.lucene.store.Directory#touchFile(java.lang.String)
+     */
+    @Deprecated
+    @Override
+    public void touchFile(String name) throws IOException {
+        getFile(name).setLastModified(System.currentTimeMillis());
+    }
+
+}
@@ -0,0 +1,188 @@
+package org.ubimix.commons.search.lucene;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+import org.ubimix.commons.search.Suggestion;
+
+/**
+ * Prefix-based term suggester used for autocompletion. This class keeps all
+ * terms of the specified fields in memory in a compact sorted list (see
+ * {@link TermList}) weighted by document frequencies. Each completion request
+ * is a binary search for the prefix range followed by a top-K extraction of
+ * the heaviest terms in this range. A segment tree over term weights allows to
+ * extract top-K terms in O(K*log(N)) operations without visiting all terms
+ * starting with the prefix.
+ * <p>
+ * Instances of this type should be registered in a {@link DocumentSearcher}
+ * using the {@link DocumentSearcher#addReaderListener(IReaderListener)} method
+ * to be updated each time when the searcher refreshes its reader.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class PrefixSuggester extends AbstractTermIndex {
+
+    /**
+     * Immutable snapshot of all terms and the corresponding weight tree.
+     */
+    private static class Snapshot {
+
+        private final TermList fTerms;
+
+        /**
+         * A segment tree. Each node contains the position of the heaviest
+         * term in the corresponding range. Leafs are in the
+         * <code>[size..2*size)</code> range.
+         */
+        private final int[] fTree;
+
+        public Snapshot(TermList terms) {
+            fTerms = terms;
+            int size = terms.size();
+            fTree = new int[size * 2];
+            for (int i = 0; i < size; i++) {
+                fTree[size + i] = i;
+            }
+            for (int i = size - 1; i > 0; i--) {
+                fTree[i] = heaviest(fTree[2 * i], fTree[2 * i + 1]);
+            }
+        }
+
+        /**
+         * Returns the position of the heaviest term. If weights are equal
+         * then the first term (in the alphabetical order) is returned.
+         */
+        private int heaviest(int first, int second) {
+            int a = fTerms.getWeight(first);
+            int b = fTerms.getWeight(second);
+            if (a != b) {
+                return a > b ? first : second;
+            }
+            return Math.min(first, second);
+        }
+
+        /**
+         * Returns the position of the heaviest term in the specified range.
+         */
+        public int getHeaviest(int from, int to) {
+            int size = fTerms.size();
+            int result = from;
+            for (int l = from + size, r = to + size; l < r; l >>= 1, r >>= 1) {
+                if ((l & 1) != 0) {
+                    result = heaviest(result, fTree[l++]);
+                }
+                if ((r & 1) != 0) {
+                    result = heaviest(result, fTree[--r]);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A range of terms in the priority queue of candidates. The heaviest term
+     * of the range is returned first.
+     */
+    private static class Range implements Comparable<Range> {
+
+        private final int fFrom;
+
+        private final int fPos;
+
+        private final int fTo;
+
+        private final int fWeight;
+
+        public Range(int from, int to, int pos, int weight) {
+            fFrom = from;
+            fTo = to;
+            fPos = pos;
+            fWeight = weight;
+        }
+
+        public int compareTo(Range o) {
+            if (fWeight != o.fWeight) {
+                return fWeight > o.fWeight ? -1 : 1;
+            }
+            return fPos - o.fPos;
+        }
+    }
+
+    private volatile Snapshot fSnapshot = new Snapshot(TermList.EMPTY);
+
+    /**
+     * @param fields names of fields used as a source of suggestions
+     */
+    public PrefixSuggester(Collection<String> fields) {
+        super(fields);
+    }
+
+    /**
+     * Creates a new suggester using terms of all suggest fields (see
+     * {@link FieldDescription#isSuggested()}).
+     *
+     * @param fieldDescriptions field descriptions
+     */
+    public PrefixSuggester(Map<String, FieldDescription> fieldDescriptions) {
+        this(getSuggestFields(fieldDescriptions));
+    }
+
+    /**
+     * @return the number of terms available for suggestions
+     */
+    public int getTermCount() {
+        return fSnapshot.fTerms.size();
+    }
+
+    private void push(
+        PriorityQueue<Range> queue,
+        Snapshot snapshot,
+        int from,
+        int to) {
+        if (from < to) {
+            int pos = snapshot.getHeaviest(from, to);
+            int weight = snapshot.fTerms.getWeight(pos);
+            queue.add(new Range(from, to, pos, weight));
+        }
+    }
+
+    @Override
+    protected void setTerms(TermList terms) {
+        fSnapshot = new Snapshot(terms);
+    }
+
+    /**
+     * Returns the most frequent terms starting with the specified prefix. The
+     * prefix is not analyzed so it should be normalized in the same way as
+     * indexed terms (for example it should be in the lower case if the index
+     * analyzer transforms all terms to the lower case).
+     *
+     * @param prefix the prefix of terms
+     * @param count the maximal number of returned suggestions
+     * @return a list of suggestions sorted by their weights
+     */
+    public List<Suggestion> suggest(String prefix, int count) {
+        Snapshot snapshot = fSnapshot;
+        TermList terms = snapshot.fTerms;
+        List<Suggestion> result = new ArrayList<Suggestion>();
+        int from = terms.getPrefixStart(prefix);
+        int to = terms.getPrefixEnd(prefix, from);
+        PriorityQueue<Range> queue = new PriorityQueue<Range>();
+        push(queue, snapshot, from, to);
+        while (result.size() < count && !queue.isEmpty()) {
+            Range range = queue.poll();
+            result.add(new Suggestion(
+                terms.getTerm(range.fPos),
+                range.fWeight));
+            push(queue, snapshot, range.fFrom, range.fPos);
+            push(queue, snapshot, range.fPos + 1, range.fTo);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+/**
+ * This filter adds prefixes ("edge n-grams") of each token of the underlying
+ * stream at the position of the token. It is used to index autocompletion
+ * fields: the query <code>hel</code> matches the indexed token
+ * <code>hello</code> without prefix queries.
+ *
+ * @author kotelnikov
+ */
+public final class PrefixTokenFilter extends TokenFilter {
+
+    /**
+     * The default maximal length of prefixes.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 20;
+
+    /**
+     * The default minimal length of prefixes.
+     */
+    public static final int DEFAULT_MIN_LENGTH = 2;
+
+    /**
+     * The length of the next prefix to return; 0 if there is no prefixes to
+     * return.
+     */
+    private int fLength;
+
+    /**
+     * The maximal length of prefixes of the current token.
+     */
+    private int fLimit;
+
+    private final int fMaxLength;
+
+    private final int fMinLength;
+
+    private final PositionIncrementAttribute fPosIncr = addAttribute(PositionIncrementAttribute.class);
+
+    private final CharTermAttribute fTerm = addAttribute(CharTermAttribute.class);
+
+    /**
+     * @param input the stream of tokens
+     */
+    public PrefixTokenFilter(TokenStream input) {
+        this(input, DEFAULT_MIN_LENGTH, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param input the stream of tokens
+     * @param minLength the minimal length of prefixes
+     * @param maxLength the maximal length of prefixes
+     */
+    public PrefixTokenFilter(TokenStream input, int minLength, int maxLength) {
+        super(input);
+        fMinLength = Math.max(1, minLength);
+        fMaxLength = maxLength;
+    }
+
+    /**
+     * @see org.apache.lucene.analysis.TokenStream#incrementToken()
+     */
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (fLength > 0 && fLength <= fLimit) {
+            // The term buffer still contains the whole token
+            fTerm.setLength(fLength);
+            fPosIncr.setPositionIncrement(0);
+            fLength++;
+            return true;
+        }
+        if (!input.incrementToken()) {
+            return false;
+        }
+        // Prefixes are returned after the token itself
+        fLimit = Math.min(fTerm.length() - 1, fMaxLength);
+        fLength = fMinLength <= fLimit ? fMinLength : 0;
+        return true;
+    }
+
+    /**
+     * @see org.apache.lucene.analysis.TokenFilter#reset()
+     */
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        fLength = 0;
+        fLimit = 0;
+    }
+
+}
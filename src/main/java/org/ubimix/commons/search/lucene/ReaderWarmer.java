@@ -0,0 +1,181 @@
+package org.ubimix.commons.search.lucene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.util.ReaderUtil;
+import org.ubimix.commons.search.IFieldConst;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * This listener warms up newly opened readers before they are published to
+ * searches. It executes a configured list of warming queries (which loads term
+ * dictionaries, norms and postings of the most used fields) and pre-loads
+ * field caches for fields used to sort, facet or group results. Field caches
+ * are kept per segment, so only new segments are really loaded when a reader
+ * is re-opened.
+ * <p>
+ * Usage:
+ * </p>
+ *
+ * <pre>
+ * DocumentSearcher searcher = new DocumentSearcher(dir, analyzer);
+ * ReaderWarmer warmer = new ReaderWarmer(searcher);
+ * warmer.addQuery(&quot;hello world&quot;);
+ * warmer.addCachedField(&quot;date&quot;);
+ * searcher.addReaderListener(warmer);
+ * </pre>
+ *
+ * @author kotelnikov
+ */
+public class ReaderWarmer implements IReaderListener {
+
+    /**
+     * An individual warming query.
+     */
+    private static class WarmingQuery {
+
+        private final Collection<String> fFields;
+
+        private final String fQuery;
+
+        public WarmingQuery(String query, Collection<String> fields) {
+            fQuery = query;
+            fFields = fields;
+        }
+    }
+
+    private final static Logger log = Logger.getLogger(ReaderWarmer.class
+        .getName());
+
+    private final Set<String> fCachedFields = new LinkedHashSet<String>();
+
+    private int fMaxResultNumber = 10;
+
+    private final List<WarmingQuery> fQueries = new ArrayList<WarmingQuery>();
+
+    private final DocumentSearcher fSearcher;
+
+    /**
+     * @param searcher the searcher used to parse and execute warming queries
+     */
+    public ReaderWarmer(DocumentSearcher searcher) {
+        fSearcher = searcher;
+    }
+
+    /**
+     * Adds fields used to sort, facet or group search results. Field caches of
+     * these fields are loaded for each new reader.
+     *
+     * @param fields names of fields to add
+     * @return this instance
+     */
+    public synchronized ReaderWarmer addCachedField(String... fields) {
+        fCachedFields.addAll(Arrays.asList(fields));
+        return this;
+    }
+
+    /**
+     * Adds a new warming query executed over the full content.
+     *
+     * @param query the query to add
+     * @return this instance
+     */
+    public ReaderWarmer addQuery(String query) {
+        Collection<String> fields = Collections
+            .singleton(IFieldConst.FULL_CONTENT);
+        return addQuery(query, fields);
+    }
+
+    /**
+     * Adds a new warming query.
+     *
+     * @param query the query to add
+     * @param fields fields used to search
+     * @return this instance
+     */
+    public synchronized ReaderWarmer addQuery(
+        String query,
+        Collection<String> fields) {
+        fQueries.add(new WarmingQuery(query, new ArrayList<String>(fields)));
+        return this;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.lucene.IReaderListener#onReaderOpen(org.apache.lucene.index.IndexReader)
+     */
+    public void onReaderOpen(IndexReader reader) throws SearchException {
+        List<WarmingQuery> queries;
+        List<String> cachedFields;
+        synchronized (this) {
+            queries = new ArrayList<WarmingQuery>(fQueries);
+            cachedFields = new ArrayList<String>(fCachedFields);
+        }
+        long start = System.currentTimeMillis();
+        warmFieldCaches(reader, cachedFields);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        for (WarmingQuery query : queries) {
+            try {
+                fSearcher.executeQuery(
+                    searcher,
+                    query.fQuery,
+                    query.fFields,
+                    fMaxResultNumber);
+            } catch (SearchException e) {
+                // A broken warming query should not block the reader
+                log.log(Level.WARNING, "Warming query failed: '"
+                    + query.fQuery
+                    + "'.", e);
+            }
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine("Reader warmed up in "
+                + (System.currentTimeMillis() - start)
+                + "ms ("
+                + queries.size()
+                + " queries, "
+                + cachedFields.size()
+                + " cached fields).");
+        }
+    }
+
+    /**
+     * Sets the number of results requested by warming queries.
+     *
+     * @param maxResultNumber the number of results to set
+     */
+    public void setMaxResultNumber(int maxResultNumber) {
+        fMaxResultNumber = maxResultNumber;
+    }
+
+    private void warmFieldCaches(IndexReader reader, List<String> fields) {
+        if (fields.isEmpty()) {
+            return;
+        }
+        List<IndexReader> segments = new ArrayList<IndexReader>();
+        ReaderUtil.gatherSubReaders(segments, reader);
+        for (String field : fields) {
+            try {
+                for (IndexReader segment : segments) {
+                    FieldCache.DEFAULT.getStringIndex(segment, field);
+                }
+            } catch (Throwable t) {
+                // A field which can not be cached should not block the reader
+                log.log(Level.WARNING, "Can not load the field cache: '"
+                    + field
+                    + "'.", t);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+/**
+ * This filter reverses all tokens of the underlying stream. It is used to
+ * index shadow fields transforming suffix queries to prefix queries.
+ *
+ * @author kotelnikov
+ */
+public final class ReversedTokenFilter extends TokenFilter {
+
+    /**
+     * Reverses the given string. Surrogate pairs are kept in the right order.
+     *
+     * @param str the string to reverse
+     * @return the reversed string
+     */
+    public static String reverse(String str) {
+        return new StringBuilder(str).reverse().toString();
+    }
+
+    private final StringBuilder fBuf = new StringBuilder();
+
+    private final CharTermAttribute fTerm = addAttribute(CharTermAttribute.class);
+
+    /**
+     * @param input the stream of tokens to reverse
+     */
+    public ReversedTokenFilter(TokenStream input) {
+        super(input);
+    }
+
+    /**
+     * @see org.apache.lucene.analysis.TokenStream#incrementToken()
+     */
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (!input.incrementToken()) {
+            return false;
+        }
+        fBuf.setLength(0);
+        fBuf.append(fTerm.buffer(), 0, fTerm.length());
+        fBuf.reverse();
+        fTerm.setEmpty().append(fBuf);
+        return true;
+    }
+
+}
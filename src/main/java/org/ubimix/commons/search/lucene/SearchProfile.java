@@ -0,0 +1,259 @@
+package org.ubimix.commons.search.lucene;
+
+import java.util.Collection;
+
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IFieldConst;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * Execution profile of one search query. It contains times (in nanoseconds)
+ * spent in individual search phases - query parsing, scoring, loading of
+ * stored fields and highlighting - as well as the number of hits and the size
+ * of loaded stored fields. Profiles are collected by the
+ * {@link DocumentSearcher} only when profiling is enabled (see
+ * {@link DocumentSearcher#setSlowQueryThreshold(long)}).
+ * <p>
+ * The {@link #toString()} method returns a structured record with
+ * space-separated <code>key=value</code> pairs which is used by the slow query
+ * log. Instances of this class are not thread-safe; they are updated by
+ * threads consuming search results.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class SearchProfile {
+
+    /**
+     * Returns the size of stored fields of the given document as they are
+     * stored in the index: text values are counted by the length of their
+     * UTF-8 representation and compressed values by the size of their
+     * compressed data.
+     *
+     * @param doc the document
+     * @return the size of stored fields in bytes
+     * @throws SearchException
+     */
+    public static long getStoredBytes(IDocument doc) throws SearchException {
+        if (doc instanceof StoredDocument) {
+            // Does not decompress compressed fields
+            return ((StoredDocument) doc).getStoredBytes();
+        }
+        long size = 0;
+        boolean fullContent = false;
+        for (String field : doc.getFields()) {
+            String value = doc.getValue(field);
+            if (value != null) {
+                size += getUTF8Length(value);
+            }
+            fullContent |= IFieldConst.FULL_CONTENT.equals(field);
+        }
+        if (!fullContent) {
+            String value = doc.getValue(IFieldConst.FULL_CONTENT);
+            if (value != null) {
+                size += getUTF8Length(value);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of the UTF-8 representation of the given
+     * string.
+     *
+     * @param str the string
+     * @return the length of the string in UTF-8
+     */
+    static long getUTF8Length(String str) {
+        int len = str.length();
+        long size = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = str.charAt(i);
+            if (ch < 0x80) {
+                size++;
+            } else if (ch < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(ch)
+                && i + 1 < len
+                && Character.isLowSurrogate(str.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else {
+                size += 3;
+            }
+        }
+        return size;
+    }
+
+    private final Collection<String> fFields;
+
+    private long fHighlightTime;
+
+    private int fHitCount;
+
+    private long fLoadTime;
+
+    private int fLoadedDocuments;
+
+    private long fParseTime;
+
+    private final String fQuery;
+
+    private long fSearchTime;
+
+    private long fStoredBytes;
+
+    /**
+     * @param query the query string
+     * @param fields fields used to search
+     */
+    public SearchProfile(String query, Collection<String> fields) {
+        fQuery = query;
+        fFields = fields;
+    }
+
+    /**
+     * Adds the time spent to highlight one search result.
+     *
+     * @param time the time in nanoseconds
+     */
+    public void addHighlightTime(long time) {
+        fHighlightTime += time;
+    }
+
+    /**
+     * Registers one loaded document.
+     *
+     * @param time the time spent to load stored fields (in nanoseconds)
+     * @param storedBytes the size of loaded stored fields in bytes (see
+     *        {@link #getStoredBytes(IDocument)})
+     */
+    public void addLoadedDocument(long time, long storedBytes) {
+        fLoadTime += time;
+        fStoredBytes += storedBytes;
+        fLoadedDocuments++;
+    }
+
+    /**
+     * @return fields used to search
+     */
+    public Collection<String> getFields() {
+        return fFields;
+    }
+
+    /**
+     * @return the time spent to highlight results (in nanoseconds)
+     */
+    public long getHighlightTime() {
+        return fHighlightTime;
+    }
+
+    /**
+     * @return the total number of documents matching the query
+     */
+    public int getHitCount() {
+        return fHitCount;
+    }
+
+    /**
+     * @return the number of documents with loaded stored fields
+     */
+    public int getLoadedDocuments() {
+        return fLoadedDocuments;
+    }
+
+    /**
+     * @return the time spent to load stored fields (in nanoseconds)
+     */
+    public long getLoadTime() {
+        return fLoadTime;
+    }
+
+    /**
+     * @return the time spent to parse the query (in nanoseconds)
+     */
+    public long getParseTime() {
+        return fParseTime;
+    }
+
+    /**
+     * @return the query string
+     */
+    public String getQuery() {
+        return fQuery;
+    }
+
+    /**
+     * @return the time spent to find and score documents (in nanoseconds)
+     */
+    public long getSearchTime() {
+        return fSearchTime;
+    }
+
+    /**
+     * @return the size of loaded stored fields in bytes (see
+     *         {@link #getStoredBytes(IDocument)})
+     */
+    public long getStoredBytes() {
+        return fStoredBytes;
+    }
+
+    /**
+     * @return the total time of all search phases (in nanoseconds)
+     */
+    public long getTotalTime() {
+        return fParseTime + fSearchTime + fLoadTime + fHighlightTime;
+    }
+
+    /**
+     * @param hitCount the total number of documents matching the query
+     */
+    public void setHitCount(int hitCount) {
+        fHitCount = hitCount;
+    }
+
+    /**
+     * @param parseTime the time spent to parse the query (in nanoseconds)
+     */
+    public void setParseTime(long parseTime) {
+        fParseTime = parseTime;
+    }
+
+    /**
+     * @param searchTime the time spent to find and score documents (in
+     *        nanoseconds)
+     */
+    public void setSearchTime(long searchTime) {
+        fSearchTime = searchTime;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        buf.append("totalUs=").append(getTotalTime() / 1000);
+        buf.append(" parseUs=").append(fParseTime / 1000);
+        buf.append(" searchUs=").append(fSearchTime / 1000);
+        buf.append(" loadUs=").append(fLoadTime / 1000);
+        buf.append(" highlightUs=").append(fHighlightTime / 1000);
+        buf.append(" hits=").append(fHitCount);
+        buf.append(" loaded=").append(fLoadedDocuments);
+        buf.append(" storedBytes=").append(fStoredBytes);
+        buf.append(" fields=");
+        String separator = "";
+        for (String field : fFields) {
+            buf.append(separator).append(field);
+            separator = ",";
+        }
+        buf.append(" query=\"");
+        for (int i = 0; i < fQuery.length(); i++) {
+            char ch = fQuery.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                buf.append('\\');
+            }
+            buf.append(ch == '\n' || ch == '\r' ? ' ' : ch);
+        }
+        buf.append("\"");
+        return buf.toString();
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+
+/**
+ * This filter transforms a stream of tokens to a stream of word bigrams
+ * ("shingles"). Each shingle contains two adjacent tokens separated by the
+ * {@link #SEPARATOR} and has the position of its first token. Tokens separated
+ * by a gap (for example by a removed stop word) are not joined. Original
+ * tokens are not returned.
+ *
+ * @author kotelnikov
+ */
+public final class ShingleTokenFilter extends TokenFilter {
+
+    /**
+     * The separator of tokens in shingles.
+     */
+    public static final char SEPARATOR = ' ';
+
+    /**
+     * Returns a shingle joining the two given tokens.
+     *
+     * @param first the first token
+     * @param second the second token
+     * @return a shingle
+     */
+    public static String getShingle(String first, String second) {
+        return first + SEPARATOR + second;
+    }
+
+    private int fLastPosition;
+
+    private final OffsetAttribute fOffset = addAttribute(OffsetAttribute.class);
+
+    private int fPosition;
+
+    private final PositionIncrementAttribute fPositionIncrement = addAttribute(PositionIncrementAttribute.class);
+
+    private String fPrevious;
+
+    private int fPreviousStart;
+
+    private final CharTermAttribute fTerm = addAttribute(CharTermAttribute.class);
+
+    /**
+     * @param input the stream of tokens to join
+     */
+    public ShingleTokenFilter(TokenStream input) {
+        super(input);
+        resetState();
+    }
+
+    /**
+     * @see org.apache.lucene.analysis.TokenStream#incrementToken()
+     */
+    @Override
+    public boolean incrementToken() throws IOException {
+        while (input.incrementToken()) {
+            int increment = fPositionIncrement.getPositionIncrement();
+            fPosition += increment;
+            String previous = fPrevious;
+            int previousStart = fPreviousStart;
+            fPrevious = fTerm.toString();
+            fPreviousStart = fOffset.startOffset();
+            if (previous != null && increment == 1) {
+                int position = fPosition - 1;
+                fTerm.setEmpty().append(previous).append(SEPARATOR).append(
+                    fPrevious);
+                fOffset.setOffset(previousStart, fOffset.endOffset());
+                fPositionIncrement.setPositionIncrement(position
+                    - fLastPosition);
+                fLastPosition = position;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @see org.apache.lucene.analysis.TokenFilter#reset()
+     */
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        resetState();
+    }
+
+    private void resetState() {
+        fPosition = -1;
+        fLastPosition = -1;
+        fPrevious = null;
+        fPreviousStart = 0;
+    }
+
+}
@@ -0,0 +1,258 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.search.TermQuery;
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IFieldConst;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * Builds "more like this" queries. Terms of a source document are extracted
+ * from term vectors of the indexed document (if they are available) or from
+ * its stored text; then terms are weighted by their tf-idf and only the most
+ * distinctive ones are used in the resulting disjunction. So the cost of the
+ * query is bounded by the maximal number of terms and does not depend on the
+ * size of the source document. Terms found in less than the minimal number
+ * of documents (typos, unique identifiers) are ignored.
+ *
+ * @author kotelnikov
+ */
+public class SimilarQueryBuilder {
+
+    /**
+     * A weighted term of the source document.
+     */
+    private static class ScoredTerm {
+
+        private final float fScore;
+
+        private final Term fTerm;
+
+        public ScoredTerm(Term term, float score) {
+            fTerm = term;
+            fScore = score;
+        }
+    }
+
+    /**
+     * The default maximal number of terms in generated queries.
+     */
+    public static final int DEFAULT_MAX_TERMS = 25;
+
+    /**
+     * The maximal number of tokens analyzed in each field.
+     */
+    public static final int MAX_TOKENS = 5000;
+
+    /**
+     * The default minimal document frequency of query terms. Terms of the
+     * source document should be found in at least one other document.
+     */
+    public static final int DEFAULT_MIN_DOC_FREQ = 2;
+
+    private static final Comparator<ScoredTerm> COMPARATOR = new Comparator<ScoredTerm>() {
+        public int compare(ScoredTerm o1, ScoredTerm o2) {
+            return Float.compare(o2.fScore, o1.fScore);
+        }
+    };
+
+    private final Analyzer fAnalyzer;
+
+    private final int fMaxTerms;
+
+    private final int fMinDocFreq;
+
+    /**
+     * @param analyzer the analyzer used to split stored values in terms
+     */
+    public SimilarQueryBuilder(Analyzer analyzer) {
+        this(analyzer, DEFAULT_MAX_TERMS, DEFAULT_MIN_DOC_FREQ);
+    }
+
+    /**
+     * @param analyzer the analyzer used to split stored values in terms
+     * @param maxTerms the maximal number of terms in generated queries
+     * @param minDocFreq the minimal document frequency of query terms
+     */
+    public SimilarQueryBuilder(Analyzer analyzer, int maxTerms, int minDocFreq) {
+        fAnalyzer = analyzer;
+        fMaxTerms = Math.max(1, Math.min(
+            maxTerms,
+            BooleanQuery.getMaxClauseCount()));
+        fMinDocFreq = Math.max(1, minDocFreq);
+    }
+
+    private void addTerms(
+        Map<Term, int[]> freqs,
+        String field,
+        String[] terms,
+        int[] termFreqs) {
+        Term prototype = new Term(field);
+        for (int i = 0; i < terms.length; i++) {
+            Term term = prototype.createTerm(terms[i]);
+            int[] freq = freqs.get(term);
+            if (freq == null) {
+                freq = new int[1];
+                freqs.put(term, freq);
+            }
+            freq[0] += termFreqs[i];
+        }
+    }
+
+    private void addTerms(Map<Term, int[]> freqs, String field, String text)
+        throws IOException {
+        Term prototype = new Term(field);
+        TokenStream stream = fAnalyzer.reusableTokenStream(
+            field,
+            new StringReader(text));
+        CharTermAttribute termAttribute = stream
+            .addAttribute(CharTermAttribute.class);
+        stream.reset();
+        int count = 0;
+        while (count < MAX_TOKENS && stream.incrementToken()) {
+            Term term = prototype.createTerm(termAttribute.toString());
+            int[] freq = freqs.get(term);
+            if (freq == null) {
+                freq = new int[1];
+                freqs.put(term, freq);
+            }
+            freq[0]++;
+            count++;
+        }
+        stream.end();
+        stream.close();
+    }
+
+    /**
+     * @return the maximal number of terms in generated queries
+     */
+    public int getMaxTerms() {
+        return fMaxTerms;
+    }
+
+    /**
+     * @return the minimal document frequency of query terms
+     */
+    public int getMinDocFreq() {
+        return fMinDocFreq;
+    }
+
+    private String getText(IDocument doc, String field) throws SearchException {
+        String value = doc.getValue(field);
+        if (value != null || !IFieldConst.FULL_CONTENT.equals(field)) {
+            return value;
+        }
+        // Documents which are not loaded from the index have no full content
+        StringBuilder buf = new StringBuilder();
+        for (String name : doc.getFields()) {
+            String str = doc.getValue(name);
+            if (str != null) {
+                if (buf.length() > 0) {
+                    buf.append(' ');
+                }
+                buf.append(str);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Creates a query returning documents similar to the given one.
+     *
+     * @param reader the reader used to get document frequencies of terms
+     * @param doc the source document
+     * @param fields fields used to extract terms and to search
+     * @return a disjunction of the most distinctive terms of the document; it
+     *         is empty if there is no such terms
+     * @throws IOException
+     * @throws SearchException
+     */
+    public BooleanQuery newQuery(
+        IndexReader reader,
+        IDocument doc,
+        Collection<String> fields) throws IOException, SearchException {
+        return newQuery(reader, -1, doc, fields);
+    }
+
+    /**
+     * Creates a query returning documents similar to an indexed document.
+     * Term vectors of the document are used if they are available; otherwise
+     * the stored text of the given document is analyzed.
+     *
+     * @param reader the reader used to get term vectors and document
+     *        frequencies of terms
+     * @param docId the internal identifier of the source document
+     * @param doc stored fields of the source document
+     * @param fields fields used to extract terms and to search
+     * @return a disjunction of the most distinctive terms of the document; it
+     *         is empty if there is no such terms
+     * @throws IOException
+     * @throws SearchException
+     */
+    public BooleanQuery newQuery(
+        IndexReader reader,
+        int docId,
+        IDocument doc,
+        Collection<String> fields) throws IOException, SearchException {
+        Map<Term, int[]> freqs = new HashMap<Term, int[]>();
+        for (String field : fields) {
+            TermFreqVector vector = docId >= 0 ? reader.getTermFreqVector(
+                docId,
+                field) : null;
+            if (vector != null) {
+                addTerms(
+                    freqs,
+                    field,
+                    vector.getTerms(),
+                    vector.getTermFrequencies());
+            } else {
+                String text = getText(doc, field);
+                if (text != null) {
+                    addTerms(freqs, field, text);
+                }
+            }
+        }
+        List<ScoredTerm> terms = new ArrayList<ScoredTerm>();
+        Similarity similarity = Similarity.getDefault();
+        int numDocs = reader.numDocs();
+        for (Map.Entry<Term, int[]> entry : freqs.entrySet()) {
+            Term term = entry.getKey();
+            int docFreq = reader.docFreq(term);
+            if (docFreq < fMinDocFreq) {
+                continue;
+            }
+            float tf = similarity.tf(entry.getValue()[0]);
+            float idf = similarity.idf(docFreq, numDocs);
+            terms.add(new ScoredTerm(term, tf * idf));
+        }
+        Collections.sort(terms, COMPARATOR);
+        BooleanQuery query = new BooleanQuery();
+        int len = Math.min(terms.size(), fMaxTerms);
+        for (int i = 0; i < len; i++) {
+            ScoredTerm term = terms.get(i);
+            TermQuery termQuery = new TermQuery(term.fTerm);
+            termQuery.setBoost(term.fScore / terms.get(0).fScore);
+            query.add(termQuery, Occur.SHOULD);
+        }
+        return query;
+    }
+
+}
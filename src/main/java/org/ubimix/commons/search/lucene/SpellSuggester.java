@@ -0,0 +1,456 @@
+package org.ubimix.commons.search.lucene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+import org.ubimix.commons.search.Suggestion;
+
+/**
+ * "Did you mean" spelling suggester. This class keeps an in-memory n-gram map
+ * over terms of the specified fields. Each term is split into character
+ * bigrams (with the beginning and the end of the term marked by special
+ * characters) and the map associates each bigram with the sorted list of terms
+ * containing it. Candidates for a misspelled word are terms sharing enough
+ * bigrams with this word; they are verified with the edit distance and
+ * ranked by this distance and by term frequencies.
+ * <p>
+ * The n-gram map is built from the main index when a new reader is opened (see
+ * {@link IReaderListener}); terms are loaded only from new segments. To avoid
+ * any impact on search latency the map could be built in background (see
+ * {@link #setExecutor(java.util.concurrent.Executor)}).
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class SpellSuggester extends AbstractTermIndex {
+
+    /**
+     * Immutable n-gram map. Bigrams are encoded as integers; all postings are
+     * stored in one array (postings of the bigram <code>fGrams[i]</code> are
+     * in the <code>[fOffsets[i]..fOffsets[i+1])</code> range).
+     */
+    private static class Snapshot {
+
+        private final int[] fGrams;
+
+        private final int[] fOffsets;
+
+        private final int[] fPostings;
+
+        private final TermList fTerms;
+
+        public Snapshot(TermList terms) {
+            fTerms = terms;
+            int count = 0;
+            int size = terms.size();
+            for (int i = 0; i < size; i++) {
+                count += terms.getLength(i) + 1;
+            }
+            // Pairs (bigram, term) sorted by bigrams and then by terms
+            long[] pairs = new long[count];
+            int pos = 0;
+            for (int i = 0; i < size; i++) {
+                int[] grams = getGrams(terms.getTerm(i));
+                for (int gram : grams) {
+                    pairs[pos++] = ((long) gram << 32) | i;
+                }
+            }
+            Arrays.sort(pairs, 0, pos);
+            int gramCount = 0;
+            long prev = -1;
+            for (int i = 0; i < pos; i++) {
+                long gram = pairs[i] >>> 32;
+                if (gram != prev) {
+                    gramCount++;
+                    prev = gram;
+                }
+            }
+            fGrams = new int[gramCount];
+            fOffsets = new int[gramCount + 1];
+            fPostings = new int[pos];
+            int idx = -1;
+            prev = -1;
+            for (int i = 0; i < pos; i++) {
+                long gram = pairs[i] >>> 32;
+                if (gram != prev) {
+                    idx++;
+                    fGrams[idx] = (int) gram;
+                    fOffsets[idx] = i;
+                    prev = gram;
+                }
+                fPostings[i] = (int) pairs[i];
+            }
+            fOffsets[gramCount] = pos;
+        }
+
+        /**
+         * Returns the position of the bigram in the internal arrays or
+         * <code>-1</code> if there is no such a bigram.
+         */
+        public int indexOf(int gram) {
+            int idx = Arrays.binarySearch(fGrams, gram);
+            return idx >= 0 ? idx : -1;
+        }
+    }
+
+    /**
+     * The character marking the beginning of terms in bigrams.
+     */
+    private static final char BEGIN = '\u0002';
+
+    /**
+     * The character marking the end of terms in bigrams.
+     */
+    private static final char END = '\u0003';
+
+    /**
+     * Returns the edit distance between two strings or a value greater than
+     * <code>maxDistance</code> if the real distance exceeds this limit. This
+     * method uses the Damerau-Levenshtein distance (the "optimal string
+     * alignment" variant): transpositions of two adjacent characters - very
+     * common typos - are counted as one edit operation.
+     *
+     * @param first the first string
+     * @param second the second string
+     * @param maxDistance the maximal interesting distance
+     * @return the edit distance between strings
+     */
+    static int getDistance(String first, String second, int maxDistance) {
+        int n = first.length();
+        int m = second.length();
+        if (Math.abs(n - m) > maxDistance) {
+            return maxDistance + 1;
+        }
+        int[] prevPrev = new int[m + 1];
+        int[] prev = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            int min = i;
+            char ch = first.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                char c = second.charAt(j - 1);
+                int cost = ch == c ? 0 : 1;
+                int value = Math.min(
+                    Math.min(current[j - 1] + 1, prev[j] + 1),
+                    prev[j - 1] + cost);
+                if (i > 1
+                    && j > 1
+                    && ch == second.charAt(j - 2)
+                    && first.charAt(i - 2) == c) {
+                    value = Math.min(value, prevPrev[j - 2] + cost);
+                }
+                current[j] = value;
+                min = Math.min(min, value);
+            }
+            if (min > maxDistance) {
+                return maxDistance + 1;
+            }
+            int[] tmp = prevPrev;
+            prevPrev = prev;
+            prev = current;
+            current = tmp;
+        }
+        return prev[m];
+    }
+
+    /**
+     * Returns sorted distinct bigrams of the specified term.
+     */
+    private static int[] getGrams(String term) {
+        int len = term.length();
+        int[] grams = new int[len + 1];
+        char prev = BEGIN;
+        for (int i = 0; i <= len; i++) {
+            char ch = i < len ? term.charAt(i) : END;
+            grams[i] = (prev << 16) | ch;
+            prev = ch;
+        }
+        Arrays.sort(grams);
+        int count = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (count == 0 || grams[count - 1] != grams[i]) {
+                grams[count++] = grams[i];
+            }
+        }
+        if (count < grams.length) {
+            int[] result = new int[count];
+            System.arraycopy(grams, 0, result, 0, count);
+            grams = result;
+        }
+        return grams;
+    }
+
+    /**
+     * Returns <code>true</code> if the word in the specified range of the
+     * query is a plain term: it is not an operator and it is not a part of a
+     * wildcard, a fuzzy term, a boost factor or an escape sequence.
+     */
+    private static boolean isPlainTerm(String query, int start, int end) {
+        String word = query.substring(start, end);
+        if ("AND".equals(word) || "OR".equals(word) || "NOT".equals(word)) {
+            return false;
+        }
+        char prev = start > 0 ? query.charAt(start - 1) : ' ';
+        char next = end < query.length() ? query.charAt(end) : ' ';
+        return "*?~^\\".indexOf(prev) < 0 && "*?~\\".indexOf(next) < 0;
+    }
+
+    /**
+     * Returns the position after the group (a phrase, a range or a
+     * parenthesized sub-query) starting at the specified position.
+     */
+    private static int skipGroup(String query, int pos) {
+        char open = query.charAt(pos);
+        char close;
+        switch (open) {
+            case '(':
+                close = ')';
+                break;
+            case '[':
+                close = ']';
+                break;
+            case '{':
+                close = '}';
+                break;
+            default:
+                close = open;
+        }
+        int len = query.length();
+        int depth = 0;
+        for (int i = pos + 1; i < len; i++) {
+            char ch = query.charAt(i);
+            if (ch == '\\') {
+                i++;
+            } else if (ch == close) {
+                if (depth == 0) {
+                    return i + 1;
+                }
+                depth--;
+            } else if (ch == open) {
+                depth++;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Returns the position after the field value starting at the specified
+     * position.
+     */
+    private static int skipValue(String query, int pos) {
+        int len = query.length();
+        if (pos < len && "\"([{".indexOf(query.charAt(pos)) >= 0) {
+            return skipGroup(query, pos);
+        }
+        int i = pos;
+        while (i < len) {
+            char ch = query.charAt(i);
+            if (ch == '\\') {
+                i += 2;
+            } else if (Character.isWhitespace(ch) || ch == ')') {
+                break;
+            } else {
+                i++;
+            }
+        }
+        return Math.min(i, len);
+    }
+
+    private volatile int fMaxDistance = 2;
+
+    private volatile Snapshot fSnapshot = new Snapshot(TermList.EMPTY);
+
+    /**
+     * @param fields names of fields used as a source of spelling suggestions
+     */
+    public SpellSuggester(Collection<String> fields) {
+        super(fields);
+    }
+
+    /**
+     * Creates a new suggester using terms of all suggest fields (see
+     * {@link FieldDescription#isSuggested()}).
+     *
+     * @param fieldDescriptions field descriptions
+     */
+    public SpellSuggester(Map<String, FieldDescription> fieldDescriptions) {
+        this(getSuggestFields(fieldDescriptions));
+    }
+
+    /**
+     * Returns a corrected version of the given query. Each plain term of the
+     * query which is not found in the index is replaced by the best
+     * suggestion. Field names, operators, phrases, ranges, wildcards, fuzzy
+     * terms and values of fields which are not used by this suggester are kept
+     * as is. Words are not analyzed, so they should be normalized in the same
+     * way as the indexed terms.
+     *
+     * @param query the query to correct
+     * @return the corrected query or <code>null</code> if there is nothing to
+     *         correct
+     */
+    public String correct(String query) {
+        Collection<String> fields = getFields();
+        StringBuilder buf = new StringBuilder();
+        boolean corrected = false;
+        int len = query.length();
+        int i = 0;
+        while (i < len) {
+            int start = i;
+            char ch = query.charAt(i);
+            if (ch == '"' || ch == '[' || ch == '{') {
+                i = skipGroup(query, i);
+            } else if (ch == '\\') {
+                i = Math.min(len, i + 2);
+            } else if (Character.isLetterOrDigit(ch)) {
+                while (i < len && Character.isLetterOrDigit(query.charAt(i))) {
+                    i++;
+                }
+                if (i < len && query.charAt(i) == ':') {
+                    String field = query.substring(start, i);
+                    i++;
+                    if (!fields.contains(field)) {
+                        i = skipValue(query, i);
+                    }
+                } else if (isPlainTerm(query, start, i)) {
+                    String word = query.substring(start, i);
+                    String replacement = word;
+                    if (fSnapshot.fTerms.find(word) < 0) {
+                        List<Suggestion> list = suggest(word, 1);
+                        if (!list.isEmpty()) {
+                            replacement = list.get(0).getTerm();
+                            corrected = true;
+                        }
+                    }
+                    buf.append(replacement);
+                    continue;
+                }
+            } else {
+                i++;
+            }
+            buf.append(query, start, i);
+        }
+        return corrected ? buf.toString() : null;
+    }
+
+    /**
+     * @return the maximal edit distance between words and suggestions
+     */
+    public int getMaxDistance() {
+        return fMaxDistance;
+    }
+
+    /**
+     * Sets the maximal edit distance between words and the corresponding
+     * suggestions.
+     *
+     * @param maxDistance the maximal distance to set
+     */
+    public void setMaxDistance(int maxDistance) {
+        fMaxDistance = maxDistance;
+    }
+
+    @Override
+    protected void setTerms(TermList terms) {
+        fSnapshot = new Snapshot(terms);
+    }
+
+    /**
+     * Returns spelling suggestions for the specified word. Suggestions are
+     * sorted by their edit distances and then by their weights (more frequent
+     * terms go first). If the word itself exists in the index then only terms
+     * more frequent than this word are returned.
+     *
+     * @param word the word to check
+     * @param count the maximal number of suggestions
+     * @return a list of suggestions
+     */
+    public List<Suggestion> suggest(String word, int count) {
+        Snapshot snapshot = fSnapshot;
+        TermList terms = snapshot.fTerms;
+        int maxDistance = fMaxDistance;
+        int minWeight = 0;
+        int wordPos = terms.find(word);
+        if (wordPos >= 0) {
+            minWeight = terms.getWeight(wordPos) + 1;
+        }
+
+        // Collects postings of all bigrams of the word
+        int[] grams = getGrams(word);
+        int[] cursors = new int[grams.length];
+        int[] ends = new int[grams.length];
+        int listCount = 0;
+        for (int gram : grams) {
+            int idx = snapshot.indexOf(gram);
+            if (idx >= 0) {
+                cursors[listCount] = snapshot.fOffsets[idx];
+                ends[listCount] = snapshot.fOffsets[idx + 1];
+                listCount++;
+            }
+        }
+
+        // Each edit operation changes at most three bigrams (transpositions)
+        int minShared = Math.max(1, grams.length - 3 * maxDistance);
+        List<Suggestion> result = new ArrayList<Suggestion>();
+        int[] postings = snapshot.fPostings;
+        while (true) {
+            int term = Integer.MAX_VALUE;
+            for (int i = 0; i < listCount; i++) {
+                if (cursors[i] < ends[i]) {
+                    term = Math.min(term, postings[cursors[i]]);
+                }
+            }
+            if (term == Integer.MAX_VALUE) {
+                break;
+            }
+            int shared = 0;
+            for (int i = 0; i < listCount; i++) {
+                if (cursors[i] < ends[i] && postings[cursors[i]] == term) {
+                    cursors[i]++;
+                    shared++;
+                }
+            }
+            if (shared < minShared || term == wordPos) {
+                continue;
+            }
+            int weight = terms.getWeight(term);
+            if (weight < minWeight) {
+                continue;
+            }
+            if (Math.abs(terms.getLength(term) - word.length()) > maxDistance) {
+                continue;
+            }
+            String str = terms.getTerm(term);
+            int distance = getDistance(word, str, maxDistance);
+            if (distance <= maxDistance) {
+                result.add(new Suggestion(str, weight, distance));
+            }
+        }
+        Collections.sort(result, new Comparator<Suggestion>() {
+            public int compare(Suggestion o1, Suggestion o2) {
+                if (o1.getDistance() != o2.getDistance()) {
+                    return o1.getDistance() - o2.getDistance();
+                }
+                if (o1.getWeight() != o2.getWeight()) {
+                    return o1.getWeight() > o2.getWeight() ? -1 : 1;
+                }
+                return o1.getTerm().compareTo(o2.getTerm());
+            }
+        });
+        if (result.size() > count) {
+            result = new ArrayList<Suggestion>(result.subList(0, count));
+        }
+        return result;
+    }
+
+}
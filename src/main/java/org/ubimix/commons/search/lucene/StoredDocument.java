@@ -0,0 +1,398 @@
+/**
+ *
+ */
+package org.ubimix.commons.search.lucene;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+
+import org.apache.lucene.document.CompressionTools;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.ubimix.commons.search.AbstractDocument;
+import org.ubimix.commons.search.IFieldConst;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * An immutable array-based view of the stored fields of a Lucene document.
+ * Instances of this type are built once per search hit. Field names and values
+ * are kept in two parallel arrays and an open-addressing table gives a
+ * constant-time access to individual values. Field names are interned (Lucene
+ * interns them on its side as well) so most look-ups are resolved by a simple
+ * reference comparison.
+ * <p>
+ * The internal {@link IFieldConst#FULL_CONTENT} field is accessible using the
+ * {@link #getValue(String)} method (it is used to highlight full content
+ * search results) but it is not returned by the {@link #getFields()} method.
+ * </p>
+ * <p>
+ * Binary stored fields contain compressed values (see
+ * {@link org.ubimix.commons.search.IDocumentIndexer.FieldDescription#isCompressed()}
+ * ). They are decompressed each time the corresponding value is requested;
+ * decompressed values are not kept, so the memory used by a document does not
+ * grow when it is shared through a {@link StoredDocumentCache}.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class StoredDocument extends AbstractDocument {
+
+    /**
+     * Read-only set of visible field names of this document.
+     */
+    private class FieldSet extends AbstractSet<String> {
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof String)) {
+                return false;
+            }
+            int idx = indexOf((String) o);
+            return idx >= 0 && idx < fFieldCount;
+        }
+
+        @Override
+        public int hashCode() {
+            return StoredDocument.this.hashCode();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+
+                private int fPos;
+
+                public boolean hasNext() {
+                    return fPos < fFieldCount;
+                }
+
+                public String next() {
+                    if (fPos >= fFieldCount) {
+                        throw new NoSuchElementException();
+                    }
+                    return fNames[fPos++];
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return fFieldCount;
+        }
+    }
+
+    /**
+     * Creates and returns a new document containing all stored fields of the
+     * given Lucene document. If the Lucene document contains multiple values
+     * for the same field then only the first one is used (the same behaviour
+     * as the {@link Document#get(String)} method).
+     *
+     * @param doc the Lucene document to transform
+     * @return a newly created document
+     */
+    public static StoredDocument newDocument(Document doc) {
+        List<Fieldable> list = doc.getFields();
+        int len = list.size();
+        String[] names = new String[len];
+        String[] values = new String[len];
+        byte[][] compressed = null;
+        int count = 0;
+        Fieldable fullContent = null;
+        for (Fieldable field : list) {
+            String name = field.name().intern();
+            if (name == IFieldConst.FULL_CONTENT) {
+                if (fullContent == null) {
+                    fullContent = field;
+                }
+                continue;
+            }
+            if (contains(names, count, name)) {
+                continue;
+            }
+            names[count] = name;
+            if (field.isBinary()) {
+                if (compressed == null) {
+                    compressed = new byte[len][];
+                }
+                compressed[count] = getBinaryValue(field);
+            } else {
+                values[count] = field.stringValue();
+            }
+            count++;
+        }
+        int fieldCount = count;
+        if (fullContent != null) {
+            names[count] = IFieldConst.FULL_CONTENT;
+            if (fullContent.isBinary()) {
+                if (compressed == null) {
+                    compressed = new byte[len][];
+                }
+                compressed[count] = getBinaryValue(fullContent);
+            } else {
+                values[count] = fullContent.stringValue();
+            }
+            count++;
+        }
+        return new StoredDocument(names, values, compressed, count, fieldCount);
+    }
+
+    private static byte[] getBinaryValue(Fieldable field) {
+        byte[] value = field.getBinaryValue();
+        int offset = field.getBinaryOffset();
+        int length = field.getBinaryLength();
+        if (offset == 0 && length == value.length) {
+            return value;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(value, offset, result, 0, length);
+        return result;
+    }
+
+    private static boolean contains(String[] names, int count, String name) {
+        for (int i = 0; i < count; i++) {
+            if (names[i] == name) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Compressed values of fields; it is <code>null</code> if there is no
+     * compressed fields.
+     */
+    private final byte[][] fCompressed;
+
+    /**
+     * The number of fields returned by the {@link #getFields()} method. All
+     * other fields are hidden.
+     */
+    private final int fFieldCount;
+
+    private Set<String> fFieldSet;
+
+    private int fHashCode;
+
+    private final String[] fNames;
+
+    /**
+     * Open-addressing table containing field positions (shifted by one; zero
+     * means an empty slot).
+     */
+    private final int[] fSlots;
+
+    private final String[] fValues;
+
+    /**
+     * @param names interned field names
+     * @param values field values
+     * @param count the total number of fields
+     * @param fieldCount the number of visible fields; hidden fields should be
+     *        placed at the end of arrays
+     */
+    protected StoredDocument(
+        String[] names,
+        String[] values,
+        int count,
+        int fieldCount) {
+        this(names, values, null, count, fieldCount);
+    }
+
+    /**
+     * @param names interned field names
+     * @param values field values
+     * @param compressed compressed field values; it could be
+     *        <code>null</code>
+     * @param count the total number of fields
+     * @param fieldCount the number of visible fields; hidden fields should be
+     *        placed at the end of arrays
+     */
+    protected StoredDocument(
+        String[] names,
+        String[] values,
+        byte[][] compressed,
+        int count,
+        int fieldCount) {
+        fNames = trim(names, count);
+        fValues = trim(values, count);
+        fCompressed = trim(compressed, count);
+        fFieldCount = fieldCount;
+        int size = 2;
+        while (size < count * 2) {
+            size <<= 1;
+        }
+        fSlots = new int[size];
+        int mask = size - 1;
+        int hashCode = 0;
+        for (int i = 0; i < count; i++) {
+            String name = fNames[i];
+            int pos = hash(name) & mask;
+            while (fSlots[pos] != 0) {
+                pos = (pos + 1) & mask;
+            }
+            fSlots[pos] = i + 1;
+            if (i < fieldCount) {
+                hashCode += name.hashCode();
+            }
+        }
+        fHashCode = hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj instanceof StoredDocument) {
+            StoredDocument o = (StoredDocument) obj;
+            if (fHashCode != o.fHashCode || fFieldCount != o.fFieldCount) {
+                return false;
+            }
+        }
+        return super.equals(obj);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocument#getFields()
+     */
+    public Set<String> getFields() throws SearchException {
+        if (fFieldSet == null) {
+            fFieldSet = new FieldSet();
+        }
+        return fFieldSet;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocument#getValue(java.lang.String)
+     */
+    public String getValue(String field) throws SearchException {
+        int idx = indexOf(field);
+        if (idx < 0) {
+            return null;
+        }
+        String value = fValues[idx];
+        if (value == null && fCompressed != null) {
+            byte[] data = fCompressed[idx];
+            if (data != null) {
+                try {
+                    value = CompressionTools.decompressString(data);
+                } catch (DataFormatException e) {
+                    throw new SearchException("Can not decompress the '"
+                        + field
+                        + "' field.", e);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the size of stored values of this document as they are stored
+     * in the index: text values are counted by the length of their UTF-8
+     * representation and compressed values by the size of their compressed
+     * data.
+     *
+     * @return the size of stored values in bytes
+     */
+    public long getStoredBytes() {
+        long size = 0;
+        for (int i = 0; i < fValues.length; i++) {
+            String value = fValues[i];
+            if (value != null) {
+                size += SearchProfile.getUTF8Length(value);
+            } else if (fCompressed != null && fCompressed[i] != null) {
+                size += fCompressed[i].length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns an estimation of the memory size of stored values of this
+     * document (two bytes per character). Compressed values are counted by the
+     * size of their compressed data. This size does not change when values are
+     * requested.
+     *
+     * @return the size of stored values in bytes
+     */
+    public long getStoredSize() {
+        long size = 0;
+        for (int i = 0; i < fValues.length; i++) {
+            String value = fValues[i];
+            if (value != null) {
+                size += value.length() * 2;
+            } else if (fCompressed != null && fCompressed[i] != null) {
+                size += fCompressed[i].length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the hash code of this document. It is the same as the hash code
+     * of the field name set (see {@link AbstractDocument#hashCode()}) but it is
+     * calculated only once.
+     */
+    @Override
+    public int hashCode() {
+        return fHashCode;
+    }
+
+    /**
+     * Returns the position of the specified field in the internal arrays or
+     * <code>-1</code> if there is no such a field.
+     *
+     * @param field the name of the field
+     * @return the position of the field
+     */
+    private int indexOf(String field) {
+        if (field == null) {
+            return -1;
+        }
+        int mask = fSlots.length - 1;
+        int pos = hash(field) & mask;
+        while (true) {
+            int slot = fSlots[pos];
+            if (slot == 0) {
+                return -1;
+            }
+            String name = fNames[slot - 1];
+            if (name == field || name.equals(field)) {
+                return slot - 1;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    private static byte[][] trim(byte[][] array, int count) {
+        if (array == null || array.length == count) {
+            return array;
+        }
+        byte[][] result = new byte[count][];
+        System.arraycopy(array, 0, result, 0, count);
+        return result;
+    }
+
+    private static String[] trim(String[] array, int count) {
+        if (array.length == count) {
+            return array;
+        }
+        String[] result = new String[count];
+        System.arraycopy(array, 0, result, 0, count);
+        return result;
+    }
+
+}
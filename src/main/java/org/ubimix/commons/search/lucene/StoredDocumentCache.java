@@ -0,0 +1,313 @@
+package org.ubimix.commons.search.lucene;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.ReaderUtil;
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IFieldConst;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * A LRU cache of stored fields of found documents. Documents are cached by
+ * index segments: keys are the core key of a segment (see
+ * {@link IndexReader#getCoreCacheKey()}) and the internal identifier of the
+ * document in this segment. Stored fields of a segment never change, so cached
+ * documents remain valid when a reader is re-opened; only entries of segments
+ * which are not used by the new reader anymore (merged or deleted segments)
+ * are removed.
+ * <p>
+ * The size of the cache is limited by the total weight of documents (an
+ * estimation of the memory used by their stored values, see
+ * {@link StoredDocument#getStoredSize()}); the least recently used documents
+ * are evicted first.
+ * </p>
+ * <p>
+ * Usage:
+ * </p>
+ *
+ * <pre>
+ * DocumentSearcher searcher = new DocumentSearcher(dir, analyzer);
+ * searcher.setDocumentCache(new StoredDocumentCache(64 * 1024 * 1024));
+ * </pre>
+ * <p>
+ * Each searcher should have its own cache.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class StoredDocumentCache implements IReaderListener {
+
+    /**
+     * Keys of cached documents.
+     */
+    private static class Key {
+
+        private final Object fCore;
+
+        private final int fDocId;
+
+        public Key(Object core, int docId) {
+            fCore = core;
+            fDocId = docId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key o = (Key) obj;
+            return fDocId == o.fDocId && fCore == o.fCore;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(fCore) * 31 + fDocId;
+        }
+    }
+
+    /**
+     * A cached document with its weight.
+     */
+    private static class Entry {
+
+        private final IDocument fDocument;
+
+        private final long fWeight;
+
+        public Entry(IDocument document, long weight) {
+            fDocument = document;
+            fWeight = weight;
+        }
+    }
+
+    /**
+     * Segments of a top-level reader with their first document identifiers.
+     */
+    private static class Segments {
+
+        private final IndexReader fReader;
+
+        private final IndexReader[] fSegments;
+
+        private final int[] fStarts;
+
+        public Segments(IndexReader reader) {
+            fReader = reader;
+            List<IndexReader> list = new ArrayList<IndexReader>();
+            ReaderUtil.gatherSubReaders(list, reader);
+            fSegments = list.toArray(new IndexReader[list.size()]);
+            fStarts = new int[fSegments.length];
+            int start = 0;
+            for (int i = 0; i < fSegments.length; i++) {
+                fStarts[i] = start;
+                start += fSegments[i].maxDoc();
+            }
+        }
+
+        public Key getKey(int docId) {
+            int idx = ReaderUtil.subIndex(docId, fStarts);
+            return new Key(fSegments[idx].getCoreCacheKey(), docId
+                - fStarts[idx]);
+        }
+    }
+
+    /**
+     * An estimation of the memory used by one entry of the cache (in bytes).
+     */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    /**
+     * Returns an estimation of the memory used by stored values of the given
+     * document (two bytes per character for documents which are not
+     * {@link StoredDocument} instances).
+     */
+    private static long getWeight(IDocument doc) throws SearchException {
+        if (doc instanceof StoredDocument) {
+            return ((StoredDocument) doc).getStoredSize();
+        }
+        long size = 0;
+        boolean fullContent = false;
+        for (String field : doc.getFields()) {
+            String value = doc.getValue(field);
+            if (value != null) {
+                size += value.length();
+            }
+            fullContent |= IFieldConst.FULL_CONTENT.equals(field);
+        }
+        if (!fullContent) {
+            String value = doc.getValue(IFieldConst.FULL_CONTENT);
+            if (value != null) {
+                size += value.length();
+            }
+        }
+        return size * 2;
+    }
+
+    private final Map<Key, Entry> fEntries = new LinkedHashMap<Key, Entry>(
+        16,
+        0.75f,
+        true);
+
+    private long fHitCount;
+
+    /**
+     * Segments of the last used reader.
+     */
+    private volatile Segments fLastSegments;
+
+    private final long fMaxWeight;
+
+    private long fMissCount;
+
+    private long fWeight;
+
+    /**
+     * @param maxWeight the maximal total weight of cached documents in bytes
+     */
+    public StoredDocumentCache(long maxWeight) {
+        fMaxWeight = maxWeight;
+    }
+
+    /**
+     * Removes all cached documents.
+     */
+    public synchronized void clear() {
+        fEntries.clear();
+        fWeight = 0;
+    }
+
+    /**
+     * Returns a cached document.
+     *
+     * @param reader the top-level reader used to search the document
+     * @param docId the internal identifier of the document in this reader
+     * @return the cached document or <code>null</code> if the document is not
+     *         in the cache
+     */
+    public IDocument get(IndexReader reader, int docId) {
+        Key key = getSegments(reader).getKey(docId);
+        synchronized (this) {
+            Entry entry = fEntries.get(key);
+            if (entry == null) {
+                fMissCount++;
+                return null;
+            }
+            fHitCount++;
+            return entry.fDocument;
+        }
+    }
+
+    /**
+     * @return the number of requests of cached documents
+     */
+    public synchronized long getHitCount() {
+        return fHitCount;
+    }
+
+    /**
+     * @return the maximal total weight of cached documents in bytes
+     */
+    public long getMaxWeight() {
+        return fMaxWeight;
+    }
+
+    /**
+     * @return the number of requests of documents missing in the cache
+     */
+    public synchronized long getMissCount() {
+        return fMissCount;
+    }
+
+    private Segments getSegments(IndexReader reader) {
+        Segments segments = fLastSegments;
+        if (segments == null || segments.fReader != reader) {
+            segments = new Segments(reader);
+            fLastSegments = segments;
+        }
+        return segments;
+    }
+
+    /**
+     * @return the number of cached documents
+     */
+    public synchronized int getSize() {
+        return fEntries.size();
+    }
+
+    /**
+     * @return the current total weight of cached documents in bytes
+     */
+    public synchronized long getWeight() {
+        return fWeight;
+    }
+
+    /**
+     * Removes documents of segments which are not used by the new reader.
+     *
+     * @see org.ubimix.commons.search.lucene.IReaderListener#onReaderOpen(org.apache.lucene.index.IndexReader)
+     */
+    public void onReaderOpen(IndexReader reader) throws SearchException {
+        Segments segments = new Segments(reader);
+        Map<Object, Boolean> cores = new IdentityHashMap<Object, Boolean>();
+        for (IndexReader segment : segments.fSegments) {
+            cores.put(segment.getCoreCacheKey(), Boolean.TRUE);
+        }
+        synchronized (this) {
+            Iterator<Map.Entry<Key, Entry>> iterator = fEntries
+                .entrySet()
+                .iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Entry> e = iterator.next();
+                if (!cores.containsKey(e.getKey().fCore)) {
+                    iterator.remove();
+                    fWeight -= e.getValue().fWeight;
+                }
+            }
+        }
+        fLastSegments = segments;
+    }
+
+    /**
+     * Puts the specified document in the cache.
+     *
+     * @param reader the top-level reader used to search the document
+     * @param docId the internal identifier of the document in this reader
+     * @param doc the document to put
+     */
+    public void put(IndexReader reader, int docId, IDocument doc) {
+        long weight;
+        try {
+            weight = getWeight(doc) + ENTRY_OVERHEAD;
+        } catch (SearchException e) {
+            return;
+        }
+        if (weight > fMaxWeight) {
+            return;
+        }
+        Key key = getSegments(reader).getKey(docId);
+        synchronized (this) {
+            Entry prev = fEntries.put(key, new Entry(doc, weight));
+            if (prev != null) {
+                fWeight -= prev.fWeight;
+            }
+            fWeight += weight;
+            Iterator<Entry> iterator = fEntries.values().iterator();
+            while (fWeight > fMaxWeight && iterator.hasNext()) {
+                Entry entry = iterator.next();
+                iterator.remove();
+                fWeight -= entry.fWeight;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,401 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+
+/**
+ * A compact immutable sorted list of terms with their weights. All term
+ * characters are stored in one shared array so each term costs only two
+ * integers on top of its characters. Terms are sorted in the natural
+ * {@link String} order which is the same order as the one used by Lucene term
+ * dictionaries.
+ *
+ * @author kotelnikov
+ */
+public class TermList {
+
+    /**
+     * An empty term list.
+     */
+    public final static TermList EMPTY = new TermList(
+        new char[0],
+        new int[] { 0 },
+        new int[0],
+        0);
+
+    /**
+     * Loads terms of the specified fields from the given reader. If the same
+     * term appears in multiple fields then weights are summed up. Weights of
+     * terms are document frequencies returned by the reader.
+     *
+     * @param reader the reader used to load terms
+     * @param fields fields to load
+     * @return a newly created term list
+     * @throws IOException
+     */
+    public static TermList load(IndexReader reader, Collection<String> fields)
+        throws IOException {
+        List<TermList> lists = new ArrayList<TermList>();
+        for (String field : fields) {
+            lists.add(load(reader, field));
+        }
+        return merge(lists);
+    }
+
+    /**
+     * Loads all terms of the specified field from the given reader.
+     *
+     * @param reader the reader used to load terms
+     * @param field the field to load
+     * @return a newly created term list
+     * @throws IOException
+     */
+    public static TermList load(IndexReader reader, String field)
+        throws IOException {
+        Builder builder = new Builder();
+        TermEnum terms = reader.terms(new Term(field, ""));
+        try {
+            do {
+                Term term = terms.term();
+                if (term == null || !field.equals(term.field())) {
+                    break;
+                }
+                builder.add(term.text(), terms.docFreq());
+            } while (terms.next());
+        } finally {
+            terms.close();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Merges multiple sorted term lists into one list. Weights of terms
+     * present in multiple lists are summed up.
+     *
+     * @param lists the lists to merge
+     * @return the merged term list
+     */
+    public static TermList merge(List<TermList> lists) {
+        if (lists.isEmpty()) {
+            return EMPTY;
+        }
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+        TermList[] array = lists.toArray(new TermList[lists.size()]);
+        int[] positions = new int[array.length];
+        int size = 0;
+        for (TermList list : array) {
+            size += list.size();
+        }
+        Builder builder = new Builder(size);
+        while (true) {
+            // Searches the smallest current term
+            int min = -1;
+            for (int i = 0; i < array.length; i++) {
+                if (positions[i] >= array[i].size()) {
+                    continue;
+                }
+                if (min < 0
+                    || array[i].compare(
+                        positions[i],
+                        array[min],
+                        positions[min]) < 0) {
+                    min = i;
+                }
+            }
+            if (min < 0) {
+                break;
+            }
+            TermList first = array[min];
+            int firstPos = positions[min];
+            int weight = 0;
+            for (int i = min; i < array.length; i++) {
+                if (positions[i] < array[i].size()
+                    && array[i].compare(positions[i], first, firstPos) == 0) {
+                    weight += array[i].getWeight(positions[i]);
+                    positions[i]++;
+                }
+            }
+            builder.add(first, firstPos, weight);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builders are used to create new term lists. Terms should be added in
+     * the sorted order.
+     */
+    public static class Builder {
+
+        private char[] fChars;
+
+        private int fCharsLength;
+
+        private int[] fOffsets;
+
+        private int fSize;
+
+        private int[] fWeights;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int size) {
+            size = Math.max(size, 1);
+            fChars = new char[size * 8];
+            fOffsets = new int[size + 1];
+            fWeights = new int[size];
+        }
+
+        private void ensureCapacity(int charCount) {
+            if (fSize + 1 >= fOffsets.length) {
+                int len = fOffsets.length + (fOffsets.length >> 1) + 1;
+                fOffsets = copyOf(fOffsets, len);
+                fWeights = copyOf(fWeights, len);
+            }
+            if (fCharsLength + charCount > fChars.length) {
+                int len = Math.max(
+                    fChars.length + (fChars.length >> 1),
+                    fCharsLength + charCount);
+                char[] chars = new char[len];
+                System.arraycopy(fChars, 0, chars, 0, fCharsLength);
+                fChars = chars;
+            }
+        }
+
+        /**
+         * Adds a new term to the list.
+         *
+         * @param term the term to add
+         * @param weight the weight of the term
+         * @return this builder
+         */
+        public Builder add(String term, int weight) {
+            int len = term.length();
+            ensureCapacity(len);
+            term.getChars(0, len, fChars, fCharsLength);
+            addOffset(len, weight);
+            return this;
+        }
+
+        private Builder add(TermList list, int pos, int weight) {
+            int start = list.fOffsets[pos];
+            int len = list.fOffsets[pos + 1] - start;
+            ensureCapacity(len);
+            System.arraycopy(list.fChars, start, fChars, fCharsLength, len);
+            addOffset(len, weight);
+            return this;
+        }
+
+        private void addOffset(int len, int weight) {
+            fOffsets[fSize] = fCharsLength;
+            fWeights[fSize] = weight;
+            fCharsLength += len;
+            fSize++;
+            fOffsets[fSize] = fCharsLength;
+        }
+
+        /**
+         * Returns a new term list containing all added terms.
+         *
+         * @return a new term list
+         */
+        public TermList build() {
+            char[] chars = new char[fCharsLength];
+            System.arraycopy(fChars, 0, chars, 0, fCharsLength);
+            return new TermList(
+                chars,
+                copyOf(fOffsets, fSize + 1),
+                copyOf(fWeights, fSize),
+                fSize);
+        }
+    }
+
+    private static int[] copyOf(int[] array, int len) {
+        int[] result = new int[len];
+        System.arraycopy(array, 0, result, 0, Math.min(len, array.length));
+        return result;
+    }
+
+    private final char[] fChars;
+
+    private final int[] fOffsets;
+
+    private final int fSize;
+
+    private final int[] fWeights;
+
+    private TermList(char[] chars, int[] offsets, int[] weights, int size) {
+        fChars = chars;
+        fOffsets = offsets;
+        fWeights = weights;
+        fSize = size;
+    }
+
+    private int compare(int pos, TermList list, int listPos) {
+        int first = fOffsets[pos];
+        int firstEnd = fOffsets[pos + 1];
+        int second = list.fOffsets[listPos];
+        int secondEnd = list.fOffsets[listPos + 1];
+        while (first < firstEnd && second < secondEnd) {
+            char a = fChars[first++];
+            char b = list.fChars[second++];
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return (firstEnd - first) - (secondEnd - second);
+    }
+
+    /**
+     * Compares the term in the specified position with the given prefix. This
+     * method returns zero if the term starts with the prefix.
+     */
+    private int comparePrefix(int pos, String prefix) {
+        int i = fOffsets[pos];
+        int end = fOffsets[pos + 1];
+        int len = prefix.length();
+        for (int j = 0; j < len; j++) {
+            if (i >= end) {
+                return -1;
+            }
+            char a = fChars[i++];
+            char b = prefix.charAt(j);
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the position of the specified term or <code>-1</code> if there
+     * is no such a term in this list.
+     *
+     * @param term the term to search
+     * @return the position of the term
+     */
+    public int find(String term) {
+        int pos = getPrefixStart(term);
+        if (pos < fSize && getLength(pos) == term.length()) {
+            if (comparePrefix(pos, term) == 0) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of characters in the term in the specified position.
+     *
+     * @param pos the position of the term
+     * @return the length of the term
+     */
+    public int getLength(int pos) {
+        return fOffsets[pos + 1] - fOffsets[pos];
+    }
+
+    /**
+     * Returns the position of the first term which is not less than the
+     * specified prefix.
+     *
+     * @param prefix the prefix to search
+     * @return the position of the first term starting with the prefix (or
+     *         following it)
+     */
+    public int getPrefixStart(String prefix) {
+        int low = 0;
+        int high = fSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareTerm(mid, prefix);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the position following the last term starting with the
+     * specified prefix.
+     *
+     * @param prefix the prefix to search
+     * @param start the position of the first term with this prefix
+     * @return the position following the last term with the prefix
+     */
+    public int getPrefixEnd(String prefix, int start) {
+        int low = start;
+        int high = fSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(mid, prefix) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compareTerm(int pos, String term) {
+        int cmp = comparePrefix(pos, term);
+        if (cmp == 0) {
+            cmp = getLength(pos) - term.length();
+        }
+        return cmp;
+    }
+
+    /**
+     * Returns the term in the specified position.
+     *
+     * @param pos the position of the term
+     * @return the term
+     */
+    public String getTerm(int pos) {
+        int start = fOffsets[pos];
+        return new String(fChars, start, fOffsets[pos + 1] - start);
+    }
+
+    /**
+     * Returns the weight of the term in the specified position.
+     *
+     * @param pos the position of the term
+     * @return the weight of the term
+     */
+    public int getWeight(int pos) {
+        return fWeights[pos];
+    }
+
+    /**
+     * Returns the approximative size of this list in memory (in bytes).
+     *
+     * @return the size of this list in memory
+     */
+    public long getMemorySize() {
+        return fChars.length * 2L + fOffsets.length * 4L + fWeights.length * 4L;
+    }
+
+    /**
+     * @return the number of terms in this list
+     */
+    public int size() {
+        return fSize;
+    }
+
+    @Override
+    public String toString() {
+        return "TermList(" + fSize + ")";
+    }
+
+}
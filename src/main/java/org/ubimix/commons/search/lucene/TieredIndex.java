@@ -0,0 +1,925 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.FilterIndexReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.ReaderUtil;
+import org.apache.lucene.util.Version;
+import org.ubimix.commons.search.DocumentProvider;
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IDocumentIndexer;
+import org.ubimix.commons.search.IDocumentProvider;
+import org.ubimix.commons.search.IDocumentSearcher;
+import org.ubimix.commons.search.IFieldConst;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * A two-tier index. New documents are written to a small in-memory tier and
+ * they become searchable immediately (using near-real-time readers, without
+ * commits). When the memory tier grows over the limit (see
+ * {@link #setMaxMemoryDocuments(int)}) it is merged into the disk tier in bulk
+ * by a background thread; a new memory tier receives writes meanwhile. So the
+ * latency of writes does not depend on commits and segment merges of the big
+ * disk index.
+ * <p>
+ * Searches are executed over all tiers. Documents of newer tiers override
+ * documents of older tiers with the same identifiers: each time when a
+ * document is written to the memory tier, its identifiers are deleted (without
+ * commit) from all older tiers.
+ * </p>
+ * <p>
+ * A memory tier is copied to the disk tier without blocking writes. Searches
+ * use the disk tier as it was before the merge (with all later deletions)
+ * until the copy is finished; then the merged tier is replaced by its copy in
+ * one step.
+ * </p>
+ * <p>
+ * The disk tier is committed after each merge and when the index is closed;
+ * documents of the memory tier are lost if the process is stopped without
+ * closing the index.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class TieredIndex implements IDocumentIndexer, IDocumentSearcher {
+
+    /**
+     * A segment reader hiding documents deleted after it was opened.
+     */
+    private static class HidingReader extends FilterIndexReader {
+
+        private final OpenBitSet fHidden;
+
+        private final int fNumDocs;
+
+        public HidingReader(IndexReader segment, OpenBitSet hidden) {
+            super(segment);
+            fHidden = hidden;
+            int numDocs = segment.numDocs();
+            for (int i = hidden.nextSetBit(0); i >= 0; i = hidden
+                .nextSetBit(i + 1)) {
+                if (!segment.isDeleted(i)) {
+                    numDocs--;
+                }
+            }
+            fNumDocs = numDocs;
+        }
+
+        @Override
+        public Object getDeletesCacheKey() {
+            return this;
+        }
+
+        @Override
+        public IndexReader[] getSequentialSubReaders() {
+            return null;
+        }
+
+        @Override
+        public boolean hasDeletions() {
+            return fNumDocs < maxDoc();
+        }
+
+        @Override
+        public boolean isDeleted(int n) {
+            return fHidden.get(n) || in.isDeleted(n);
+        }
+
+        @Override
+        public int numDocs() {
+            return fNumDocs;
+        }
+
+        @Override
+        public TermDocs termDocs() throws IOException {
+            return new HidingTermPositions(in.termDocs(), fHidden);
+        }
+
+        @Override
+        public TermDocs termDocs(Term term) throws IOException {
+            TermDocs termDocs = termDocs();
+            termDocs.seek(term);
+            return termDocs;
+        }
+
+        @Override
+        public TermPositions termPositions() throws IOException {
+            return new HidingTermPositions(in.termPositions(), fHidden);
+        }
+    }
+
+    /**
+     * Skips hidden documents of a {@link HidingReader}. Position methods are
+     * available only if the wrapped instance is a {@link TermPositions}.
+     */
+    private static class HidingTermPositions implements TermPositions {
+
+        private final OpenBitSet fHidden;
+
+        private final TermDocs fTermDocs;
+
+        public HidingTermPositions(TermDocs termDocs, OpenBitSet hidden) {
+            fTermDocs = termDocs;
+            fHidden = hidden;
+        }
+
+        public void close() throws IOException {
+            fTermDocs.close();
+        }
+
+        public int doc() {
+            return fTermDocs.doc();
+        }
+
+        public int freq() {
+            return fTermDocs.freq();
+        }
+
+        public byte[] getPayload(byte[] data, int offset) throws IOException {
+            return ((TermPositions) fTermDocs).getPayload(data, offset);
+        }
+
+        public int getPayloadLength() {
+            return ((TermPositions) fTermDocs).getPayloadLength();
+        }
+
+        public boolean isPayloadAvailable() {
+            return ((TermPositions) fTermDocs).isPayloadAvailable();
+        }
+
+        public boolean next() throws IOException {
+            while (fTermDocs.next()) {
+                if (!fHidden.get(fTermDocs.doc())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public int nextPosition() throws IOException {
+            return ((TermPositions) fTermDocs).nextPosition();
+        }
+
+        public int read(int[] docs, int[] freqs) throws IOException {
+            int count = 0;
+            while (count < docs.length && next()) {
+                docs[count] = fTermDocs.doc();
+                freqs[count] = fTermDocs.freq();
+                count++;
+            }
+            return count;
+        }
+
+        public void seek(Term term) throws IOException {
+            fTermDocs.seek(term);
+        }
+
+        public void seek(TermEnum termEnum) throws IOException {
+            fTermDocs.seek(termEnum);
+        }
+
+        public boolean skipTo(int target) throws IOException {
+            if (!fTermDocs.skipTo(target)) {
+                return false;
+            }
+            return !fHidden.get(fTermDocs.doc()) || next();
+        }
+    }
+
+    /**
+     * An in-memory tier of the index.
+     */
+    private static class MemoryTier {
+
+        private final Directory fDir;
+
+        /**
+         * Queries deleted from older tiers while the previous memory tier is
+         * merged. They are deleted again from the disk tier when the merge is
+         * finished.
+         */
+        private final Set<Query> fDeletions = new LinkedHashSet<Query>();
+
+        private final DocumentIndexer fIndexer;
+
+        private int fSize;
+
+        public MemoryTier(Directory dir, Analyzer analyzer) {
+            fDir = dir;
+            fIndexer = new DocumentIndexer(dir, analyzer);
+        }
+
+        public void close() throws IOException {
+            fIndexer.getWriter().close();
+            fDir.close();
+        }
+
+        public IndexWriter getWriter() {
+            return fIndexer.getWriter();
+        }
+    }
+
+    /**
+     * The disk tier as it was before a merge. Searches use it until the merged
+     * memory tier is added to the disk tier; documents deleted from the disk
+     * tier in the meantime are hidden.
+     */
+    private static class MergeSnapshot {
+
+        private final OpenBitSet[] fHidden;
+
+        private final IndexReader fReader;
+
+        private final IndexReader[] fSegments;
+
+        /**
+         * This flag is <code>true</code> if hidden documents are used by a
+         * reader; they are copied before the next change.
+         */
+        private boolean fShared;
+
+        public MergeSnapshot(IndexReader reader) {
+            fReader = reader;
+            List<IndexReader> list = new ArrayList<IndexReader>();
+            ReaderUtil.gatherSubReaders(list, reader);
+            fSegments = list.toArray(new IndexReader[list.size()]);
+            fHidden = new OpenBitSet[fSegments.length];
+            for (int i = 0; i < fSegments.length; i++) {
+                fHidden[i] = new OpenBitSet(fSegments[i].maxDoc());
+            }
+        }
+
+        public void close() throws IOException {
+            fReader.close();
+        }
+
+        /**
+         * Hides documents matching the specified query.
+         */
+        public void hide(Query query) throws IOException {
+            if (fShared) {
+                for (int i = 0; i < fHidden.length; i++) {
+                    fHidden[i] = (OpenBitSet) fHidden[i].clone();
+                }
+                fShared = false;
+            }
+            for (int i = 0; i < fSegments.length; i++) {
+                final OpenBitSet hidden = fHidden[i];
+                IndexSearcher searcher = new IndexSearcher(fSegments[i]);
+                searcher.search(query, new Collector() {
+
+                    private int fDocBase;
+
+                    @Override
+                    public boolean acceptsDocsOutOfOrder() {
+                        return true;
+                    }
+
+                    @Override
+                    public void collect(int doc) {
+                        hidden.set(fDocBase + doc);
+                    }
+
+                    @Override
+                    public void setNextReader(IndexReader reader, int docBase) {
+                        fDocBase = docBase;
+                    }
+
+                    @Override
+                    public void setScorer(Scorer scorer) {
+                    }
+                });
+            }
+        }
+
+        /**
+         * Returns a new reader of this snapshot. It should be closed by the
+         * caller.
+         */
+        public IndexReader newReader() {
+            IndexReader[] readers = new IndexReader[fSegments.length];
+            for (int i = 0; i < fSegments.length; i++) {
+                fSegments[i].incRef();
+                readers[i] = new HidingReader(fSegments[i], fHidden[i]);
+            }
+            fShared = true;
+            return new MultiReader(readers, true);
+        }
+    }
+
+    /**
+     * Searches in readers of all tiers.
+     */
+    private class TieredSearcher extends DocumentSearcher {
+
+        /**
+         * The tier generation of the current reader.
+         */
+        private long fReaderGeneration = -1;
+
+        public TieredSearcher(Directory dir, Analyzer analyzer)
+            throws SearchException {
+            super(dir, analyzer);
+        }
+
+        /**
+         * Readers of all tiers are opened from writers using the schema of
+         * the disk tier.
+         */
+        @Override
+        protected IndexSchema loadSchema(IndexReader reader) {
+            return fDisk.getSchema();
+        }
+
+        @Override
+        protected IndexReader openReader() throws IOException {
+            synchronized (fLock) {
+                List<IndexReader> readers = new ArrayList<IndexReader>();
+                try {
+                    if (fMergeSnapshot != null) {
+                        readers.add(fMergeSnapshot.newReader());
+                    } else {
+                        readers.add(IndexReader.open(fDisk.getWriter(), true));
+                    }
+                    if (fMerging != null) {
+                        readers.add(IndexReader.open(
+                            fMerging.getWriter(),
+                            true));
+                    }
+                    readers.add(IndexReader.open(fActive.getWriter(), true));
+                } catch (IOException e) {
+                    for (IndexReader reader : readers) {
+                        reader.close();
+                    }
+                    throw e;
+                }
+                fReaderGeneration = fGeneration;
+                return new MultiReader(
+                    readers.toArray(new IndexReader[readers.size()]),
+                    true);
+            }
+        }
+
+        @Override
+        protected IndexReader reopenReader(IndexReader current)
+            throws IOException {
+            synchronized (fLock) {
+                if (fReaderGeneration != fGeneration || fMergeSnapshot != null) {
+                    // The list of tiers was changed or the disk tier is
+                    // replaced by its snapshot which can not be re-opened
+                    return openReader();
+                }
+                return super.reopenReader(current);
+            }
+        }
+    }
+
+    private final static Logger log = Logger.getLogger(TieredIndex.class
+        .getName());
+
+    /**
+     * The default maximal number of documents in the memory tier.
+     */
+    public static final int DEFAULT_MAX_MEMORY_DOCUMENTS = 10000;
+
+    private static SearchException handleError(String msg, Throwable e) {
+        log.log(Level.WARNING, msg, e);
+        if (e instanceof SearchException) {
+            return (SearchException) e;
+        }
+        return new SearchException(msg, e);
+    }
+
+    /**
+     * The memory tier receiving new documents.
+     */
+    private MemoryTier fActive;
+
+    private final Analyzer fAnalyzer;
+
+    private boolean fClosed;
+
+    private final DocumentIndexer fDisk;
+
+    /**
+     * This executor is used to merge memory tiers in background.
+     */
+    private final ExecutorService fExecutor;
+
+    /**
+     * The generation of the list of tiers. It is incremented each time when
+     * tiers are added or removed.
+     */
+    private long fGeneration;
+
+    /**
+     * This lock protects the list of tiers and serializes writes.
+     */
+    private final Object fLock = new Object();
+
+    private int fMaxMemoryDocuments = DEFAULT_MAX_MEMORY_DOCUMENTS;
+
+    /**
+     * This flag is <code>true</code> if a merge task is submitted to the
+     * executor.
+     */
+    private boolean fMergeScheduled;
+
+    /**
+     * The memory tier which is merged into the disk tier now; it is still
+     * visible for searches until the merge is finished.
+     */
+    private MemoryTier fMerging;
+
+    /**
+     * The disk tier used by searches while a memory tier is merged.
+     */
+    private MergeSnapshot fMergeSnapshot;
+
+    /**
+     * This lock serializes merges.
+     */
+    private final Object fMergeLock = new Object();
+
+    private final TieredSearcher fSearcher;
+
+    /**
+     * @param dir the directory of the disk tier
+     * @param analyzer the analyzer used to index and search documents
+     * @throws SearchException
+     */
+    public TieredIndex(Directory dir, Analyzer analyzer) throws SearchException {
+        fAnalyzer = analyzer;
+        fDisk = new DocumentIndexer(dir, analyzer);
+        fActive = newMemoryTier();
+        fSearcher = new TieredSearcher(dir, analyzer);
+        fExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TieredIndex-merge");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Checks that this index is not closed. Should be called under the lock.
+     */
+    private void checkOpen() throws SearchException {
+        if (fClosed) {
+            throw new SearchException("The index is closed.");
+        }
+    }
+
+    /**
+     * Merges the memory tier into the disk tier and closes this index.
+     *
+     * @see org.ubimix.commons.search.IDocumentIndexer#close()
+     */
+    public void close() throws SearchException {
+        synchronized (fLock) {
+            if (fClosed) {
+                return;
+            }
+            fClosed = true;
+        }
+        try {
+            try {
+                fExecutor.shutdown();
+                fExecutor.awaitTermination(
+                    Long.MAX_VALUE,
+                    TimeUnit.MILLISECONDS);
+                merge();
+            } finally {
+                try {
+                    fSearcher.close();
+                } finally {
+                    try {
+                        fActive.close();
+                    } finally {
+                        fDisk.close();
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            throw handleError("Can not close the index.", t);
+        }
+    }
+
+    /**
+     * Removes documents with the specified identifiers from all tiers. The
+     * removed documents disappear from search results immediately.
+     *
+     * @see org.ubimix.commons.search.IDocumentIndexer#delete(java.lang.String,
+     *      java.lang.Iterable)
+     */
+    public void delete(String field, Iterable<String> identifiers)
+        throws SearchException {
+        try {
+            Term prototype = new Term(field, "");
+            List<Term> list = new ArrayList<Term>();
+            for (String identifier : identifiers) {
+                if (identifier != null) {
+                    list.add(prototype.createTerm(identifier));
+                }
+            }
+            Term[] terms = list.toArray(new Term[list.size()]);
+            synchronized (fLock) {
+                checkOpen();
+                fActive.getWriter().deleteDocuments(terms);
+                fDisk.getWriter().deleteDocuments(terms);
+                if (fMerging != null) {
+                    fMerging.getWriter().deleteDocuments(terms);
+                    for (Term term : terms) {
+                        addMergeDeletion(new TermQuery(term));
+                    }
+                }
+            }
+            fSearcher.refresh();
+        } catch (Throwable t) {
+            throw handleError("Can not delete documents.", t);
+        }
+    }
+
+    /**
+     * Removes documents matching the specified query from all tiers.
+     *
+     * @see org.ubimix.commons.search.IDocumentIndexer#delete(java.lang.String)
+     */
+    public void delete(String query) throws SearchException {
+        try {
+            QueryParser parser = new DocumentQueryParser(
+                IFieldConst.FULL_CONTENT,
+                fDisk.getQueryAnalyzer(),
+                null);
+            Query q = parser.parse(query);
+            synchronized (fLock) {
+                checkOpen();
+                fActive.getWriter().deleteDocuments(q);
+                deleteInOlderTiers(q);
+            }
+            fSearcher.refresh();
+        } catch (Throwable t) {
+            throw handleError("Can not delete documents. Query: '"
+                + query
+                + "'.", t);
+        }
+    }
+
+    /**
+     * Registers a query deleted from older tiers while a memory tier is
+     * merged. Should be called under the lock.
+     */
+    private void addMergeDeletion(Query query) throws IOException {
+        fActive.fDeletions.add(query);
+        if (fMergeSnapshot != null) {
+            fMergeSnapshot.hide(query);
+        }
+    }
+
+    /**
+     * Deletes documents matching the specified query from the disk tier and
+     * from the tier which is merged now. Should be called under the lock.
+     */
+    private void deleteInOlderTiers(Query query) throws IOException {
+        fDisk.getWriter().deleteDocuments(query);
+        if (fMerging != null) {
+            fMerging.getWriter().deleteDocuments(query);
+            addMergeDeletion(query);
+        }
+    }
+
+    /**
+     * Returns queries matching all documents with the same identifiers as the
+     * given document. Analyzed identifiers are parsed with the query analyzer
+     * of the schema.
+     */
+    private List<Query> getIdentifierQueries(
+        IndexSchema schema,
+        Analyzer analyzer,
+        IDocument doc) throws Exception {
+        List<Query> result = new ArrayList<Query>();
+        for (String field : schema.getIdentifierFields()) {
+            String value = doc.getValue(field);
+            if (value == null) {
+                continue;
+            }
+            if (schema.getField(field).isAnalyzed()) {
+                QueryParser parser = new QueryParser(
+                    Version.LUCENE_33,
+                    field,
+                    analyzer);
+                result.add(parser.parse(value));
+            } else {
+                result.add(new TermQuery(new Term(field, value)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of documents in the memory tier
+     */
+    public int getMemoryDocuments() {
+        synchronized (fLock) {
+            return fActive.fSize;
+        }
+    }
+
+    /**
+     * @return the schema stored with the disk tier
+     */
+    public IndexSchema getSchema() {
+        return fDisk.getSchema();
+    }
+
+    /**
+     * @return the searcher used to search in all tiers
+     */
+    public DocumentSearcher getSearcher() {
+        return fSearcher;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#index(org.ubimix.commons.search.IDocument)
+     */
+    public void index(IDocument doc) throws SearchException {
+        index(null, doc);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#index(org.ubimix.commons.search.IDocumentProvider)
+     */
+    public void index(IDocumentProvider documents) throws SearchException {
+        index(null, documents);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#index(java.util.Map,
+     *      org.ubimix.commons.search.IDocument)
+     */
+    public void index(
+        Map<String, FieldDescription> fieldDescriptors,
+        IDocument doc) throws SearchException {
+        index(fieldDescriptors, new DocumentProvider(doc));
+    }
+
+    /**
+     * Writes documents to the memory tier, hides previous versions of these
+     * documents in older tiers and makes new documents searchable.
+     *
+     * @see org.ubimix.commons.search.IDocumentIndexer#index(java.util.Map,
+     *      org.ubimix.commons.search.IDocumentProvider)
+     */
+    public void index(
+        Map<String, FieldDescription> fieldDescriptors,
+        IDocumentProvider documents) throws SearchException {
+        boolean merge;
+        try {
+            IndexSchema schema;
+            Analyzer analyzer;
+            if (fieldDescriptors != null) {
+                schema = new IndexSchema(fieldDescriptors);
+                analyzer = schema.newQueryAnalyzer(fAnalyzer);
+            } else {
+                schema = fDisk.getSchema();
+                analyzer = fDisk.getQueryAnalyzer();
+            }
+            List<IDocument> list = new ArrayList<IDocument>();
+            for (IDocument document : documents) {
+                list.add(document);
+            }
+            try {
+                synchronized (fLock) {
+                    checkOpen();
+                    fActive.fIndexer.index(
+                        schema.getFields(),
+                        new DocumentProvider(list));
+                    for (IDocument document : list) {
+                        for (Query query : getIdentifierQueries(
+                            schema,
+                            analyzer,
+                            document)) {
+                            deleteInOlderTiers(query);
+                        }
+                    }
+                    fActive.fSize += list.size();
+                    merge = fActive.fSize >= fMaxMemoryDocuments
+                        && !fMergeScheduled;
+                    fMergeScheduled |= merge;
+                }
+            } finally {
+                if (fieldDescriptors != null) {
+                    analyzer.close();
+                }
+            }
+            fSearcher.refresh();
+        } catch (Throwable t) {
+            throw handleError("Can not index documents.", t);
+        }
+        if (merge) {
+            fExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        merge();
+                    } catch (SearchException e) {
+                        // Already logged
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Merges the current memory tier into the disk tier and commits the disk
+     * tier. New documents are written to a new memory tier during the merge.
+     *
+     * @throws SearchException
+     */
+    public void merge() throws SearchException {
+        synchronized (fMergeLock) {
+            try {
+                MemoryTier tier;
+                IndexWriter disk = fDisk.getWriter();
+                synchronized (fLock) {
+                    fMergeScheduled = false;
+                    if (fActive.fSize == 0) {
+                        return;
+                    }
+                    MemoryTier active = newMemoryTier();
+                    // Searchers do not see the tier and its copy in the disk
+                    // tier at the same time.
+                    fMergeSnapshot = new MergeSnapshot(IndexReader.open(
+                        disk,
+                        true));
+                    tier = fActive;
+                    fMerging = tier;
+                    fActive = active;
+                    fGeneration++;
+                }
+                boolean merged = false;
+                try {
+                    tier.getWriter().commit();
+                    disk.addIndexes(tier.fDir);
+                    merged = true;
+                } finally {
+                    synchronized (fLock) {
+                        if (merged) {
+                            // Documents added to the new tier during the
+                            // merge could override documents of the merged
+                            // tier.
+                            for (Query query : fActive.fDeletions) {
+                                disk.deleteDocuments(query);
+                            }
+                            fActive.fDeletions.clear();
+                            fMerging = null;
+                        }
+                        fMergeSnapshot.close();
+                        fMergeSnapshot = null;
+                        fGeneration++;
+                    }
+                }
+                fSearcher.refresh();
+                tier.close();
+                disk.commit();
+            } catch (Throwable t) {
+                throw handleError("Can not merge the memory tier.", t);
+            }
+        }
+    }
+
+    /**
+     * Creates and returns a new directory for a memory tier.
+     *
+     * @return a new directory for a memory tier
+     */
+    protected Directory newMemoryDirectory() {
+        return new RAMDirectory();
+    }
+
+    private MemoryTier newMemoryTier() {
+        return new MemoryTier(newMemoryDirectory(), fAnalyzer);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.util.List)
+     */
+    public void search(List<SearchRequest> requests) throws SearchException {
+        fSearcher.search(requests);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      java.util.Collection, int)
+     */
+    public ISearchResultCursor search(
+        String q,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        return fSearcher.search(q, fields, maxResultNumber);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      java.util.Collection,
+     *      org.ubimix.commons.search.IDocumentSearcher.ISearchResultCollector)
+     */
+    public void search(
+        String q,
+        Collection<String> fields,
+        ISearchResultCollector collector) throws SearchException {
+        fSearcher.search(q, fields, collector);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      org.ubimix.commons.search.IDocumentSearcher.ISearchResultCollector)
+     */
+    public void search(String q, ISearchResultCollector collector)
+        throws SearchException {
+        fSearcher.search(q, collector);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#searchSimilar(org.ubimix.commons.search.IDocument,
+     *      java.util.Collection, int)
+     */
+    public ISearchResultCursor searchSimilar(
+        IDocument doc,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        return fSearcher.searchSimilar(doc, fields, maxResultNumber);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#searchSimilar(java.lang.String,
+     *      java.lang.String, java.util.Collection, int)
+     */
+    public ISearchResultCursor searchSimilar(
+        String field,
+        String identifier,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        return fSearcher.searchSimilar(
+            field,
+            identifier,
+            fields,
+            maxResultNumber);
+    }
+
+    /**
+     * Stores the schema with the disk tier (see
+     * {@link DocumentIndexer#setSchema(IndexSchema)}). The schema is used to
+     * index documents without explicit field descriptions.
+     *
+     * @param schema the schema to set
+     * @throws SearchException
+     */
+    public void setSchema(IndexSchema schema) throws SearchException {
+        fDisk.setSchema(schema);
+        fSearcher.refresh();
+    }
+
+    /**
+     * Sets the maximal number of documents in the memory tier. When this
+     * number is reached the memory tier is merged into the disk tier in
+     * background.
+     *
+     * @param maxMemoryDocuments the maximal number of documents to set
+     */
+    public void setMaxMemoryDocuments(int maxMemoryDocuments) {
+        synchronized (fLock) {
+            fMaxMemoryDocuments = Math.max(1, maxMemoryDocuments);
+        }
+    }
+
+}
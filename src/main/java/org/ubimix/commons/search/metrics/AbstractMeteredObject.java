@@ -0,0 +1,177 @@
+package org.ubimix.commons.search.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * A common superclass for metered decorators. It measures latencies,
+ * throughput and errors of operations and registers the decorator as a JMX
+ * MBean in the platform MBean server.
+ *
+ * @author kotelnikov
+ */
+public abstract class AbstractMeteredObject implements IOperationMetrics {
+
+    /**
+     * The JMX domain used to register metrics.
+     */
+    public static final String DOMAIN = "org.ubimix.commons.search";
+
+    private final static Logger log = Logger
+        .getLogger(AbstractMeteredObject.class.getName());
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final AtomicLong fErrors = new AtomicLong();
+
+    private final Histogram fLatency = new Histogram();
+
+    private ObjectName fName;
+
+    private final Meter fOperations = new Meter();
+
+    /**
+     * Registers the end of an operation.
+     *
+     * @param start the start time of the operation (see
+     *        {@link System#nanoTime()})
+     * @param ok this flag is <code>true</code> if the operation was
+     *        successful
+     */
+    protected void finish(long start, boolean ok) {
+        fLatency.record(System.nanoTime() - start);
+        fOperations.mark();
+        if (!ok) {
+            fErrors.incrementAndGet();
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IOperationMetrics#getErrors()
+     */
+    public long getErrors() {
+        return fErrors.get();
+    }
+
+    /**
+     * @return the histogram of operation latencies (in nanoseconds)
+     */
+    public Histogram getLatency() {
+        return fLatency;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IOperationMetrics#getLatencyMax()
+     */
+    public double getLatencyMax() {
+        return fLatency.getMax() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IOperationMetrics#getLatencyMean()
+     */
+    public double getLatencyMean() {
+        return fLatency.getMean() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IOperationMetrics#getLatencyP50()
+     */
+    public double getLatencyP50() {
+        return fLatency.getPercentile(0.5) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IOperationMetrics#getLatencyP99()
+     */
+    public double getLatencyP99() {
+        return fLatency.getPercentile(0.99) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IOperationMetrics#getLatencyP999()
+     */
+    public double getLatencyP999() {
+        return fLatency.getPercentile(0.999) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return the interface of the MBean exported by this object
+     */
+    protected abstract Class<?> getMBeanInterface();
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IOperationMetrics#getOperations()
+     */
+    public long getOperations() {
+        return fOperations.getCount();
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IOperationMetrics#getOperationsPerSecond()
+     */
+    public double getOperationsPerSecond() {
+        return fOperations.getOneMinuteRate();
+    }
+
+    /**
+     * @return the JMX type of this object
+     */
+    protected abstract String getType();
+
+    /**
+     * Registers this object in the platform MBean server with the name
+     * <code>org.ubimix.commons.search:type=...,name=...</code>. The object
+     * is unregistered when it is closed.
+     *
+     * @param name the name of this object
+     * @return the name of the registered MBean
+     * @throws SearchException
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public synchronized ObjectName register(String name)
+        throws SearchException {
+        try {
+            unregister();
+            ObjectName objectName = new ObjectName(DOMAIN
+                + ":type="
+                + getType()
+                + ",name="
+                + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Class type = getMBeanInterface();
+            server.registerMBean(new StandardMBean(this, type), objectName);
+            fName = objectName;
+            return objectName;
+        } catch (Throwable t) {
+            log.log(Level.WARNING, "Can not register metrics", t);
+            throw new SearchException("Can not register metrics", t);
+        }
+    }
+
+    /**
+     * Removes this object from the platform MBean server.
+     */
+    public synchronized void unregister() {
+        if (fName != null) {
+            try {
+                MBeanServer server = ManagementFactory
+                    .getPlatformMBeanServer();
+                server.unregisterMBean(fName);
+            } catch (Throwable t) {
+                log.log(Level.FINE, "Can not unregister metrics", t);
+            } finally {
+                fName = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.ubimix.commons.search.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values (latencies). Values are
+ * counted in logarithmic buckets: each power of two is split in 8 linear
+ * sub-buckets, so the relative error of returned percentiles is below 12.5%
+ * while the whole histogram takes less than 4KB. Recording a value is one
+ * atomic increment of the corresponding bucket; no locks are used.
+ *
+ * @author kotelnikov
+ */
+public class Histogram {
+
+    /**
+     * The number of linear sub-buckets per power of two (as a power of two).
+     */
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * Values below this limit have their own buckets.
+     */
+    private static final int LINEAR_LIMIT = 2 * SUB_COUNT;
+
+    private static final int BUCKET_COUNT = LINEAR_LIMIT
+        + (63 - SUB_BITS - 1)
+        * SUB_COUNT;
+
+    /**
+     * Returns the index of the bucket for the specified value.
+     */
+    static int getBucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) Math.max(0, value);
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return LINEAR_LIMIT + (exp - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Returns the biggest value of the specified bucket.
+     */
+    static long getUpperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exp = (bucket - LINEAR_LIMIT) / SUB_COUNT + SUB_BITS + 1;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_COUNT;
+        long lower = (long) (SUB_COUNT + sub) << (exp - SUB_BITS);
+        return lower + (1L << (exp - SUB_BITS)) - 1;
+    }
+
+    private final AtomicLongArray fBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong fCount = new AtomicLong();
+
+    private final AtomicLong fMax = new AtomicLong();
+
+    private final AtomicLong fSum = new AtomicLong();
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return fCount.get();
+    }
+
+    /**
+     * @return the maximal recorded value
+     */
+    public long getMax() {
+        return fMax.get();
+    }
+
+    /**
+     * @return the mean of all recorded values
+     */
+    public double getMean() {
+        long count = fCount.get();
+        return count > 0 ? (double) fSum.get() / count : 0;
+    }
+
+    /**
+     * Returns an approximation of the specified percentile of recorded values.
+     * The returned value is never below the real percentile.
+     *
+     * @param percentile the percentile to return (for example 0.99)
+     * @return the value of the percentile or 0 if there are no values
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = fBuckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        rank = Math.max(1, Math.min(total, rank));
+        long sum = 0;
+        int bucket = 0;
+        for (; bucket < counts.length; bucket++) {
+            sum += counts[bucket];
+            if (sum >= rank) {
+                break;
+            }
+        }
+        return Math.min(getUpperBound(bucket), fMax.get());
+    }
+
+    /**
+     * Records a new value in this histogram.
+     *
+     * @param value the value to record
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        fBuckets.incrementAndGet(getBucket(value));
+        fCount.incrementAndGet();
+        fSum.addAndGet(value);
+        long max = fMax.get();
+        while (value > max && !fMax.compareAndSet(max, value)) {
+            max = fMax.get();
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package org.ubimix.commons.search.metrics;
+
+/**
+ * Metrics of an indexer exported through JMX.
+ *
+ * @author kotelnikov
+ */
+public interface IIndexerMetrics extends IOperationMetrics {
+
+    /**
+     * @return the number of documents buffered in memory and not flushed yet
+     *         or <code>-1</code> if this value is not available
+     */
+    int getBufferedDocuments();
+
+    /**
+     * @return the total number of indexed documents
+     */
+    long getIndexedDocuments();
+
+    /**
+     * @return the number of indexed documents per second (the moving average
+     *         over the last minute)
+     */
+    double getIndexedDocumentsPerSecond();
+
+    /**
+     * @return the size of the memory buffer of the indexer in bytes or
+     *         <code>-1</code> if this value is not available
+     */
+    long getRamBufferUsage();
+
+    /**
+     * @return the number of segments in the last commit of the index or
+     *         <code>-1</code> if this value is not available
+     */
+    int getSegmentCount();
+
+}
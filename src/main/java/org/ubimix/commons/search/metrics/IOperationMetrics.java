@@ -0,0 +1,52 @@
+package org.ubimix.commons.search.metrics;
+
+/**
+ * Common metrics of operations (index or search requests) exported through
+ * JMX. All latencies are in milliseconds.
+ *
+ * @author kotelnikov
+ */
+public interface IOperationMetrics {
+
+    /**
+     * @return the number of failed operations
+     */
+    long getErrors();
+
+    /**
+     * @return the maximal latency of operations
+     */
+    double getLatencyMax();
+
+    /**
+     * @return the mean latency of operations
+     */
+    double getLatencyMean();
+
+    /**
+     * @return the median latency of operations
+     */
+    double getLatencyP50();
+
+    /**
+     * @return the 99th percentile of latencies
+     */
+    double getLatencyP99();
+
+    /**
+     * @return the 99.9th percentile of latencies
+     */
+    double getLatencyP999();
+
+    /**
+     * @return the total number of operations
+     */
+    long getOperations();
+
+    /**
+     * @return the number of operations per second (the moving average over
+     *         the last minute)
+     */
+    double getOperationsPerSecond();
+
+}
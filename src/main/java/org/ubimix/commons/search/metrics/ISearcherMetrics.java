@@ -0,0 +1,28 @@
+package org.ubimix.commons.search.metrics;
+
+/**
+ * Metrics of a searcher exported through JMX.
+ *
+ * @author kotelnikov
+ */
+public interface ISearcherMetrics extends IOperationMetrics {
+
+    /**
+     * @return the number of searchable documents or <code>-1</code> if this
+     *         value is not available
+     */
+    int getDocumentCount();
+
+    /**
+     * @return the time in milliseconds since the current index reader was
+     *         opened or <code>-1</code> if this value is not available
+     */
+    long getReaderAge();
+
+    /**
+     * @return the number of segments of the current index reader or
+     *         <code>-1</code> if this value is not available
+     */
+    int getSegmentCount();
+
+}
@@ -0,0 +1,109 @@
+package org.ubimix.commons.search.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free throughput meter. It counts events and computes the mean rate
+ * since creation as well as the exponentially weighted moving average rate
+ * over the last minute (like the Unix load average). The moving average is
+ * updated lazily, in 5-second ticks, by threads marking or reading this meter.
+ *
+ * @author kotelnikov
+ */
+public class Meter {
+
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private static final double ALPHA = 1 - Math.exp(-5 / 60.0);
+
+    private final AtomicLong fCount = new AtomicLong();
+
+    private volatile boolean fInitialized;
+
+    private final AtomicLong fLastTick;
+
+    private volatile double fRate;
+
+    private final long fStartTime;
+
+    private final AtomicLong fUncounted = new AtomicLong();
+
+    public Meter() {
+        fStartTime = System.nanoTime();
+        fLastTick = new AtomicLong(fStartTime);
+    }
+
+    /**
+     * @return the total number of events
+     */
+    public long getCount() {
+        return fCount.get();
+    }
+
+    /**
+     * @return the mean number of events per second since this meter was
+     *         created
+     */
+    public double getMeanRate() {
+        double time = (double) (System.nanoTime() - fStartTime)
+            / TimeUnit.SECONDS.toNanos(1);
+        return time > 0 ? fCount.get() / time : 0;
+    }
+
+    /**
+     * @return the moving average number of events per second over the last
+     *         minute
+     */
+    public double getOneMinuteRate() {
+        tickIfNecessary();
+        return fRate;
+    }
+
+    /**
+     * Registers one event.
+     */
+    public void mark() {
+        mark(1);
+    }
+
+    /**
+     * Registers the specified number of events.
+     *
+     * @param count the number of events
+     */
+    public void mark(long count) {
+        tickIfNecessary();
+        fCount.addAndGet(count);
+        fUncounted.addAndGet(count);
+    }
+
+    private void tick() {
+        long count = fUncounted.getAndSet(0);
+        double rate = count
+            / ((double) TICK_INTERVAL / TimeUnit.SECONDS.toNanos(1));
+        if (fInitialized) {
+            fRate += ALPHA * (rate - fRate);
+        } else {
+            fRate = rate;
+            fInitialized = true;
+        }
+    }
+
+    private void tickIfNecessary() {
+        long last = fLastTick.get();
+        long now = System.nanoTime();
+        long age = now - last;
+        if (age > TICK_INTERVAL) {
+            long tick = now - age % TICK_INTERVAL;
+            // Only one thread updates the rate for each tick
+            if (fLastTick.compareAndSet(last, tick)) {
+                long ticks = age / TICK_INTERVAL;
+                for (long i = 0; i < ticks; i++) {
+                    tick();
+                }
+            }
+        }
+    }
+
+}
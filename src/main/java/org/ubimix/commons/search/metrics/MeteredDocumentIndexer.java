@@ -0,0 +1,261 @@
+package org.ubimix.commons.search.metrics;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IDocumentIndexer;
+import org.ubimix.commons.search.IDocumentProvider;
+import org.ubimix.commons.search.SearchException;
+import org.ubimix.commons.search.lucene.DocumentIndexer;
+
+/**
+ * A decorator of {@link IDocumentIndexer} instances collecting indexing
+ * metrics: latencies and throughput of index operations, the number of
+ * indexed documents and errors. If the decorated object is a
+ * {@link DocumentIndexer} then the state of the index (the number of segments
+ * and the memory buffer usage) is exported as well.
+ * <p>
+ * Usage:
+ * </p>
+ *
+ * <pre>
+ * MeteredDocumentIndexer indexer = new MeteredDocumentIndexer(
+ *     new DocumentIndexer(dir, analyzer));
+ * indexer.register(&quot;main&quot;);
+ * </pre>
+ *
+ * @author kotelnikov
+ */
+public class MeteredDocumentIndexer extends AbstractMeteredObject
+    implements
+    IDocumentIndexer,
+    IIndexerMetrics {
+
+    /**
+     * This provider counts documents returned by the decorated provider.
+     */
+    private class CountingProvider implements IDocumentProvider {
+
+        private class CountingIterator implements Iterator<IDocument> {
+
+            private final Iterator<IDocument> fIterator;
+
+            public CountingIterator(Iterator<IDocument> iterator) {
+                fIterator = iterator;
+            }
+
+            public boolean hasNext() {
+                return fIterator.hasNext();
+            }
+
+            public IDocument next() {
+                IDocument doc = fIterator.next();
+                fDocuments.mark();
+                return doc;
+            }
+
+            public void remove() {
+                fIterator.remove();
+            }
+        }
+
+        private final IDocumentProvider fProvider;
+
+        public CountingProvider(IDocumentProvider provider) {
+            fProvider = provider;
+        }
+
+        public void closeIterator(Iterator<IDocument> iterator) {
+            if (iterator instanceof CountingIterator) {
+                iterator = ((CountingIterator) iterator).fIterator;
+            }
+            fProvider.closeIterator(iterator);
+        }
+
+        public Iterator<IDocument> iterator() {
+            return new CountingIterator(fProvider.iterator());
+        }
+    }
+
+    private final Meter fDocuments = new Meter();
+
+    private final IDocumentIndexer fIndexer;
+
+    /**
+     * @param indexer the decorated indexer
+     */
+    public MeteredDocumentIndexer(IDocumentIndexer indexer) {
+        fIndexer = indexer;
+    }
+
+    /**
+     * Closes the decorated indexer and unregisters this object from JMX.
+     *
+     * @see org.ubimix.commons.search.IDocumentIndexer#close()
+     */
+    public void close() throws SearchException {
+        unregister();
+        fIndexer.close();
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#delete(java.lang.String,
+     *      java.lang.Iterable)
+     */
+    public void delete(String field, Iterable<String> identifiers)
+        throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            fIndexer.delete(field, identifiers);
+            ok = true;
+        } finally {
+            finish(start, ok);
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#delete(java.lang.String)
+     */
+    public void delete(String query) throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            fIndexer.delete(query);
+            ok = true;
+        } finally {
+            finish(start, ok);
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IIndexerMetrics#getBufferedDocuments()
+     */
+    public int getBufferedDocuments() {
+        if (fIndexer instanceof DocumentIndexer) {
+            return ((DocumentIndexer) fIndexer).getBufferedDocuments();
+        }
+        return -1;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IIndexerMetrics#getIndexedDocuments()
+     */
+    public long getIndexedDocuments() {
+        return fDocuments.getCount();
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IIndexerMetrics#getIndexedDocumentsPerSecond()
+     */
+    public double getIndexedDocumentsPerSecond() {
+        return fDocuments.getOneMinuteRate();
+    }
+
+    /**
+     * @return the decorated indexer
+     */
+    public IDocumentIndexer getIndexer() {
+        return fIndexer;
+    }
+
+    @Override
+    protected Class<?> getMBeanInterface() {
+        return IIndexerMetrics.class;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IIndexerMetrics#getRamBufferUsage()
+     */
+    public long getRamBufferUsage() {
+        if (fIndexer instanceof DocumentIndexer) {
+            return ((DocumentIndexer) fIndexer).getRamBufferUsage();
+        }
+        return -1;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.IIndexerMetrics#getSegmentCount()
+     */
+    public int getSegmentCount() {
+        if (fIndexer instanceof DocumentIndexer) {
+            try {
+                return ((DocumentIndexer) fIndexer).getSegmentCount();
+            } catch (SearchException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    protected String getType() {
+        return "Indexer";
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#index(org.ubimix.commons.search.IDocument)
+     */
+    public void index(IDocument doc) throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            fIndexer.index(doc);
+            fDocuments.mark();
+            ok = true;
+        } finally {
+            finish(start, ok);
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#index(org.ubimix.commons.search.IDocumentProvider)
+     */
+    public void index(IDocumentProvider documents) throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            fIndexer.index(new CountingProvider(documents));
+            ok = true;
+        } finally {
+            finish(start, ok);
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#index(java.util.Map,
+     *      org.ubimix.commons.search.IDocument)
+     */
+    public void index(
+        Map<String, FieldDescription> fieldDescriptors,
+        IDocument doc) throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            fIndexer.index(fieldDescriptors, doc);
+            fDocuments.mark();
+            ok = true;
+        } finally {
+            finish(start, ok);
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentIndexer#index(java.util.Map,
+     *      org.ubimix.commons.search.IDocumentProvider)
+     */
+    public void index(
+        Map<String, FieldDescription> fieldDescriptors,
+        IDocumentProvider documents) throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            fIndexer.index(fieldDescriptors, new CountingProvider(documents));
+            ok = true;
+        } finally {
+            finish(start, ok);
+        }
+    }
+
+}
@@ -0,0 +1,282 @@
+package org.ubimix.commons.search.metrics;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IDocumentSearcher;
+import org.ubimix.commons.search.SearchException;
+import org.ubimix.commons.search.lucene.DocumentSearcher;
+
+/**
+ * A decorator of {@link IDocumentSearcher} instances collecting search
+ * metrics: latencies and throughput of search operations and errors. The
+ * latency of a cursor-based search includes the time required to iterate over
+ * results (until the cursor is closed); a batch search is counted as one
+ * operation. If the decorated object is a {@link DocumentSearcher} then the
+ * state of the index reader (its age, the number of segments and documents) is
+ * exported as well.
+ * <p>
+ * Usage:
+ * </p>
+ *
+ * <pre>
+ * MeteredDocumentSearcher searcher = new MeteredDocumentSearcher(
+ *     new DocumentSearcher(dir, analyzer));
+ * searcher.register(&quot;main&quot;);
+ * </pre>
+ *
+ * @author kotelnikov
+ */
+public class MeteredDocumentSearcher extends AbstractMeteredObject
+    implements
+    IDocumentSearcher,
+    ISearcherMetrics {
+
+    /**
+     * This cursor registers the end of the search operation when it is
+     * closed.
+     */
+    private class MeteredCursor implements ISearchResultCursor {
+
+        private final ISearchResultCursor fCursor;
+
+        private boolean fFinished;
+
+        private boolean fOk = true;
+
+        private final long fStart;
+
+        public MeteredCursor(ISearchResultCursor cursor, long start) {
+            fCursor = cursor;
+            fStart = start;
+        }
+
+        public synchronized void close() throws SearchException {
+            try {
+                fCursor.close();
+            } catch (SearchException e) {
+                fOk = false;
+                throw e;
+            } finally {
+                if (!fFinished) {
+                    fFinished = true;
+                    finish(fStart, fOk);
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            try {
+                return fCursor.hasNext();
+            } catch (RuntimeException e) {
+                fOk = false;
+                throw e;
+            }
+        }
+
+        public ISearchResult next() {
+            try {
+                return fCursor.next();
+            } catch (RuntimeException e) {
+                fOk = false;
+                throw e;
+            }
+        }
+
+        public void remove() {
+            fCursor.remove();
+        }
+    }
+
+    private final IDocumentSearcher fSearcher;
+
+    /**
+     * @param searcher the decorated searcher
+     */
+    public MeteredDocumentSearcher(IDocumentSearcher searcher) {
+        fSearcher = searcher;
+    }
+
+    /**
+     * Closes the decorated searcher and unregisters this object from JMX.
+     *
+     * @see org.ubimix.commons.search.IDocumentSearcher#close()
+     */
+    public void close() throws SearchException {
+        unregister();
+        fSearcher.close();
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.ISearcherMetrics#getDocumentCount()
+     */
+    public int getDocumentCount() {
+        if (fSearcher instanceof DocumentSearcher) {
+            try {
+                return ((DocumentSearcher) fSearcher).getDocumentCount();
+            } catch (SearchException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    protected Class<?> getMBeanInterface() {
+        return ISearcherMetrics.class;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.ISearcherMetrics#getReaderAge()
+     */
+    public long getReaderAge() {
+        if (fSearcher instanceof DocumentSearcher) {
+            return ((DocumentSearcher) fSearcher).getReaderAge();
+        }
+        return -1;
+    }
+
+    /**
+     * @return the decorated searcher
+     */
+    public IDocumentSearcher getSearcher() {
+        return fSearcher;
+    }
+
+    /**
+     * @see org.ubimix.commons.search.metrics.ISearcherMetrics#getSegmentCount()
+     */
+    public int getSegmentCount() {
+        if (fSearcher instanceof DocumentSearcher) {
+            try {
+                return ((DocumentSearcher) fSearcher).getSegmentCount();
+            } catch (SearchException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    protected String getType() {
+        return "Searcher";
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      java.util.Collection, int)
+     */
+    public ISearchResultCursor search(
+        String q,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ISearchResultCursor cursor = fSearcher.search(
+                q,
+                fields,
+                maxResultNumber);
+            ok = true;
+            return new MeteredCursor(cursor, start);
+        } finally {
+            if (!ok) {
+                finish(start, false);
+            }
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      java.util.Collection,
+     *      org.ubimix.commons.search.IDocumentSearcher.ISearchResultCollector)
+     */
+    public void search(
+        String q,
+        Collection<String> fields,
+        ISearchResultCollector collector) throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            fSearcher.search(q, fields, collector);
+            ok = true;
+        } finally {
+            finish(start, ok);
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.util.List)
+     */
+    public void search(List<SearchRequest> requests) throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            fSearcher.search(requests);
+            ok = true;
+        } finally {
+            finish(start, ok);
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      org.ubimix.commons.search.IDocumentSearcher.ISearchResultCollector)
+     */
+    public void search(String q, ISearchResultCollector collector)
+        throws SearchException {
+        search(q, null, collector);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#searchSimilar(org.ubimix.commons.search.IDocument,
+     *      java.util.Collection, int)
+     */
+    public ISearchResultCursor searchSimilar(
+        IDocument doc,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ISearchResultCursor cursor = fSearcher.searchSimilar(
+                doc,
+                fields,
+                maxResultNumber);
+            ok = true;
+            return new MeteredCursor(cursor, start);
+        } finally {
+            if (!ok) {
+                finish(start, false);
+            }
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#searchSimilar(java.lang.String,
+     *      java.lang.String, java.util.Collection, int)
+     */
+    public ISearchResultCursor searchSimilar(
+        String field,
+        String identifier,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            ISearchResultCursor cursor = fSearcher.searchSimilar(
+                field,
+                identifier,
+                fields,
+                maxResultNumber);
+            ok = true;
+            return new MeteredCursor(cursor, start);
+        } finally {
+            if (!ok) {
+                finish(start, false);
+            }
+        }
+    }
+
+}
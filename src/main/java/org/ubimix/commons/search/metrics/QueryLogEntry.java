@@ -0,0 +1,72 @@
+package org.ubimix.commons.search.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * One recorded search request.
+ *
+ * @author kotelnikov
+ */
+public class QueryLogEntry {
+
+    private final Collection<String> fFields;
+
+    private final int fMaxResultNumber;
+
+    private final String fQuery;
+
+    private final long fTime;
+
+    /**
+     * @param time the time of the request (in milliseconds)
+     * @param query the query string
+     * @param fields fields used to search; it could be <code>null</code>
+     * @param maxResultNumber the maximal number of requested results
+     */
+    public QueryLogEntry(
+        long time,
+        String query,
+        Collection<String> fields,
+        int maxResultNumber) {
+        fTime = time;
+        fQuery = query;
+        fFields = fields != null ? fields : Collections.<String> emptyList();
+        fMaxResultNumber = maxResultNumber;
+    }
+
+    /**
+     * @return fields used to search; an empty collection means the full
+     *         content
+     */
+    public Collection<String> getFields() {
+        return fFields;
+    }
+
+    /**
+     * @return the maximal number of requested results
+     */
+    public int getMaxResultNumber() {
+        return fMaxResultNumber;
+    }
+
+    /**
+     * @return the query string
+     */
+    public String getQuery() {
+        return fQuery;
+    }
+
+    /**
+     * @return the time of the request (in milliseconds)
+     */
+    public long getTime() {
+        return fTime;
+    }
+
+    @Override
+    public String toString() {
+        return fTime + " " + fQuery + " " + fFields + " " + fMaxResultNumber;
+    }
+
+}
@@ -0,0 +1,113 @@
+package org.ubimix.commons.search.metrics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads query logs written by the {@link QueryLogWriter}.
+ *
+ * @author kotelnikov
+ */
+public class QueryLogReader {
+
+    /**
+     * Reads all records of the specified query log.
+     *
+     * @param file the log file
+     * @return a list of all records
+     * @throws IOException
+     */
+    public static List<QueryLogEntry> readAll(File file) throws IOException {
+        QueryLogReader reader = new QueryLogReader(new FileInputStream(file));
+        try {
+            List<QueryLogEntry> result = new ArrayList<QueryLogEntry>();
+            QueryLogEntry entry;
+            while ((entry = reader.read()) != null) {
+                result.add(entry);
+            }
+            return result;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static long readVLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed query log: bad number.");
+    }
+
+    private final DataInputStream fIn;
+
+    private long fTime = -1;
+
+    /**
+     * @param in the input stream of the log
+     */
+    public QueryLogReader(InputStream in) {
+        fIn = new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /**
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        fIn.close();
+    }
+
+    /**
+     * Reads the next record of the log.
+     *
+     * @return the next record or <code>null</code> if there are no more
+     *         records
+     * @throws IOException
+     */
+    public QueryLogEntry read() throws IOException {
+        if (fTime < 0) {
+            int magic;
+            try {
+                magic = fIn.readInt();
+            } catch (EOFException e) {
+                // An empty log
+                return null;
+            }
+            if (magic != QueryLogWriter.MAGIC) {
+                throw new IOException("Not a query log.");
+            }
+            fTime = fIn.readLong();
+        }
+        int first = fIn.read();
+        if (first < 0) {
+            return null;
+        }
+        long delta;
+        if ((first & 0x80) == 0) {
+            delta = first;
+        } else {
+            delta = (first & 0x7F) | (readVLong(fIn) << 7);
+        }
+        fTime += delta;
+        String query = fIn.readUTF();
+        int size = (int) readVLong(fIn);
+        List<String> fields = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            fields.add(fIn.readUTF());
+        }
+        int maxResultNumber = (int) readVLong(fIn);
+        return new QueryLogEntry(fTime, query, fields, maxResultNumber);
+    }
+
+}
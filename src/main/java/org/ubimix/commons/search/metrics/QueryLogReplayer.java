@@ -0,0 +1,258 @@
+package org.ubimix.commons.search.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.ubimix.commons.search.IDocumentSearcher;
+import org.ubimix.commons.search.IDocumentSearcher.ISearchResult;
+import org.ubimix.commons.search.IDocumentSearcher.ISearchResultCursor;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * Replays recorded query logs (see {@link QueryLogWriter}) against a searcher
+ * with a number of concurrent clients. Queries are sent at their original
+ * rate multiplied by the speed factor or, if the speed is not positive, as
+ * fast as clients can execute them. Each query loads stored fields of all
+ * returned documents.
+ * <p>
+ * The response time of a query is measured from the moment when it was
+ * scheduled to be sent, not from the moment when a client became free to send
+ * it. So a stalled searcher is not hidden by the fact that clients are
+ * waiting for it (the "coordinated omission" problem). The service time (the
+ * time of the search itself) is reported separately.
+ * </p>
+ *
+ * @author kotelnikov
+ */
+public class QueryLogReplayer {
+
+    /**
+     * Results of one replay.
+     */
+    public static class Report {
+
+        private final long fDuration;
+
+        private final long fErrors;
+
+        private final Histogram fResponseTime;
+
+        private final Histogram fServiceTime;
+
+        Report(
+            long duration,
+            long errors,
+            Histogram responseTime,
+            Histogram serviceTime) {
+            fDuration = duration;
+            fErrors = errors;
+            fResponseTime = responseTime;
+            fServiceTime = serviceTime;
+        }
+
+        /**
+         * @return the total duration of the replay in milliseconds
+         */
+        public long getDuration() {
+            return TimeUnit.NANOSECONDS.toMillis(fDuration);
+        }
+
+        /**
+         * @return the number of failed queries
+         */
+        public long getErrors() {
+            return fErrors;
+        }
+
+        /**
+         * @return the number of executed queries (including failed ones)
+         */
+        public long getQueries() {
+            return fServiceTime.getCount();
+        }
+
+        /**
+         * Returns the specified percentile of response times (the time between
+         * the moment when a query was scheduled and the end of its execution).
+         *
+         * @param percentile the percentile (for example 0.99)
+         * @return the response time in milliseconds
+         */
+        public double getResponseTime(double percentile) {
+            return toMillis(fResponseTime.getPercentile(percentile));
+        }
+
+        /**
+         * Returns the specified percentile of service times (the time of the
+         * search itself).
+         *
+         * @param percentile the percentile (for example 0.99)
+         * @return the service time in milliseconds
+         */
+        public double getServiceTime(double percentile) {
+            return toMillis(fServiceTime.getPercentile(percentile));
+        }
+
+        /**
+         * @return the number of queries executed per second
+         */
+        public double getThroughput() {
+            return fDuration > 0
+                ? getQueries() * 1e9 / fDuration
+                : 0;
+        }
+
+        private double toMillis(long nanos) {
+            return nanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder();
+            buf.append("queries=").append(getQueries());
+            buf.append(" errors=").append(fErrors);
+            buf.append(" duration=").append(getDuration()).append("ms");
+            buf.append(" throughput=").append(
+                String.format("%.1f", getThroughput())).append("/s");
+            append(buf, " response", fResponseTime);
+            append(buf, " service", fServiceTime);
+            return buf.toString();
+        }
+
+        private void append(StringBuilder buf, String prefix, Histogram h) {
+            buf.append(String.format(
+                "%s(p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms)",
+                prefix,
+                toMillis(h.getPercentile(0.5)),
+                toMillis(h.getPercentile(0.99)),
+                toMillis(h.getPercentile(0.999)),
+                toMillis(h.getMax())));
+        }
+    }
+
+    private final static Logger log = Logger.getLogger(QueryLogReplayer.class
+        .getName());
+
+    private final int fClients;
+
+    private final IDocumentSearcher fSearcher;
+
+    private final double fSpeed;
+
+    /**
+     * @param searcher the searcher used to execute queries
+     * @param clients the number of concurrent clients
+     * @param speed the multiplier of the original query rate; if this value
+     *        is not positive then queries are sent as fast as possible
+     */
+    public QueryLogReplayer(
+        IDocumentSearcher searcher,
+        int clients,
+        double speed) {
+        fSearcher = searcher;
+        fClients = Math.max(1, clients);
+        fSpeed = speed;
+    }
+
+    private void execute(QueryLogEntry entry) throws SearchException {
+        ISearchResultCursor cursor = fSearcher.search(
+            entry.getQuery(),
+            entry.getFields(),
+            entry.getMaxResultNumber());
+        try {
+            while (cursor.hasNext()) {
+                ISearchResult result = cursor.next();
+                result.getDocument();
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Replays the specified queries and returns the results of the replay.
+     *
+     * @param entries queries to replay (ordered by time)
+     * @return a report with the throughput and latencies of queries
+     * @throws InterruptedException if the replay was interrupted
+     */
+    public Report replay(final List<QueryLogEntry> entries)
+        throws InterruptedException {
+        final Histogram responseTime = new Histogram();
+        final Histogram serviceTime = new Histogram();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicInteger position = new AtomicInteger();
+        final long firstTime = !entries.isEmpty()
+            ? entries.get(0).getTime()
+            : 0;
+        final long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < fClients; i++) {
+            Thread thread = new Thread("QueryLogReplayer-" + i) {
+                @Override
+                public void run() {
+                    int size = entries.size();
+                    int pos;
+                    while ((pos = position.getAndIncrement()) < size) {
+                        QueryLogEntry entry = entries.get(pos);
+                        long scheduled = -1;
+                        if (fSpeed > 0) {
+                            long delay = TimeUnit.MILLISECONDS
+                                .toNanos(entry.getTime() - firstTime);
+                            scheduled = start + (long) (delay / fSpeed);
+                            if (!sleepUntil(scheduled)) {
+                                return;
+                            }
+                        }
+                        long begin = System.nanoTime();
+                        if (scheduled < 0) {
+                            scheduled = begin;
+                        }
+                        try {
+                            execute(entry);
+                        } catch (Throwable t) {
+                            errors.incrementAndGet();
+                            log.log(Level.FINE, "Query failed: " + entry, t);
+                        }
+                        long end = System.nanoTime();
+                        serviceTime.record(end - begin);
+                        responseTime.record(end - scheduled);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw e;
+        }
+        long duration = System.nanoTime() - start;
+        return new Report(duration, errors.get(), responseTime, serviceTime);
+    }
+
+    private boolean sleepUntil(long time) {
+        long delay;
+        while ((delay = time - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
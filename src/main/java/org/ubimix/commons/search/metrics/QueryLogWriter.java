@@ -0,0 +1,97 @@
+package org.ubimix.commons.search.metrics;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+
+/**
+ * Writes search requests to a compact binary query log. The log starts with
+ * a header (a magic number and the time of the first request); each record
+ * contains the time passed since the previous record, the query, search
+ * fields and the maximal number of results. Numbers are written as
+ * variable-length integers, so a typical record takes only a few bytes more
+ * than the query string itself. Instances of this class are thread-safe.
+ *
+ * @author kotelnikov
+ * @see QueryLogReader
+ */
+public class QueryLogWriter {
+
+    /**
+     * The magic number at the beginning of query logs ("UQL1").
+     */
+    static final int MAGIC = 0x55514C31;
+
+    static void writeVLong(DataOutputStream out, long value)
+        throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private long fLastTime = -1;
+
+    private final DataOutputStream fOut;
+
+    /**
+     * @param out the output stream of the log
+     */
+    public QueryLogWriter(OutputStream out) {
+        fOut = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    /**
+     * Flushes and closes the log.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        fOut.close();
+    }
+
+    /**
+     * Flushes all buffered records.
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        fOut.flush();
+    }
+
+    /**
+     * Writes a new record. The time of the record is the current time.
+     *
+     * @param query the query string
+     * @param fields fields used to search; it could be <code>null</code>
+     * @param maxResultNumber the maximal number of requested results
+     * @throws IOException
+     */
+    public synchronized void write(
+        String query,
+        Collection<String> fields,
+        int maxResultNumber) throws IOException {
+        // The time is taken under the lock, so records are always ordered
+        long time = System.currentTimeMillis();
+        if (fLastTime < 0) {
+            fOut.writeInt(MAGIC);
+            fOut.writeLong(time);
+            fLastTime = time;
+        }
+        writeVLong(fOut, Math.max(0, time - fLastTime));
+        fLastTime = Math.max(time, fLastTime);
+        fOut.writeUTF(query);
+        int size = fields != null ? fields.size() : 0;
+        writeVLong(fOut, size);
+        if (fields != null) {
+            for (String field : fields) {
+                fOut.writeUTF(field);
+            }
+        }
+        writeVLong(fOut, Math.max(0, maxResultNumber));
+    }
+
+}
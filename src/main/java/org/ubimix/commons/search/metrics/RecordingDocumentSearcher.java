@@ -0,0 +1,155 @@
+package org.ubimix.commons.search.metrics;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IDocumentSearcher;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * A decorator of {@link IDocumentSearcher} instances recording all search
+ * requests to a query log (see {@link QueryLogWriter}). Recorded logs could be
+ * replayed against any index with the {@link QueryLogReplayer}. Failures of
+ * the log do not affect searches; they are only logged.
+ *
+ * @author kotelnikov
+ */
+public class RecordingDocumentSearcher implements IDocumentSearcher {
+
+    private final static Logger log = Logger
+        .getLogger(RecordingDocumentSearcher.class.getName());
+
+    private final QueryLogWriter fLog;
+
+    private final IDocumentSearcher fSearcher;
+
+    /**
+     * @param searcher the decorated searcher
+     * @param log the query log; it is closed with this searcher
+     */
+    public RecordingDocumentSearcher(
+        IDocumentSearcher searcher,
+        QueryLogWriter log) {
+        fSearcher = searcher;
+        fLog = log;
+    }
+
+    /**
+     * Closes the decorated searcher and the query log.
+     *
+     * @see org.ubimix.commons.search.IDocumentSearcher#close()
+     */
+    public void close() throws SearchException {
+        try {
+            fSearcher.close();
+        } finally {
+            try {
+                fLog.close();
+            } catch (IOException e) {
+                log.log(Level.WARNING, "Can not close the query log", e);
+            }
+        }
+    }
+
+    /**
+     * @return the decorated searcher
+     */
+    public IDocumentSearcher getSearcher() {
+        return fSearcher;
+    }
+
+    private void record(
+        String q,
+        Collection<String> fields,
+        int maxResultNumber) {
+        try {
+            fLog.write(q, fields, maxResultNumber);
+        } catch (IOException e) {
+            log.log(Level.WARNING, "Can not write to the query log", e);
+        }
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      java.util.Collection, int)
+     */
+    public ISearchResultCursor search(
+        String q,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        record(q, fields, maxResultNumber);
+        return fSearcher.search(q, fields, maxResultNumber);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      java.util.Collection,
+     *      org.ubimix.commons.search.IDocumentSearcher.ISearchResultCollector)
+     */
+    public void search(
+        String q,
+        Collection<String> fields,
+        ISearchResultCollector collector) throws SearchException {
+        record(q, fields, collector.getMaxResultNumber());
+        fSearcher.search(q, fields, collector);
+    }
+
+    /**
+     * Each request of the batch is recorded as an individual query.
+     *
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.util.List)
+     */
+    public void search(List<SearchRequest> requests) throws SearchException {
+        for (SearchRequest request : requests) {
+            record(request.getQuery(), request.getFields(), request
+                .getCollector()
+                .getMaxResultNumber());
+        }
+        fSearcher.search(requests);
+    }
+
+    /**
+     * @see org.ubimix.commons.search.IDocumentSearcher#search(java.lang.String,
+     *      org.ubimix.commons.search.IDocumentSearcher.ISearchResultCollector)
+     */
+    public void search(String q, ISearchResultCollector collector)
+        throws SearchException {
+        search(q, null, collector);
+    }
+
+    /**
+     * Similar document searches are not recorded: they are not text queries.
+     *
+     * @see org.ubimix.commons.search.IDocumentSearcher#searchSimilar(org.ubimix.commons.search.IDocument,
+     *      java.util.Collection, int)
+     */
+    public ISearchResultCursor searchSimilar(
+        IDocument doc,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        return fSearcher.searchSimilar(doc, fields, maxResultNumber);
+    }
+
+    /**
+     * Similar document searches are not recorded: they are not text queries.
+     *
+     * @see org.ubimix.commons.search.IDocumentSearcher#searchSimilar(java.lang.String,
+     *      java.lang.String, java.util.Collection, int)
+     */
+    public ISearchResultCursor searchSimilar(
+        String field,
+        String identifier,
+        Collection<String> fields,
+        int maxResultNumber) throws SearchException {
+        return fSearcher.searchSimilar(
+            field,
+            identifier,
+            fields,
+            maxResultNumber);
+    }
+
+}
@@ -3,13 +3,25 @@
  */
 package org.ubimix.commons.search;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.index.FilterIndexReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
@@ -19,10 +31,17 @@ import org.ubimix.commons.search.IDocumentSearcher;
 import org.ubimix.commons.search.MapBasedDocument;
 import org.ubimix.commons.search.SearchException;
 import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription.AnalyzerType;
 import org.ubimix.commons.search.IDocumentSearcher.ISearchResult;
 import org.ubimix.commons.search.IDocumentSearcher.ISearchResultCollector;
+import org.ubimix.commons.search.IDocumentSearcher.ISearchResultCursor;
+import org.ubimix.commons.search.IDocumentSearcher.SearchRequest;
 import org.ubimix.commons.search.lucene.DocumentIndexer;
+import org.ubimix.commons.search.lucene.DocumentQueryParser;
 import org.ubimix.commons.search.lucene.DocumentSearcher;
+import org.ubimix.commons.search.lucene.IndexSchema;
+import org.ubimix.commons.search.lucene.ReaderWarmer;
+import org.ubimix.commons.search.lucene.SearchProfile;
 
 /**
  * @author kotelnikov
@@ -50,6 +69,14 @@ public class IndexTest extends TestCase {
         return result;
     }
 
+    private long getSize(Directory dir) throws IOException {
+        long size = 0;
+        for (String name : dir.listAll()) {
+            size += dir.fileLength(name);
+        }
+        return size;
+    }
+
     private void index(MapBasedDocument doc) throws SearchException {
         IDocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
         Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
@@ -65,7 +92,7 @@ public class IndexTest extends TestCase {
         return new SimpleAnalyzer(Version.LUCENE_33);
     }
 
-    protected RAMDirectory newDirectory() {
+    protected Directory newDirectory() {
         return new RAMDirectory();
     }
 
@@ -73,6 +100,18 @@ public class IndexTest extends TestCase {
         return new MapBasedDocument(getMap(strings));
     }
 
+    private void search(DocumentSearcher searcher, String query)
+        throws SearchException {
+        searcher.search(query, new ISearchResultCollector() {
+            public int getMaxResultNumber() {
+                return 10;
+            }
+
+            public void onSearchResult(ISearchResult result) {
+            }
+        });
+    }
+
     private void search(String query, String result) throws SearchException {
         final StringBuilder buf = new StringBuilder();
         IDocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
@@ -159,4 +198,668 @@ public class IndexTest extends TestCase {
 
     }
 
+    public void testCommonTerms() throws SearchException {
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        List<IDocument> docs = new ArrayList<IDocument>();
+        for (int i = 0; i < 20; i++) {
+            docs.add(newDocument("id", "" + i, "title", "The best of the day"));
+        }
+        docs.add(newDocument("id", "a", "title", "The best of the year"));
+        docs.add(newDocument("id", "b", "title", "Year of the dragon"));
+        indexer.index(new DocumentProvider(docs));
+        indexer.close();
+
+        DocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
+        ISearchResultCursor cursor = searcher.search(
+            "the best of the year",
+            null,
+            100);
+        int count = 0;
+        while (cursor.hasNext()) {
+            cursor.next();
+            count++;
+        }
+        cursor.close();
+        assertEquals(22, count);
+
+        // Common terms only score documents matching the rare term
+        searcher.setCommonTermsCutoff(0.5f);
+        final List<String> ids = new ArrayList<String>();
+        searcher.search("the best of the year", new ISearchResultCollector() {
+            public int getMaxResultNumber() {
+                return 100;
+            }
+
+            public void onSearchResult(ISearchResult result)
+                throws SearchException {
+                assertNotNull(result.getHighlight());
+                ids.add(result.getDocument().getValue("id"));
+            }
+        });
+        assertEquals(Arrays.asList("a", "b"), ids);
+
+        // All terms are common, so all of them are required
+        cursor = searcher.search("the best", null, 100);
+        count = 0;
+        while (cursor.hasNext()) {
+            cursor.next();
+            count++;
+        }
+        cursor.close();
+        assertEquals(21, count);
+        searcher.close();
+    }
+
+    public void testCompressedFields() throws IOException {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            buf.append("Lorem ipsum dolor sit amet number ");
+            buf.append(i).append(". ");
+        }
+        String content = buf.toString();
+        long[] sizes = new long[2];
+        for (int i = 0; i < sizes.length; i++) {
+            boolean compressed = i > 0;
+            Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
+            fields.put("content", FieldDescription
+                .builder()
+                .setCompressed(compressed));
+            Directory dir = newDirectory();
+            DocumentIndexer indexer = new DocumentIndexer(dir, fAnalyzer);
+            indexer.index(fields, newDocument(
+                "id",
+                "1",
+                "title",
+                "Hello world",
+                "content",
+                content));
+            indexer.close();
+            sizes[i] = getSize(dir);
+
+            DocumentSearcher searcher = new DocumentSearcher(dir, fAnalyzer);
+            ISearchResultCursor cursor = searcher.search(
+                "content:dolor",
+                null,
+                10);
+            ISearchResult result = cursor.next();
+            IDocument doc = result.getDocument();
+            assertEquals(3, doc.getFields().size());
+            assertTrue(doc.getFields().contains("content"));
+            assertEquals("Hello world", doc.getValue("title"));
+            assertEquals(content, doc.getValue("content"));
+            cursor.close();
+
+            cursor = searcher.search("ipsum", null, 10);
+            assertTrue(cursor.next().getHighlight().contains("<B>ipsum</B>"));
+            cursor.close();
+            searcher.close();
+        }
+        assertTrue(sizes[1] < sizes[0] / 2);
+    }
+
+    public void testDelete() throws SearchException {
+        Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
+        fields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        indexer.setIdentifierFilter(true, 0.01);
+        List<IDocument> docs = new ArrayList<IDocument>();
+        for (int i = 0; i < 3000; i++) {
+            docs.add(newDocument("id", "" + i, "title", "Item number" + i));
+        }
+        docs.add(newDocument("id", "a", "title", "Expired offer"));
+        docs.add(newDocument("id", "b", "title", "Current offer"));
+        indexer.index(fields, new DocumentProvider(docs));
+        indexer.close();
+
+        indexer = new DocumentIndexer(fDir, fAnalyzer);
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 3000; i++) {
+            ids.add("" + i);
+        }
+        ids.add("unknown");
+        indexer.delete("id", ids);
+        indexer.delete("title:expired");
+        indexer.close();
+        search("item", "");
+        search("offer", "b");
+    }
+
+    public void testDeleteByQuery() throws SearchException {
+        Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
+        fields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        indexer.setSchema(new IndexSchema(fields));
+        indexer.index(newDocument("id", "ABC-1", "title", "First offer"));
+        indexer.index(newDocument("id", "ABC-2", "title", "Second offer"));
+        indexer.close();
+        search("id:ABC-1", "ABC-1");
+
+        // Non-analyzed fields are parsed in the same way as in searches
+        indexer = new DocumentIndexer(fDir, fAnalyzer);
+        indexer.delete("id:ABC-1");
+        indexer.close();
+        search("id:ABC-1", "");
+        search("offer", "ABC-2");
+    }
+
+    public void testSchema() throws SearchException {
+        Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
+        fields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+        fields.put("title", FieldDescription
+            .builder()
+            .setBoostFactor(2)
+            .setIndexShingles(true));
+        FieldDescription.Builder code = FieldDescription
+            .builder()
+            .setAnalyze(false);
+        code.setInFullContent(true);
+        fields.put("code", code);
+        IndexSchema schema = new IndexSchema(fields);
+        assertEquals(schema, IndexSchema.fromUserData(schema.toUserData()));
+        assertEquals(Boolean.TRUE, IndexSchema
+            .fromUserData(schema.toUserData())
+            .getField("code")
+            .getInFullContent());
+        // Descriptions are compared using all their flags
+        assertEquals(fields.get("title"), schema.getField("title"));
+        assertEquals(fields.get("title").hashCode(), schema
+            .getField("title")
+            .hashCode());
+        assertFalse(fields.get("title").equals(
+            FieldDescription.builder().setBoostFactor(2)));
+        assertFalse(code.equals(FieldDescription.builder().setAnalyze(false)));
+
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        assertTrue(indexer.getSchema().isEmpty());
+        indexer.setSchema(schema);
+        indexer.index(newDocument("id", "ABC-1", "title", "Hello world"));
+        indexer.close();
+
+        // The schema is stored with the index
+        indexer = new DocumentIndexer(fDir, fAnalyzer);
+        assertEquals(schema, indexer.getSchema());
+        // The previous version is replaced using the stored schema
+        indexer.index(newDocument("id", "ABC-1", "title", "Hello John"));
+        indexer.index(newDocument("id", "ABC-2", "title", "Hello world"));
+        indexer.close();
+
+        search("hello", "ABC-1,ABC-2");
+        // Values of non-analyzed fields are searched as is
+        search("id:ABC-1", "ABC-1");
+        DocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
+        search(searcher, "hello");
+        assertEquals(schema, searcher.getSchema());
+        searcher.close();
+
+        // Readers are closed if their schema can not be loaded
+        final List<IndexReader> readers = new ArrayList<IndexReader>();
+        searcher = new DocumentSearcher(fDir, fAnalyzer) {
+            @Override
+            protected IndexSchema loadSchema(IndexReader reader)
+                throws IOException {
+                readers.add(reader);
+                throw new IOException("Broken schema");
+            }
+        };
+        try {
+            search(searcher, "hello");
+            fail();
+        } catch (SearchException e) {
+        }
+        assertEquals(1, readers.size());
+        assertEquals(0, readers.get(0).getRefCount());
+        assertEquals(IndexSchema.EMPTY, searcher.getSchema());
+        searcher.close();
+    }
+
+    public void testCursor() throws SearchException {
+        index(newDocument("id", "1", "title", "Hello world"));
+        index(newDocument("id", "2", "title", "Hello John"));
+        index(newDocument("id", "3", "title", "Hello Smith"));
+
+        IDocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
+        ISearchResultCursor cursor = searcher.search("hello", null, 10);
+        try {
+            assertTrue(cursor.hasNext());
+            ISearchResult result = cursor.next();
+            assertNotNull(result);
+            String id = result.getDocument().getValue("id");
+            assertNotNull(id);
+            assertTrue(cursor.hasNext());
+        } finally {
+            cursor.close();
+        }
+        // Closed cursors do not return results anymore
+        assertFalse(cursor.hasNext());
+        assertNull(cursor.next());
+
+        cursor = searcher.search("hello", null, 2);
+        int count = 0;
+        while (cursor.hasNext()) {
+            assertNotNull(cursor.next().getDocument().getValue("id"));
+            count++;
+        }
+        cursor.close();
+        assertEquals(2, count);
+        searcher.close();
+    }
+
+    public void testBatchSearch() throws SearchException {
+        index(newDocument("id", "1", "title", "Hello world"));
+        index(newDocument("id", "2", "title", "Hello John"));
+        index(newDocument("id", "3", "title", "Goodbye John"));
+
+        final List<StringBuilder> results = new ArrayList<StringBuilder>();
+        List<SearchRequest> requests = new ArrayList<SearchRequest>();
+        String[] queries = { "world", "john", "world", "title:goodbye" };
+        for (String query : queries) {
+            final StringBuilder buf = new StringBuilder();
+            results.add(buf);
+            requests.add(new SearchRequest(query, new ISearchResultCollector() {
+                public int getMaxResultNumber() {
+                    return 10;
+                }
+
+                public void onSearchResult(ISearchResult result)
+                    throws SearchException {
+                    if (buf.length() > 0) {
+                        buf.append(",");
+                    }
+                    buf.append(result.getDocument().getValue("id"));
+                }
+            }));
+        }
+        IDocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
+        searcher.search(requests);
+        searcher.close();
+        assertEquals("1", results.get(0).toString());
+        assertEquals("1", results.get(2).toString());
+        assertEquals("3", results.get(3).toString());
+        String john = results.get(1).toString();
+        assertTrue(john.equals("2,3") || john.equals("3,2"));
+    }
+
+    public void testBatchSearchFailure() throws SearchException {
+        index(newDocument("id", "1", "title", "Hello world"));
+        index(newDocument("id", "2", "title", "Hello John"));
+
+        final AtomicInteger running = new AtomicInteger();
+        DocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer) {
+            @Override
+            protected QueryResults executeQuery(
+                IndexSearcher searcher,
+                String q,
+                Collection<String> fields,
+                int maxResultNumber) throws SearchException {
+                running.incrementAndGet();
+                try {
+                    if (!"world".equals(q)) {
+                        Thread.sleep(100);
+                    }
+                    return super.executeQuery(
+                        searcher,
+                        q,
+                        fields,
+                        maxResultNumber);
+                } catch (InterruptedException e) {
+                    throw new SearchException(e);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+        List<SearchRequest> requests = new ArrayList<SearchRequest>();
+        for (String query : new String[] { "world", "john" }) {
+            requests.add(new SearchRequest(query, new ISearchResultCollector() {
+                public int getMaxResultNumber() {
+                    return 10;
+                }
+
+                public void onSearchResult(ISearchResult result)
+                    throws SearchException {
+                    throw new SearchException("Collector failure");
+                }
+            }));
+        }
+        try {
+            searcher.search(requests);
+            fail();
+        } catch (SearchException e) {
+        }
+        // The reader is released only when all queries are finished
+        assertEquals(0, running.get());
+        search(searcher, "hello");
+        searcher.close();
+    }
+
+    public void testAnalyzerTypes() throws SearchException {
+        Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
+        fields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+        fields.put("tag", FieldDescription
+            .builder()
+            .setAnalyzerType(AnalyzerType.KEYWORD));
+        fields.put("body", FieldDescription
+            .builder()
+            .setAnalyzerType(AnalyzerType.STEMMING)
+            .setIndexShingles(true));
+        fields.put("name", FieldDescription
+            .builder()
+            .setAnalyzerType(AnalyzerType.NGRAM));
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        indexer.setSchema(new IndexSchema(fields));
+        indexer.index(new DocumentProvider(new IDocument[] {
+            newDocument(
+                "id",
+                "1",
+                "tag",
+                "Red Apple",
+                "body",
+                "Running dogs",
+                "name",
+                "Johnson"),
+            newDocument(
+                "id",
+                "2",
+                "tag",
+                "Red",
+                "body",
+                "The runner",
+                "name",
+                "Jones") }));
+        indexer.close();
+
+        search("tag:\"red apple\"", "1");
+        search("tag:red", "2");
+        search("body:run", "1");
+        search("body:\"runs dog\"", "1");
+        search("name:joh", "1");
+        search("name:jon", "2");
+        search("name:johnson", "1");
+
+        // Highlighting uses the same analysis as queries
+        final List<String> highlights = new ArrayList<String>();
+        DocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
+        searcher.search(
+            "body:run",
+            Arrays.asList("body"),
+            new ISearchResultCollector() {
+                public int getMaxResultNumber() {
+                    return 10;
+                }
+
+                public void onSearchResult(ISearchResult result)
+                    throws SearchException {
+                    highlights.add(result.getHighlight());
+                    highlights.add(result.getHighlight());
+                }
+            });
+        searcher.close();
+        assertEquals(2, highlights.size());
+        assertTrue(highlights.get(0).contains("<B>Running</B>"));
+        assertEquals(highlights.get(0), highlights.get(1));
+    }
+
+    public void testBackup() throws IOException {
+        Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
+        fields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        indexer.index(fields, newDocument("id", "1", "title", "Hello world"));
+        Directory backup = new RAMDirectory();
+        assertTrue(indexer.backup(backup) > 0);
+        indexer.index(fields, newDocument("id", "2", "title", "Hello John"));
+        // Only new files are copied
+        long bytes = indexer.backup(backup);
+        assertTrue(bytes > 0);
+        assertTrue(bytes < getSize(fDir));
+        indexer.close();
+
+        DocumentSearcher searcher = new DocumentSearcher(backup, fAnalyzer);
+        ISearchResultCursor cursor = searcher.search("hello", null, 10);
+        int count = 0;
+        while (cursor.hasNext()) {
+            cursor.next();
+            count++;
+        }
+        cursor.close();
+        searcher.close();
+        assertEquals(2, count);
+    }
+
+    public void testPhraseShingles() throws Exception {
+        Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
+        fields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+        fields.put("content", FieldDescription.builder().setIndexShingles(true));
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        indexer.setSchema(new IndexSchema(fields));
+        indexer.index(fields, new DocumentProvider(new IDocument[] {
+            newDocument("id", "1", "content", "To be or not to be"),
+            newDocument("id", "2", "content", "The quick brown fox"),
+            newDocument("id", "3", "content", "Not to be confused with it") }));
+        indexer.close();
+
+        search("content:\"to be\"", "1,3");
+        search("content:\"not to be\"", "1,3");
+        search("content:\"to be or not\"", "1");
+        search("content:\"brown quick\"", "");
+        search("content:\"quick brown fox\"", "2");
+        search("content:\"brown fox\"~2", "2");
+        search("\"quick brown\"", "2");
+
+        QueryParser parser = new DocumentQueryParser(
+            "content",
+            fAnalyzer,
+            new IndexSchema(fields));
+        assertEquals(
+            "content$shingles:\"to be be or\"",
+            parser.parse("\"to be or\"").toString());
+
+        DocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
+        ISearchResultCursor cursor = searcher.search(
+            "\"quick brown\"",
+            Arrays.asList("content"),
+            10);
+        String highlight = cursor.next().getHighlight();
+        assertTrue(highlight.contains("<B>quick</B>"));
+        cursor.close();
+        searcher.close();
+    }
+
+    public void testPhraseShinglesInFullContent() throws Exception {
+        Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
+        fields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+        fields.put("title", FieldDescription.builder().setIndexShingles(true));
+        fields.put("body", FieldDescription.builder());
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        indexer.setSchema(new IndexSchema(fields));
+        indexer.index(fields, new DocumentProvider(new IDocument[] {
+            newDocument("id", "1", "title", "Foxes", "body", "Quick brown foxes"),
+            newDocument("id", "2", "title", "Quick brown foxes", "body", "Foxes") }));
+        indexer.close();
+
+        search("brown", "1,2");
+        // Bigrams of the full content are built from fields without shingles
+        search("\"quick brown\"", "1,2");
+        search("title:\"quick brown\"", "2");
+        search("body:\"quick brown\"", "1");
+    }
+
+    public void testProfiling() throws SearchException {
+        index(newDocument("id", "1", "title", "Hello world"));
+        index(newDocument("id", "2", "title", "Hello John"));
+        final List<SearchProfile> profiles = new ArrayList<SearchProfile>();
+        DocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer) {
+            @Override
+            protected void onSearchProfile(SearchProfile profile) {
+                super.onSearchProfile(profile);
+                profiles.add(profile);
+            }
+        };
+        search(searcher, "hello");
+        assertEquals(0, profiles.size());
+
+        searcher.setSlowQueryThreshold(0);
+        ISearchResultCursor cursor = searcher.search("hello", null, 10);
+        ISearchResult result = cursor.next();
+        result.getHighlight();
+        cursor.close();
+        assertEquals(1, profiles.size());
+        SearchProfile profile = profiles.get(0);
+        assertEquals("hello", profile.getQuery());
+        assertEquals(2, profile.getHitCount());
+        assertEquals(1, profile.getLoadedDocuments());
+        assertTrue(profile.getStoredBytes() > 0);
+        assertEquals(
+            SearchProfile.getStoredBytes(result.getDocument()),
+            profile.getStoredBytes());
+        assertTrue(profile.getParseTime() > 0);
+        assertTrue(profile.getSearchTime() > 0);
+        assertTrue(profile.getLoadTime() > 0);
+        assertTrue(profile.getHighlightTime() > 0);
+        assertTrue(profile.toString().contains(" hits=2 "));
+
+        search(searcher, "john");
+        assertEquals(2, profiles.size());
+        assertEquals(1, profiles.get(1).getLoadedDocuments());
+        searcher.close();
+
+        // Stored values are measured in UTF-8 bytes
+        IDocument doc = newDocument(
+            "id",
+            "1",
+            "title",
+            "\u00e9\u20ac\ud834\udd1e");
+        assertEquals(1 + 2 + 3 + 4, SearchProfile.getStoredBytes(doc));
+    }
+
+    private String getIds(ISearchResultCursor cursor) throws SearchException {
+        StringBuilder buf = new StringBuilder();
+        while (cursor.hasNext()) {
+            if (buf.length() > 0) {
+                buf.append(",");
+            }
+            buf.append(cursor.next().getDocument().getValue("id"));
+        }
+        cursor.close();
+        return buf.toString();
+    }
+
+    public void testSimilar() throws SearchException {
+        Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
+        fields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        indexer.setSchema(new IndexSchema(fields));
+        indexer.index(new DocumentProvider(new IDocument[] {
+            newDocument("id", "1", "title", "Lucene search engine library for Java"),
+            newDocument("id", "2", "title", "Java library for search with Lucene"),
+            newDocument("id", "3", "title", "Pasta and pizza recipes"),
+            newDocument("id", "4", "title", "Pizza recipes from Italy"),
+            newDocument("id", "5", "title", "Search engine internals") }));
+        indexer.close();
+
+        DocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
+        // The source document is not returned
+        assertEquals("2,5", getIds(searcher.searchSimilar("id", "1", null, 10)));
+        assertEquals("", getIds(searcher.searchSimilar("id", "x", null, 10)));
+        // Terms found in only one document are ignored
+        IDocument doc = newDocument("id", "4", "title", "Pizza and pasta");
+        assertEquals("3", getIds(searcher.searchSimilar(doc, null, 10)));
+        assertEquals("3", getIds(searcher.searchSimilar(
+            doc,
+            Arrays.asList("title"),
+            10)));
+
+        searcher.setSimilarityLimits(1, 2);
+        assertEquals(1, getIds(searcher.searchSimilar("id", "1", null, 10))
+            .split(",").length);
+        // Only "search" is found in three documents
+        searcher.setSimilarityLimits(10, 3);
+        assertEquals("5,1", getIds(searcher.searchSimilar("id", "2", null, 10)));
+        searcher.close();
+    }
+
+    public void testWarmerFailures() throws Exception {
+        index(newDocument("id", "1", "title", "Hello big world"));
+        DocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
+        ReaderWarmer warmer = new ReaderWarmer(searcher);
+        warmer.addCachedField("title");
+        warmer.addQuery("hello", Arrays.asList("title"));
+        // Field caches which can not be loaded should not block the reader
+        IndexReader reader = IndexReader.open(fDir);
+        try {
+            warmer.onReaderOpen(new FilterIndexReader(reader) {
+                @Override
+                public IndexReader[] getSequentialSubReaders() {
+                    return null;
+                }
+
+                @Override
+                public TermEnum terms(Term t) throws IOException {
+                    throw new IOException("Broken terms");
+                }
+            });
+        } finally {
+            reader.close();
+        }
+        searcher.close();
+    }
+
+    public void testLeadingWildcards() throws SearchException {
+        Map<String, FieldDescription> fields = new HashMap<String, IDocumentIndexer.FieldDescription>();
+        fields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+        fields.put("title", FieldDescription.builder().setIndexReversed(true));
+        fields.put("code", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIndexReversed(true));
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        indexer.setSchema(new IndexSchema(fields));
+        indexer.index(fields, new DocumentProvider(new IDocument[] {
+            newDocument("id", "1", "title", "Smartphone review", "code", "a-2023"),
+            newDocument("id", "2", "title", "Old telephone", "code", "b-2022"),
+            newDocument("id", "3", "title", "Phonebook", "code", "c-2023"),
+            newDocument("id", "4", "summary", "Wireless headphone") }));
+        indexer.close();
+
+        search("title:*phone", "1,2");
+        // The full content contains reversed tokens of all fields
+        search("*phone", "1,2,4");
+        search("title:*ph?ne", "1,2");
+        search("code:*-2023", "1,3");
+        // Leading wildcards are still rejected if reversed tokens do not help
+        for (String query : new String[] { "summary:*phone", "title:*phone*" }) {
+            try {
+                search(query, "");
+                fail();
+            } catch (SearchException e) {
+            }
+        }
+    }
+
 }
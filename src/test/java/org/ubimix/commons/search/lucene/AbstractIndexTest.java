@@ -0,0 +1,74 @@
+package org.ubimix.commons.search.lucene;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.util.Version;
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IDocumentIndexer;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+import org.ubimix.commons.search.IDocumentSearcher;
+import org.ubimix.commons.search.IDocumentSearcher.ISearchResultCursor;
+import org.ubimix.commons.search.MapBasedDocument;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * Common methods of tests indexing simple documents with an identifier and a
+ * title. The "id" field is a non-analyzed identifier.
+ *
+ * @author kotelnikov
+ */
+public abstract class AbstractIndexTest extends TestCase {
+
+    protected Analyzer fAnalyzer;
+
+    protected Map<String, FieldDescription> fFields;
+
+    /**
+     * @param name
+     */
+    public AbstractIndexTest(String name) {
+        super(name);
+    }
+
+    protected int count(IDocumentSearcher searcher, String query)
+        throws SearchException {
+        return search(searcher, query).size();
+    }
+
+    protected void index(IDocumentIndexer indexer, String id, String title)
+        throws SearchException {
+        MapBasedDocument doc = new MapBasedDocument();
+        doc.setValue("id", id);
+        doc.setValue("title", title);
+        indexer.index(fFields, doc);
+    }
+
+    protected List<IDocument> search(IDocumentSearcher searcher, String query)
+        throws SearchException {
+        List<IDocument> result = new ArrayList<IDocument>();
+        ISearchResultCursor cursor = searcher.search(query, null, 10000);
+        while (cursor.hasNext()) {
+            result.add(cursor.next().getDocument());
+        }
+        cursor.close();
+        return result;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        fAnalyzer = new SimpleAnalyzer(Version.LUCENE_33);
+        fFields = new HashMap<String, FieldDescription>();
+        fFields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.ubimix.commons.search.lucene;
+
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * @author kotelnikov
+ */
+public class BloomFilterTest extends AbstractIndexTest {
+
+    /**
+     * @param name
+     */
+    public BloomFilterTest(String name) {
+        super(name);
+    }
+
+    public void testFilter() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("id-" + i);
+        }
+        assertFalse(filter.isSaturated());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("id-" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 1000; i < 11000; i++) {
+            if (filter.mightContain("id-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300);
+        filter.add("id-1000");
+        assertTrue(filter.isSaturated());
+    }
+
+    public void testIndexer() throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        DocumentIndexer indexer = new DocumentIndexer(dir, fAnalyzer);
+        index(indexer, "1", "Hello world");
+        indexer.close();
+
+        // Identifiers of existing documents are loaded from the index
+        indexer = new DocumentIndexer(dir, fAnalyzer);
+        indexer.setIdentifierFilter(true, 0.01);
+        for (int i = 2; i < 3000; i++) {
+            index(indexer, "" + i, "Hello John");
+        }
+        index(indexer, "1", "Goodbye world");
+        index(indexer, "2", "Goodbye John");
+        indexer.close();
+
+        DocumentSearcher searcher = new DocumentSearcher(dir, fAnalyzer);
+        assertEquals(2997, count(searcher, "hello"));
+        assertEquals(2, count(searcher, "goodbye"));
+        assertEquals(0, count(searcher, "world AND hello"));
+        searcher.close();
+    }
+
+}
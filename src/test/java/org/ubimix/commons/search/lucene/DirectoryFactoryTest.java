@@ -0,0 +1,140 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.SimpleFSDirectory;
+import org.apache.lucene.util.Version;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+import org.ubimix.commons.search.IDocumentSearcher.ISearchResultCursor;
+import org.ubimix.commons.search.MapBasedDocument;
+import org.ubimix.commons.search.lucene.DirectoryFactory.DirectoryType;
+import org.ubimix.commons.search.lucene.DirectoryFactory.LockType;
+
+/**
+ * @author kotelnikov
+ */
+public class DirectoryFactoryTest extends TestCase {
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private File fRoot;
+
+    /**
+     * @param name
+     */
+    public DirectoryFactoryTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        fRoot = new File(System.getProperty("java.io.tmpdir"), "factory-"
+            + System.nanoTime());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(fRoot);
+    }
+
+    public void testDirectoryTypes() throws Exception {
+        Analyzer analyzer = new SimpleAnalyzer(Version.LUCENE_33);
+        Map<String, FieldDescription> fields = new HashMap<String, FieldDescription>();
+        fields.put("id", FieldDescription
+            .builder()
+            .setAnalyze(false)
+            .setIdentifier(true));
+        DirectoryFactory factory = new DirectoryFactory();
+        DocumentIndexer indexer = factory.newIndexer(fRoot, analyzer);
+        for (int i = 0; i < 10; i++) {
+            MapBasedDocument doc = new MapBasedDocument();
+            doc.setValue("id", "" + i);
+            doc.setValue("title", "Hello world " + i);
+            indexer.index(fields, doc);
+        }
+        indexer.close();
+
+        long size = DirectoryFactory.getIndexSize(fRoot);
+        assertTrue(size > 0);
+        assertTrue(factory.getDirectoryType(fRoot) != DirectoryType.OFF_HEAP);
+        factory.setOffHeapThreshold(size);
+        assertEquals(DirectoryType.OFF_HEAP, factory.getDirectoryType(fRoot));
+        factory.setOffHeapThreshold(size - 1);
+        assertTrue(factory.getDirectoryType(fRoot) != DirectoryType.OFF_HEAP);
+
+        Class<?>[] classes = {
+            MMapDirectory.class,
+            NIOFSDirectory.class,
+            SimpleFSDirectory.class,
+            OffHeapDirectory.class };
+        DirectoryType[] types = {
+            DirectoryType.MMAP,
+            DirectoryType.NIO,
+            DirectoryType.SIMPLE,
+            DirectoryType.OFF_HEAP };
+        factory.setPreload(true).setTermIndexDivisor(2);
+        for (int i = 0; i < types.length; i++) {
+            factory.setType(types[i]);
+            Directory dir = factory.open(fRoot);
+            assertEquals(classes[i], dir.getClass());
+            assertTrue(DirectoryFactory.preload(dir) >= size);
+            dir.close();
+
+            DocumentSearcher searcher = factory.newSearcher(fRoot, analyzer);
+            ISearchResultCursor cursor = searcher.search("hello", null, 100);
+            int count = 0;
+            while (cursor.hasNext()) {
+                cursor.next();
+                count++;
+            }
+            cursor.close();
+            searcher.close();
+            assertEquals(10, count);
+        }
+    }
+
+    public void testLocks() throws Exception {
+        Analyzer analyzer = new SimpleAnalyzer(Version.LUCENE_33);
+        DirectoryFactory factory = new DirectoryFactory()
+            .setType(DirectoryType.SIMPLE)
+            .setLockType(LockType.SIMPLE);
+        File first = new File(fRoot, "first");
+        File second = new File(fRoot, "second");
+        DocumentIndexer firstIndexer = factory.newIndexer(first, analyzer);
+        DocumentIndexer secondIndexer = factory.newIndexer(second, analyzer);
+
+        // Each directory keeps its own write lock
+        File lock = new File(second, IndexWriter.WRITE_LOCK_NAME);
+        assertTrue(new File(first, IndexWriter.WRITE_LOCK_NAME).exists());
+        assertTrue(lock.exists());
+        firstIndexer.close();
+        assertTrue(lock.exists());
+
+        // Write locks are not copied to memory
+        factory.setType(DirectoryType.OFF_HEAP);
+        Directory dir = factory.open(second);
+        assertFalse(dir.fileExists(IndexWriter.WRITE_LOCK_NAME));
+        dir.close();
+        secondIndexer.close();
+        assertFalse(lock.exists());
+    }
+
+}
@@ -0,0 +1,114 @@
+package org.ubimix.commons.search.lucene;
+
+import java.util.Random;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.ubimix.commons.search.IndexTest;
+
+/**
+ * Runs all index tests on the {@link OffHeapDirectory}. Small blocks are used
+ * to check reads and writes crossing block boundaries.
+ *
+ * @author kotelnikov
+ */
+public class OffHeapDirectoryTest extends IndexTest {
+
+    /**
+     * @param name
+     */
+    public OffHeapDirectoryTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected Directory newDirectory() {
+        return new OffHeapDirectory(1024);
+    }
+
+    public void testConcurrentReads() throws Exception {
+        final OffHeapDirectory dir = new OffHeapDirectory(1024);
+        final IndexOutput out = dir.createOutput("test");
+        final Throwable[] error = { null };
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    // Each chunk adds a new block
+                    byte[] chunk = new byte[1024];
+                    for (int i = 0; i < 1000; i++) {
+                        for (int j = 0; j < chunk.length; j++) {
+                            chunk[j] = (byte) (i * chunk.length + j);
+                        }
+                        out.writeBytes(chunk, 0, chunk.length);
+                        out.flush();
+                    }
+                    out.close();
+                } catch (Throwable t) {
+                    error[0] = t;
+                }
+            }
+        };
+        writer.start();
+        // Readers always see all flushed data
+        while (writer.isAlive()) {
+            IndexInput in = dir.openInput("test");
+            long len = in.length();
+            if (len > 0) {
+                in.seek(len - 1);
+                assertEquals((byte) (len - 1), in.readByte());
+            }
+            in.close();
+        }
+        writer.join();
+        assertNull(error[0]);
+        assertEquals(1024 * 1000, dir.fileLength("test"));
+        dir.close();
+    }
+
+    public void testFiles() throws Exception {
+        OffHeapDirectory dir = new OffHeapDirectory(1024);
+        byte[] data = new byte[5000];
+        new Random(1).nextBytes(data);
+        IndexOutput out = dir.createOutput("test");
+        out.writeInt(0);
+        out.writeBytes(data, 10, data.length - 10);
+        out.writeByte((byte) 1);
+        out.seek(0);
+        out.writeInt(data.length);
+        out.close();
+        assertEquals(4 + data.length - 10 + 1, dir.fileLength("test"));
+        assertEquals(5 * 1024, dir.sizeInBytes());
+
+        IndexInput in = dir.openInput("test");
+        assertEquals(data.length, in.readInt());
+        IndexInput clone = (IndexInput) in.clone();
+        byte[] buf = new byte[data.length - 10];
+        in.readBytes(buf, 0, buf.length);
+        for (int i = 0; i < buf.length; i++) {
+            assertEquals(data[i + 10], buf[i]);
+        }
+        assertEquals(1, in.readByte());
+        try {
+            in.readByte();
+            fail();
+        } catch (Exception e) {
+        }
+        // The clone is independent of the original input
+        assertEquals(4, clone.getFilePointer());
+        assertEquals(data[10], clone.readByte());
+        clone.seek(2000);
+        assertEquals(data[2000 - 4 + 10], clone.readByte());
+        clone.seek(1030);
+        assertEquals(data[1030 - 4 + 10], clone.readByte());
+        clone.close();
+        in.close();
+
+        dir.deleteFile("test");
+        assertFalse(dir.fileExists("test"));
+        assertEquals(0, dir.sizeInBytes());
+        dir.close();
+    }
+
+}
@@ -0,0 +1,127 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.File;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.ubimix.commons.search.SearchException;
+
+/**
+ * @author kotelnikov
+ */
+public class ReplicationTest extends AbstractIndexTest {
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private File fRoot;
+
+    /**
+     * @param name
+     */
+    public ReplicationTest(String name) {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        fRoot = new File(System.getProperty("java.io.tmpdir"), "replication-"
+            + System.nanoTime());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(fRoot);
+    }
+
+    public void testReplication() throws Exception {
+        Directory master = FSDirectory.open(new File(fRoot, "master"));
+        Directory replica = FSDirectory.open(new File(fRoot, "replica"));
+        DocumentIndexer indexer = new DocumentIndexer(master, fAnalyzer);
+        index(indexer, "1", "Hello world");
+        index(indexer, "2", "Hello John");
+        long generation = indexer.publish();
+
+        IndexReplicator replicator = new IndexReplicator(master, replica, null);
+        assertTrue(replicator.replicate(generation));
+        assertEquals(generation, replicator.getGeneration());
+        assertFalse(replicator.replicate(generation));
+
+        DocumentSearcher searcher = new DocumentSearcher(replica, fAnalyzer);
+        replicator = new IndexReplicator(master, replica, searcher);
+        assertEquals(2, count(searcher, "hello"));
+        assertFalse(replicator.replicate());
+
+        // Commits which are not published are not replicated
+        index(indexer, "1", "Goodbye moon");
+        indexer.getWriter().commit();
+        assertFalse(replicator.replicate());
+        assertEquals(2, count(searcher, "hello"));
+        index(indexer, "1", "Hello world");
+
+        // Only the new segment is copied
+        index(indexer, "3", "Goodbye John");
+        indexer.publish();
+        assertTrue(replicator.replicate());
+        assertTrue(replicator.getCopiedFiles() < replica.listAll().length);
+        assertEquals(2, count(searcher, "john"));
+
+        // Updated documents replace old versions in the replica
+        index(indexer, "1", "Goodbye world");
+        indexer.publish();
+        assertTrue(replicator.replicate());
+        assertEquals(1, count(searcher, "hello"));
+        assertEquals(2, count(searcher, "goodbye"));
+
+        // Commits are removed when newer commits are published
+        indexer.publish();
+        try {
+            new IndexReplicator(master, replica, null).replicate(generation);
+            fail();
+        } catch (SearchException e) {
+        }
+
+        searcher.close();
+        indexer.close();
+        master.close();
+        replica.close();
+    }
+
+    public void testRestart() throws Exception {
+        Directory master = FSDirectory.open(new File(fRoot, "master"));
+        DocumentIndexer indexer = new DocumentIndexer(master, fAnalyzer);
+        index(indexer, "1", "Hello world");
+        index(indexer, "2", "Hello John");
+        long generation = indexer.publish();
+        index(indexer, "3", "Hello moon");
+        indexer.close();
+
+        // The published commit remains pinned when the indexer is re-opened
+        indexer = new DocumentIndexer(master, fAnalyzer);
+        index(indexer, "4", "Hello sun");
+        indexer.close();
+        master.close();
+
+        // The replica shares only the directory with the master
+        master = FSDirectory.open(new File(fRoot, "master"));
+        Directory replica = FSDirectory.open(new File(fRoot, "replica"));
+        assertEquals(generation, DocumentIndexer.getPublishedGeneration(master));
+        IndexReplicator replicator = new IndexReplicator(master, replica, null);
+        replicator.run();
+        assertEquals(generation, replicator.getGeneration());
+        DocumentSearcher searcher = new DocumentSearcher(replica, fAnalyzer);
+        assertEquals(2, count(searcher, "hello"));
+        searcher.close();
+        master.close();
+        replica.close();
+    }
+
+}
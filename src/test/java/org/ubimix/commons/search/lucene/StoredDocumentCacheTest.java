@@ -0,0 +1,106 @@
+package org.ubimix.commons.search.lucene;
+
+import java.util.List;
+
+import org.apache.lucene.store.RAMDirectory;
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+
+/**
+ * @author kotelnikov
+ */
+public class StoredDocumentCacheTest extends AbstractIndexTest {
+
+    /**
+     * @param name
+     */
+    public StoredDocumentCacheTest(String name) {
+        super(name);
+    }
+
+    public void testCache() throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        DocumentIndexer indexer = new DocumentIndexer(dir, fAnalyzer);
+        index(indexer, "a", "Hello world");
+        index(indexer, "b", "Hello moon");
+        indexer.publish();
+
+        DocumentSearcher searcher = new DocumentSearcher(dir, fAnalyzer);
+        StoredDocumentCache cache = new StoredDocumentCache(1024 * 1024);
+        searcher.setDocumentCache(cache);
+        List<IDocument> first = search(searcher, "hello");
+        assertEquals(2, first.size());
+        assertEquals(2, cache.getSize());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertTrue(cache.getWeight() > 0);
+
+        // Cached documents are returned by next searches
+        List<IDocument> second = search(searcher, "hello");
+        assertEquals(2, second.size());
+        assertTrue(second.containsAll(first));
+        assertSame(first.get(0), second.get(0));
+        assertEquals(2, cache.getHitCount());
+
+        // Documents of merged segments are removed on refresh
+        index(indexer, "b", "Hello sun");
+        indexer.close();
+        assertTrue(searcher.refresh());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeight());
+        List<IDocument> third = search(searcher, "sun");
+        assertEquals(1, third.size());
+        assertEquals("Hello sun", third.get(0).getValue("title"));
+        assertEquals(0, search(searcher, "moon").size());
+        searcher.close();
+    }
+
+    public void testCompressedFields() throws Exception {
+        fFields.put("title", FieldDescription.builder().setCompressed(true));
+        RAMDirectory dir = new RAMDirectory();
+        DocumentIndexer indexer = new DocumentIndexer(dir, fAnalyzer);
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            title.append("Hello world ");
+        }
+        index(indexer, "a", title.toString());
+        indexer.close();
+
+        DocumentSearcher searcher = new DocumentSearcher(dir, fAnalyzer);
+        StoredDocumentCache cache = new StoredDocumentCache(1024 * 1024);
+        searcher.setDocumentCache(cache);
+        List<IDocument> first = search(searcher, "hello");
+        assertEquals(1, first.size());
+        StoredDocument doc = (StoredDocument) first.get(0);
+        long size = doc.getStoredSize();
+        assertTrue(size < title.length());
+
+        // Decompressed values are not kept by cached documents
+        assertEquals(title.toString(), doc.getValue("title"));
+        assertEquals(size, doc.getStoredSize());
+        List<IDocument> second = search(searcher, "hello");
+        assertSame(doc, second.get(0));
+        assertEquals(title.toString(), second.get(0).getValue("title"));
+        assertEquals(size, doc.getStoredSize());
+        searcher.close();
+    }
+
+    public void testEviction() throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        DocumentIndexer indexer = new DocumentIndexer(dir, fAnalyzer);
+        for (int i = 0; i < 100; i++) {
+            index(indexer, "" + i, "Hello world");
+        }
+        indexer.close();
+
+        DocumentSearcher searcher = new DocumentSearcher(dir, fAnalyzer);
+        StoredDocumentCache cache = new StoredDocumentCache(2000);
+        searcher.setDocumentCache(cache);
+        assertEquals(100, search(searcher, "hello").size());
+        assertTrue(cache.getSize() > 0);
+        assertTrue(cache.getSize() < 100);
+        assertTrue(cache.getWeight() <= cache.getMaxWeight());
+        searcher.close();
+    }
+
+}
@@ -0,0 +1,126 @@
+package org.ubimix.commons.search.lucene;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.ubimix.commons.search.IDocumentIndexer.FieldDescription;
+import org.ubimix.commons.search.MapBasedDocument;
+import org.ubimix.commons.search.SearchException;
+import org.ubimix.commons.search.Suggestion;
+
+/**
+ * @author kotelnikov
+ */
+public class SuggesterTest extends TestCase {
+
+    protected Analyzer fAnalyzer;
+
+    protected Directory fDir;
+
+    protected Map<String, FieldDescription> fFields;
+
+    /**
+     * @param name
+     */
+    public SuggesterTest(String name) {
+        super(name);
+    }
+
+    private void index(String id, String title) throws SearchException {
+        DocumentIndexer indexer = new DocumentIndexer(fDir, fAnalyzer);
+        MapBasedDocument doc = new MapBasedDocument();
+        doc.setValue("id", id);
+        doc.setValue("title", title);
+        indexer.index(fFields, doc);
+        indexer.close();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        fDir = new RAMDirectory();
+        fAnalyzer = new SimpleAnalyzer(Version.LUCENE_33);
+        fFields = new HashMap<String, FieldDescription>();
+        fFields.put("id", FieldDescription.builder().setIdentifier(true));
+        fFields.put("title", FieldDescription.builder().setSuggest(true));
+    }
+
+    private String toString(List<Suggestion> list) {
+        StringBuilder buf = new StringBuilder();
+        for (Suggestion suggestion : list) {
+            if (buf.length() > 0) {
+                buf.append(",");
+            }
+            buf.append(suggestion.getTerm());
+        }
+        return buf.toString();
+    }
+
+    public void testPrefixSuggester() throws Exception {
+        index("1", "John Smith");
+        index("2", "John Johnson");
+        index("3", "Joanna Smith");
+        DocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
+        PrefixSuggester suggester = new PrefixSuggester(fFields);
+        searcher.addReaderListener(suggester);
+        assertTrue(searcher.refresh());
+        assertEquals("john,joanna,johnson", toString(suggester.suggest(
+            "jo",
+            10)));
+        assertEquals("john", toString(suggester.suggest("jo", 1)));
+        assertEquals("smith", toString(suggester.suggest("s", 10)));
+        assertEquals("", toString(suggester.suggest("x", 10)));
+
+        // New segments are loaded when the reader is refreshed
+        index("4", "Jolene Smith");
+        index("5", "Jolene");
+        assertTrue(searcher.refresh());
+        assertEquals("john,jolene,joanna,johnson", toString(suggester
+            .suggest("jo", 10)));
+        assertEquals("smith", toString(suggester.suggest("smi", 10)));
+        searcher.close();
+    }
+
+    public void testSpellSuggester() throws Exception {
+        index("1", "John Smith");
+        index("2", "John Johnson");
+        index("3", "Joanna Smith");
+        index("4", "Jon Smyth");
+        DocumentSearcher searcher = new DocumentSearcher(fDir, fAnalyzer);
+        SpellSuggester suggester = new SpellSuggester(fFields);
+        searcher.addReaderListener(suggester);
+        assertTrue(searcher.refresh());
+
+        assertEquals("smith,smyth", toString(suggester.suggest("smoth", 10)));
+        assertEquals("smith", toString(suggester.suggest("smoth", 1)));
+        assertEquals("john,jon", toString(suggester.suggest("jhon", 10)));
+        // Only more popular terms are suggested for existing words
+        assertEquals("smith", toString(suggester.suggest("smyth", 10)));
+        assertEquals("", toString(suggester.suggest("smith", 10)));
+        assertEquals("", toString(suggester.suggest("xyzzy", 10)));
+
+        assertEquals("john smith", suggester.correct("jhon smoth"));
+        assertNull(suggester.correct("john smith"));
+        // Only plain terms are corrected
+        assertEquals("title:smith AND (john OR -smith)", suggester
+            .correct("title:smoth AND (jhon OR -smoth)"));
+        assertEquals("\"jhon smoth\" john", suggester
+            .correct("\"jhon smoth\" jhon"));
+        assertNull(suggester.correct("id:smoth id:(jhon smoth)"));
+        assertNull(suggester.correct("smoth* jh?n jhon~ [jhon TO smoth]"));
+        assertEquals("smith^2", suggester.correct("smoth^2"));
+
+        index("5", "Johanna");
+        assertTrue(searcher.refresh());
+        assertEquals("johanna", toString(suggester.suggest("johana", 1)));
+        searcher.close();
+    }
+
+}
\ No newline at end of file
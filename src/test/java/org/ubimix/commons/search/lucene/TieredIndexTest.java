@@ -0,0 +1,186 @@
+package org.ubimix.commons.search.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * @author kotelnikov
+ */
+public class TieredIndexTest extends AbstractIndexTest {
+
+    /**
+     * @param name
+     */
+    public TieredIndexTest(String name) {
+        super(name);
+    }
+
+    public void testDelete() throws Exception {
+        TieredIndex index = new TieredIndex(new RAMDirectory(), fAnalyzer);
+        index.setSchema(new IndexSchema(fFields));
+        for (int i = 0; i < 10; i++) {
+            index(index, "" + i, "Hello world " + i);
+        }
+        index.merge();
+        for (int i = 10; i < 20; i++) {
+            index(index, "" + i, "Hello world " + i);
+        }
+        assertEquals(20, count(index, "hello"));
+
+        // Documents are removed from both tiers
+        index.delete("id", Arrays.asList("1", "2", "11", "12"));
+        assertEquals(16, count(index, "hello"));
+        index(index, "3", "Hello moon");
+        assertEquals(16, count(index, "hello"));
+        index.delete("title:moon");
+        assertEquals(15, count(index, "hello"));
+        // Non-analyzed identifiers are parsed with the schema analyzer
+        index.delete("id:5 OR id:15");
+        assertEquals(13, count(index, "hello"));
+
+        index.merge();
+        assertEquals(13, count(index, "hello"));
+        index.close();
+    }
+
+    public void testTiers() throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        TieredIndex index = new TieredIndex(dir, fAnalyzer);
+        index.setMaxMemoryDocuments(1000);
+
+        // New documents are visible without commits
+        for (int i = 0; i < 10; i++) {
+            index(index, "" + i, "Hello world " + i);
+        }
+        assertEquals(10, index.getMemoryDocuments());
+        assertEquals(10, count(index, "hello"));
+
+        // Documents are moved to the disk tier
+        index.merge();
+        assertEquals(0, index.getMemoryDocuments());
+        assertEquals(10, count(index, "hello"));
+
+        // New versions in memory hide old versions on the disk
+        for (int i = 0; i < 5; i++) {
+            index(index, "" + i, "Hello moon " + i);
+        }
+        assertEquals(10, count(index, "hello"));
+        assertEquals(5, count(index, "world"));
+        assertEquals(5, count(index, "moon"));
+
+        // Updates of the same document in memory
+        index(index, "0", "Hello sun");
+        assertEquals(10, count(index, "hello"));
+        assertEquals(4, count(index, "moon"));
+        assertEquals(1, count(index, "sun"));
+
+        index.merge();
+        assertEquals(10, count(index, "hello"));
+        assertEquals(5, count(index, "world"));
+        assertEquals(4, count(index, "moon"));
+        index.close();
+
+        // All documents are committed to the disk tier
+        DocumentSearcher searcher = new DocumentSearcher(dir, fAnalyzer);
+        assertEquals(10, count(searcher, "hello"));
+        searcher.close();
+    }
+
+    public void testBackgroundMerge() throws Exception {
+        TieredIndex index = new TieredIndex(new RAMDirectory(), fAnalyzer);
+        index.setMaxMemoryDocuments(10);
+        for (int i = 0; i < 100; i++) {
+            index(index, "" + i % 50, "Hello world " + i);
+            assertEquals(Math.min(i + 1, 50), count(index, "hello"));
+        }
+        index.close();
+    }
+
+    public void testWritesDuringMerge() throws Exception {
+        final CountDownLatch copying = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread[] merger = { null };
+        final TieredIndex index = new TieredIndex(new RAMDirectory(), fAnalyzer) {
+            @Override
+            protected Directory newMemoryDirectory() {
+                return new RAMDirectory() {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    public IndexInput openInput(String name) throws IOException {
+                        if (Thread.currentThread() == merger[0]
+                            && !name.startsWith("segments")) {
+                            // Segments are copied to the disk tier
+                            copying.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                throw new IOException(e.getMessage());
+                            }
+                        }
+                        return super.openInput(name);
+                    }
+                };
+            }
+        };
+        index.setMaxMemoryDocuments(1000);
+        for (int i = 0; i < 10; i++) {
+            index(index, "" + i, "Hello world " + i);
+        }
+        index.merge();
+        for (int i = 10; i < 20; i++) {
+            index(index, "" + i, "Hello world " + i);
+        }
+        merger[0] = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    index.merge();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        merger[0].start();
+        assertTrue(copying.await(10, TimeUnit.SECONDS));
+
+        // Writes are not blocked by the copy and the merged tier is visible
+        // only once
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Void> writes = executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    assertEquals(20, count(index, "hello"));
+                    index(index, "20", "Hello world 20");
+                    index(index, "5", "Hello moon");
+                    index.delete("id", Arrays.asList("3", "12"));
+                    return null;
+                }
+            });
+            writes.get(10, TimeUnit.SECONDS);
+            assertEquals(19, count(index, "hello"));
+            assertEquals(18, count(index, "world"));
+            assertEquals(1, count(index, "moon"));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        merger[0].join();
+        assertEquals(19, count(index, "hello"));
+        assertEquals(18, count(index, "world"));
+        assertEquals(1, count(index, "moon"));
+        assertEquals(2, index.getMemoryDocuments());
+        index.close();
+    }
+
+}
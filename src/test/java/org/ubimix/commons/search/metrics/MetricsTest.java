@@ -0,0 +1,158 @@
+package org.ubimix.commons.search.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.ubimix.commons.search.DocumentProvider;
+import org.ubimix.commons.search.IDocument;
+import org.ubimix.commons.search.IDocumentSearcher.ISearchResultCursor;
+import org.ubimix.commons.search.MapBasedDocument;
+import org.ubimix.commons.search.lucene.DocumentIndexer;
+import org.ubimix.commons.search.lucene.DocumentSearcher;
+
+/**
+ * @author kotelnikov
+ */
+public class MetricsTest extends TestCase {
+
+    /**
+     * @param name
+     */
+    public MetricsTest(String name) {
+        super(name);
+    }
+
+    private MapBasedDocument newDocument(String id, String title) {
+        MapBasedDocument doc = new MapBasedDocument();
+        doc.setValue("id", id);
+        doc.setValue("title", title);
+        return doc;
+    }
+
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 0.001);
+        long p50 = histogram.getPercentile(0.5);
+        assertTrue(p50 >= 500 && p50 <= 500 * 1.125);
+        long p99 = histogram.getPercentile(0.99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1000, histogram.getPercentile(1));
+        for (long value = 0; value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            int bucket = Histogram.getBucket(value);
+            assertTrue(Histogram.getUpperBound(bucket) >= value);
+            assertTrue(bucket == 0
+                || Histogram.getUpperBound(bucket - 1) < value);
+        }
+    }
+
+    public void testMeteredObjects() throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        SimpleAnalyzer analyzer = new SimpleAnalyzer(Version.LUCENE_33);
+        MeteredDocumentIndexer indexer = new MeteredDocumentIndexer(
+            new DocumentIndexer(dir, analyzer));
+        indexer.index(newDocument("1", "Hello world"));
+        indexer.index(new DocumentProvider(new IDocument[] {
+            newDocument("2", "Hello John"),
+            newDocument("3", "Goodbye John") }));
+        assertEquals(2, indexer.getOperations());
+        assertEquals(3, indexer.getIndexedDocuments());
+        assertEquals(0, indexer.getErrors());
+        assertTrue(indexer.getLatencyMax() > 0);
+        assertEquals(3, indexer.getBufferedDocuments());
+        assertTrue(indexer.getRamBufferUsage() > 0);
+        indexer.close();
+
+        MeteredDocumentSearcher searcher = new MeteredDocumentSearcher(
+            new DocumentSearcher(dir, analyzer));
+        ObjectName name = searcher.register("test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertTrue(server.isRegistered(name));
+
+        ISearchResultCursor cursor = searcher.search("john", null, 10);
+        assertTrue(cursor.hasNext());
+        cursor.close();
+        cursor.close();
+        try {
+            searcher.search("title:(", null, 10);
+            fail();
+        } catch (Exception e) {
+        }
+        assertEquals(2L, server.getAttribute(name, "Operations"));
+        assertEquals(1L, server.getAttribute(name, "Errors"));
+        assertEquals(3, server.getAttribute(name, "DocumentCount"));
+        assertEquals(1, server.getAttribute(name, "SegmentCount"));
+        assertTrue(searcher.getReaderAge() >= 0);
+        assertTrue(searcher.getLatencyP99() > 0);
+
+        searcher.close();
+        assertFalse(server.isRegistered(name));
+    }
+
+    public void testQueryLog() throws Exception {
+        RAMDirectory dir = new RAMDirectory();
+        SimpleAnalyzer analyzer = new SimpleAnalyzer(Version.LUCENE_33);
+        DocumentIndexer indexer = new DocumentIndexer(dir, analyzer);
+        indexer.index(new DocumentProvider(new IDocument[] {
+            newDocument("1", "Hello world"),
+            newDocument("2", "Hello John"),
+            newDocument("3", "Goodbye John") }));
+        indexer.close();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RecordingDocumentSearcher searcher = new RecordingDocumentSearcher(
+            new DocumentSearcher(dir, analyzer),
+            new QueryLogWriter(out));
+        searcher.search("hello", null, 10).close();
+        searcher.search("john", Arrays.asList("title"), 5).close();
+        try {
+            searcher.search("title:(", null, 20);
+            fail();
+        } catch (Exception e) {
+        }
+        searcher.close();
+
+        QueryLogReader reader = new QueryLogReader(new ByteArrayInputStream(
+            out.toByteArray()));
+        List<QueryLogEntry> entries = new ArrayList<QueryLogEntry>();
+        QueryLogEntry entry;
+        while ((entry = reader.read()) != null) {
+            entries.add(entry);
+        }
+        reader.close();
+        assertEquals(3, entries.size());
+        assertEquals("hello", entries.get(0).getQuery());
+        assertTrue(entries.get(0).getFields().isEmpty());
+        assertEquals(10, entries.get(0).getMaxResultNumber());
+        assertEquals(Arrays.asList("title"), entries.get(1).getFields());
+        assertEquals(5, entries.get(1).getMaxResultNumber());
+        assertTrue(entries.get(1).getTime() >= entries.get(0).getTime());
+
+        DocumentSearcher target = new DocumentSearcher(dir, analyzer);
+        QueryLogReplayer replayer = new QueryLogReplayer(target, 2, 0);
+        QueryLogReplayer.Report report = replayer.replay(entries);
+        target.close();
+        assertEquals(3, report.getQueries());
+        assertEquals(1, report.getErrors());
+        assertTrue(report.getResponseTime(0.99) > 0);
+        assertTrue(report.getResponseTime(0.99) >= report.getServiceTime(0.5));
+    }
+
+}